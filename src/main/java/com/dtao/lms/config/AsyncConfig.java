@@ -2,10 +2,12 @@ package com.dtao.lms.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
@@ -15,10 +17,12 @@ import java.util.concurrent.ThreadPoolExecutor;
  * ✅ AsyncConfig (Render Safe)
  *
  * Enables asynchronous task execution (for mail, ranking, background jobs, etc.)
+ * and @Scheduled jobs (write-behind flushes, periodic maintenance).
  * Includes fallback for environments that report 0 CPU cores (like Render free tier).
  */
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig implements AsyncConfigurer {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncConfig.class);
@@ -57,4 +61,25 @@ public class AsyncConfig implements AsyncConfigurer {
 
         return executor;
     }
+
+    /**
+     * Dedicated threads for the exam evaluation workers (ExamEvaluationPipeline): each thread
+     * runs one long-lived drain loop, so the pool is exactly the worker count with no queue.
+     */
+    @Bean(name = "examEvaluationExecutor")
+    public ThreadPoolTaskExecutor examEvaluationExecutor(@Value("${lms.exam.eval.workers:2}") int workers) {
+        int size = Math.max(1, workers);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("ExamEval-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("📝 Exam evaluation ThreadPool initialized: workers={}", size);
+
+        return executor;
+    }
 }
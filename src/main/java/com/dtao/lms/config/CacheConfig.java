@@ -34,9 +34,8 @@ public class CacheConfig {
 
     @Bean
     public CacheManager cacheManager(Caffeine<Object, Object> caffeine) {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager(
-                "globalLeaderboard", "examLeaderboards"
-        );
+        // caches are created on first use; leaderboards are served by dedicated in-memory structures
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
         cacheManager.setCaffeine(caffeine);
         log.info("✅ Caffeine cache initialized (TTL=5min, maxSize=5000)");
         return cacheManager;
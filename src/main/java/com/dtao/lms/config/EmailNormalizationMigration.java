@@ -0,0 +1,84 @@
+package com.dtao.lms.config;
+
+import com.dtao.lms.utils.EmailNormalizer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 🔁 EmailNormalizationMigration
+ *
+ * Online backfill of the normalized email fields used by indexed dashboard lookups.
+ * Runs in the background after startup, in small batches, and only touches documents
+ * that don't have the normalized field yet — so it is a no-op once completed and safe
+ * to run on every instance. New writes already carry the field.
+ */
+@Component
+public class EmailNormalizationMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailNormalizationMigration.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public EmailNormalizationMigration(MongoTemplate mongoTemplate,
+                                       @Value("${lms.migration.email-normalization.enabled:true}") boolean enabled,
+                                       @Value("${lms.migration.email-normalization.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!enabled) return;
+        backfill("video_progress", "email", "emailLower");
+        backfill("enrollments", "email", "emailLower");
+        backfill("xp_events", "email", "emailLower");
+        backfill("exam_results", "studentEmail", "studentEmailLower");
+    }
+
+    /**
+     * Fill target = normalize(source) for every document missing target. Documents whose
+     * source is blank get an explicit null so they are not selected again.
+     */
+    long backfill(String collection, String sourceField, String targetField) {
+        long updated = 0;
+        try {
+            Query pending = new Query(Criteria.where(sourceField).type(2).and(targetField).exists(false)).limit(batchSize);
+            pending.fields().include(sourceField);
+
+            while (true) {
+                List<Document> batch = mongoTemplate.find(pending, Document.class, collection);
+                if (batch.isEmpty()) break;
+
+                BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+                for (Document d : batch) {
+                    ops.updateOne(new Query(Criteria.where("_id").is(d.get("_id"))),
+                            new Update().set(targetField, EmailNormalizer.normalize(d.getString(sourceField))));
+                }
+                ops.execute();
+                updated += batch.size();
+                if (batch.size() < batchSize) break;
+            }
+            if (updated > 0) log.info("Backfilled {}.{} on {} documents", collection, targetField, updated);
+        } catch (Exception e) {
+            log.error("Email normalization backfill failed for {} after {} documents: {}", collection, updated, e.getMessage());
+        }
+        return updated;
+    }
+}
@@ -1,14 +1,26 @@
 package com.dtao.lms.config;
 
 import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 public class MongoIndexCreator {
 
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexCreator.class);
+
+    static final String VIDEO_PROGRESS_INDEX = "email_video_idx";
+
     private final MongoTemplate mongoTemplate;
 
     public MongoIndexCreator(MongoTemplate mongoTemplate) {
@@ -24,5 +36,199 @@ public class MongoIndexCreator {
 
         // create the index (createIndex is the non-deprecated replacement of ensureIndex)
         mongoTemplate.indexOps("email_verifications").createIndex(ttlIndex);
+
+        ensureVideoProgressIndex();
+        ensureXpDedupKeyIndex();
+
+        mongoTemplate.indexOps("course_progress_summary").createIndex(new Index()
+                .on("email", Sort.Direction.ASC)
+                .on("courseId", Sort.Direction.ASC)
+                .named("email_course_idx")
+                .unique());
+        mongoTemplate.indexOps("course_progress_summary").createIndex(new Index()
+                .on("courseId", Sort.Direction.ASC)
+                .named("course_idx"));
+
+        ensureNormalizedEmailIndexes();
+        ensureSnapshotCatchUpIndexes();
+        ensureLeaderboardEngineIndexes();
+        ensureCourseLeaderboardIndexes();
+        ensureXpBucketIndexes();
+        ensureExamEvaluationIndexes();
+    }
+
+    /**
+     * Indexes behind the per-course leaderboard aggregations (approved enrollments, course XP,
+     * completed progress rows per course video).
+     */
+    private void ensureCourseLeaderboardIndexes() {
+        try {
+            mongoTemplate.indexOps("video_progress").createIndex(new Index()
+                    .on("videoId", Sort.Direction.ASC)
+                    .on("completed", Sort.Direction.ASC)
+                    .named("video_completed_idx"));
+            mongoTemplate.indexOps("enrollments").createIndex(new Index()
+                    .on("courseId", Sort.Direction.ASC)
+                    .on("status", Sort.Direction.ASC)
+                    .named("course_status_idx"));
+            mongoTemplate.indexOps("xp_events").createIndex(new Index()
+                    .on("courseId", Sort.Direction.ASC)
+                    .named("course_idx"));
+            mongoTemplate.indexOps("xp_events").createIndex(new Index()
+                    .on("videoId", Sort.Direction.ASC)
+                    .named("video_idx"));
+        } catch (Exception e) {
+            log.error("Failed to create course leaderboard indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * xp_daily_buckets: day range scans for the windowed boards, TTL expiry on expiresAt.
+     */
+    private void ensureXpBucketIndexes() {
+        try {
+            mongoTemplate.indexOps("xp_daily_buckets").createIndex(new Index()
+                    .on("day", Sort.Direction.ASC)
+                    .named("day_idx"));
+            mongoTemplate.indexOps("xp_daily_buckets").createIndex(new Index()
+                    .on("expiresAt", Sort.Direction.ASC)
+                    .expire(0)
+                    .named("expires_at_ttl"));
+        } catch (Exception e) {
+            log.error("Failed to create XP bucket indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * exam_results: the evaluation pipeline's submit (examId, studentEmail) and recovery sweeps (status, leaseUntil; xpPendingSince).
+     */
+    private void ensureExamEvaluationIndexes() {
+        try {
+            mongoTemplate.indexOps("exam_results").createIndex(new Index()
+                    .on("examId", Sort.Direction.ASC)
+                    .on("studentEmail", Sort.Direction.ASC)
+                    .named("exam_student_idx"));
+            mongoTemplate.indexOps("exam_results").createIndex(new Index()
+                    .on("status", Sort.Direction.ASC)
+                    .on("leaseUntil", Sort.Direction.ASC)
+                    .named("status_lease_idx"));
+            mongoTemplate.indexOps("exam_results").createIndex(new Index()
+                    .on("xpPendingSince", Sort.Direction.ASC)
+                    .named("xp_pending_idx")
+                    .sparse());
+        } catch (Exception e) {
+            log.error("Failed to create exam evaluation indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * updatedAt indexes used to replay changes made after a leaderboard snapshot.
+     */
+    private void ensureSnapshotCatchUpIndexes() {
+        try {
+            mongoTemplate.indexOps("user_xp_totals").createIndex(new Index()
+                    .on("updatedAt", Sort.Direction.ASC)
+                    .named("updated_at_idx"));
+            mongoTemplate.indexOps("user_progress_stats").createIndex(new Index()
+                    .on("updatedAt", Sort.Direction.ASC)
+                    .named("updated_at_idx"));
+        } catch (Exception e) {
+            log.error("Failed to create snapshot catch-up indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * likes: the leaderboard engine's per-student "likes given" count.
+     */
+    private void ensureLeaderboardEngineIndexes() {
+        try {
+            mongoTemplate.indexOps("likes").createIndex(new Index()
+                    .on("email", Sort.Direction.ASC)
+                    .on("type", Sort.Direction.ASC)
+                    .named("email_type_idx"));
+        } catch (Exception e) {
+            log.error("Failed to create leaderboard engine indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes backing the exact-match lookups on normalized email (see EmailNormalizationMigration).
+     */
+    private void ensureNormalizedEmailIndexes() {
+        try {
+            mongoTemplate.indexOps("video_progress").createIndex(new Index()
+                    .on("emailLower", Sort.Direction.ASC)
+                    .on("completed", Sort.Direction.ASC)
+                    .on("updatedAt", Sort.Direction.DESC)
+                    .named("email_lower_completed_idx"));
+            mongoTemplate.indexOps("enrollments").createIndex(new Index()
+                    .on("emailLower", Sort.Direction.ASC)
+                    .named("email_lower_idx"));
+            mongoTemplate.indexOps("xp_events").createIndex(new Index()
+                    .on("emailLower", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC)
+                    .named("email_lower_created_idx"));
+            mongoTemplate.indexOps("exam_results").createIndex(new Index()
+                    .on("studentEmailLower", Sort.Direction.ASC)
+                    .named("student_email_lower_idx"));
+        } catch (Exception e) {
+            log.error("Failed to create normalized email indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Unique partial index on xp_events.dedupKey (string keys only). XpEventService relies on it
+     * instead of an existence check to award once-per-entity XP exactly once, so startup fails
+     * without it. Legacy events get their keys afterwards from XpDedupKeyMigration.
+     */
+    private void ensureXpDedupKeyIndex() {
+        try {
+            mongoTemplate.indexOps("xp_events").createIndex(new Index()
+                    .on("dedupKey", Sort.Direction.ASC)
+                    .named("xp_dedup_key_idx")
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("dedupKey").type(2))));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create xp_dedup_key_idx on xp_events: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Unique (email, videoId) index — the atomic progress upsert relies on it to prevent duplicates.
+     * Legacy duplicates (from the old read-then-save path) block it: they are only logged here and
+     * the index is skipped until ProgressDedupMigration has been run explicitly.
+     */
+    void ensureVideoProgressIndex() {
+        try {
+            mongoTemplate.indexOps("video_progress").createIndex(new Index()
+                    .on("email", Sort.Direction.ASC)
+                    .on("videoId", Sort.Direction.ASC)
+                    .named(VIDEO_PROGRESS_INDEX)
+                    .unique());
+        } catch (Exception e) {
+            logDuplicateProgress(e);
+        }
+    }
+
+    boolean hasVideoProgressIndex() {
+        return mongoTemplate.indexOps("video_progress").getIndexInfo().stream()
+                .anyMatch(info -> VIDEO_PROGRESS_INDEX.equals(info.getName()));
+    }
+
+    private void logDuplicateProgress(Exception cause) {
+        try {
+            List<String> samples = new ArrayList<>();
+            long groups = 0;
+            for (Document group : mongoTemplate.getCollection(ProgressDedupMigration.COLLECTION)
+                    .aggregate(ProgressDedupMigration.duplicatesPipeline()).allowDiskUse(true)) {
+                if (samples.size() < 20) samples.add(group.get("_id") + " x" + group.get("count"));
+                groups++;
+            }
+            log.error("{} not created ({}): {} duplicated (email, videoId) pairs, e.g. {}. "
+                            + "Run ProgressDedupMigration (lms.migration.progress-dedup.enabled=true) to collapse them.",
+                    VIDEO_PROGRESS_INDEX, cause.getMessage(), groups, samples);
+        } catch (Exception e) {
+            log.error("Failed to create {} on video_progress: {}", VIDEO_PROGRESS_INDEX, cause.getMessage());
+        }
     }
 }
@@ -0,0 +1,87 @@
+package com.dtao.lms.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 🧹 ProgressDedupMigration
+ *
+ * One-off, opt-in cleanup of legacy duplicate video_progress rows (same email + videoId, left by
+ * the old read-then-save path). It deletes user data, so it never runs by itself: enable
+ * lms.migration.progress-dedup.enabled for one deployment, let it run on a single instance, then
+ * switch it off again. Until it has run, MongoIndexCreator logs the duplicates and skips the
+ * unique email_video_idx. Keeps the most advanced row per pair (completed first, then highest
+ * lastPosition) and creates the index afterwards; a no-op once the index exists.
+ */
+@Component
+public class ProgressDedupMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressDedupMigration.class);
+
+    static final String COLLECTION = "video_progress";
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoIndexCreator indexCreator;
+    private final boolean enabled;
+
+    public ProgressDedupMigration(MongoTemplate mongoTemplate,
+                                  MongoIndexCreator indexCreator,
+                                  @Value("${lms.migration.progress-dedup.enabled:false}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.indexCreator = indexCreator;
+        this.enabled = enabled;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled || indexCreator.hasVideoProgressIndex()) return;
+        try {
+            int removed = removeDuplicates();
+            indexCreator.ensureVideoProgressIndex();
+            log.info("Removed {} duplicate progress rows", removed);
+        } catch (Exception e) {
+            log.error("Duplicate progress cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Delete all but the most advanced row of every duplicated (email, videoId) pair.
+     */
+    int removeDuplicates() {
+        List<Object> toDelete = new ArrayList<>();
+        mongoTemplate.getCollection(COLLECTION).aggregate(duplicatesPipeline()).allowDiskUse(true).forEach(group -> {
+            List<?> ids = group.getList("ids", Object.class);
+            toDelete.addAll(ids.subList(1, ids.size()));
+        });
+        if (toDelete.isEmpty()) return 0;
+
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(toDelete)), COLLECTION);
+        return toDelete.size();
+    }
+
+    /**
+     * Duplicated (email, videoId) groups, each with its row ids most advanced first.
+     */
+    static List<Document> duplicatesPipeline() {
+        return List.of(
+                new Document("$sort", new Document("completed", -1).append("lastPosition", -1)),
+                new Document("$group", new Document("_id", new Document("email", "$email").append("videoId", "$videoId"))
+                        .append("ids", new Document("$push", "$_id"))
+                        .append("count", new Document("$sum", 1))),
+                new Document("$match", new Document("count", new Document("$gt", 1)))
+        );
+    }
+}
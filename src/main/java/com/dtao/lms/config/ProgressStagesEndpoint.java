@@ -0,0 +1,27 @@
+package com.dtao.lms.config;
+
+import com.dtao.lms.service.ProgressStageMetrics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * GET /actuator/progressstages — p50/p95/p99 per stage of the progress write pipeline.
+ */
+@Component
+@Endpoint(id = "progressstages")
+public class ProgressStagesEndpoint {
+
+    private final ProgressStageMetrics metrics;
+
+    public ProgressStagesEndpoint(ProgressStageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stages() {
+        return metrics.snapshot();
+    }
+}
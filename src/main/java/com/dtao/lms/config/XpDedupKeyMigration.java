@@ -0,0 +1,132 @@
+package com.dtao.lms.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 🔁 XpDedupKeyMigration
+ *
+ * Gives legacy xp_events their dedupKey. The unique partial index that makes once-per-entity
+ * XP awards idempotent is created at startup by MongoIndexCreator, before this runs; it only
+ * covers string keys, so legacy events join it as they are backfilled. Of legacy duplicates
+ * (same user + type + entity) only the oldest event gets the key; the others (and any the index
+ * rejects because a newer event already holds the key) get an explicit null and stay out of it.
+ * A no-op once completed; new events already carry the key.
+ */
+@Component
+public class XpDedupKeyMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(XpDedupKeyMigration.class);
+
+    private static final String COLLECTION = "xp_events";
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public XpDedupKeyMigration(MongoTemplate mongoTemplate,
+                               @Value("${lms.migration.xp-dedup-key.enabled:true}") boolean enabled,
+                               @Value("${lms.migration.xp-dedup-key.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (enabled) backfill();
+    }
+
+    /**
+     * Set dedupKey on the oldest legacy event of every (type, email, entity) group, null on the rest.
+     */
+    long backfill() {
+        long updated = 0;
+        try {
+            List<BulkStep> steps = new ArrayList<>(batchSize);
+            for (Document group : mongoTemplate.getCollection(COLLECTION).aggregate(legacyGroupsPipeline()).allowDiskUse(true)) {
+                List<?> ids = group.getList("ids", Object.class);
+                if (ids == null || ids.isEmpty()) continue;
+                steps.add(new BulkStep(ids.get(0), group.getString("_id")));
+                for (Object dup : ids.subList(1, ids.size())) steps.add(new BulkStep(dup, null));
+                if (steps.size() >= batchSize) {
+                    updated += apply(steps);
+                    steps = new ArrayList<>(batchSize);
+                }
+            }
+            if (!steps.isEmpty()) updated += apply(steps);
+            if (updated > 0) log.info("Backfilled xp_events.dedupKey on {} documents", updated);
+        } catch (Exception e) {
+            log.error("XP dedup key backfill failed after {} documents: {}", updated, e.getMessage());
+        }
+        return updated;
+    }
+
+    private int apply(List<BulkStep> steps) {
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+        for (BulkStep s : steps) {
+            ops.updateOne(new Query(Criteria.where("_id").is(s.id())), new Update().set("dedupKey", s.key()));
+        }
+        try {
+            ops.execute();
+            return steps.size();
+        } catch (BulkOperationException e) {
+            // the key is already held by a newer event: these legacy rows are duplicates
+            BulkOperations fallback = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+            e.getErrors().forEach(err -> fallback.updateOne(
+                    new Query(Criteria.where("_id").is(steps.get(err.getIndex()).id())),
+                    new Update().set("dedupKey", null)));
+            fallback.execute();
+            return steps.size();
+        }
+    }
+
+    /**
+     * Legacy award events grouped by the key the application computes (see XpEvent.dedupKeyFor),
+     * ids oldest first.
+     */
+    private static List<Document> legacyGroupsPipeline() {
+        Document type = new Document("$toUpper", "$type");
+        Document email = new Document("$ifNull", List.of("$emailLower",
+                new Document("$toLower", new Document("$trim", new Document("input", "$email")))));
+        Document key = new Document("$switch", new Document("branches", List.of(
+                branch(type, email, "VIDEO", "$videoId"),
+                branch(type, email, "DISCUSSION", "$questionId"),
+                branch(type, email, "COURSE", "$courseId")))
+                .append("default", null));
+
+        return List.of(
+                new Document("$match", new Document("dedupKey", new Document("$exists", false))
+                        .append("type", new Document("$regex", "^(video|discussion|course)$").append("$options", "i"))),
+                new Document("$sort", new Document("createdAt", 1).append("_id", 1)),
+                new Document("$project", new Document("key", key)),
+                new Document("$match", new Document("key", new Document("$type", "string"))),
+                new Document("$group", new Document("_id", "$key").append("ids", new Document("$push", "$_id"))));
+    }
+
+    private static Document branch(Document type, Document email, String name, String entityField) {
+        return new Document("case", new Document("$and", List.of(
+                new Document("$eq", List.of(type, name)),
+                new Document("$eq", List.of(new Document("$type", entityField), "string")),
+                new Document("$eq", List.of(new Document("$type", email), "string")))))
+                .append("then", new Document("$concat", List.of(name, ":", email, ":", entityField)));
+    }
+
+    private record BulkStep(Object id, String key) {}
+}
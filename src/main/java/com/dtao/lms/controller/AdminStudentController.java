@@ -6,6 +6,7 @@ import com.dtao.lms.model.User;
 import com.dtao.lms.repo.*;
 import com.dtao.lms.service.LeaderboardService;
 import com.dtao.lms.service.ProgressService;
+import com.dtao.lms.utils.EmailNormalizer;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -49,11 +50,7 @@ public class AdminStudentController {
         User user = opt.get();
 
         int xp = leaderboardService.getXpForStudent(email);
-        int rank = leaderboardService.generateGlobalLeaderboard().getEntries().stream()
-                .filter(e -> e.getEmail().equalsIgnoreCase(email))
-                .map(e -> e.getRank())
-                .findFirst()
-                .orElse(0);
+        int rank = leaderboardService.getGlobalRank(email);
 
         Map<String, Object> map = new LinkedHashMap<>();
         map.put("name", user.getName());
@@ -72,7 +69,7 @@ public class AdminStudentController {
      */
     @GetMapping("/{email}/exams")
     public ResponseEntity<?> getStudentExams(@PathVariable String email) {
-        List<ExamResult> results = examResultRepository.findByStudentEmailIgnoreCase(email);
+        List<ExamResult> results = examResultRepository.findByStudentEmailLower(EmailNormalizer.normalize(email), EmailNormalizer.legacyMatch(email));
         if (results.isEmpty()) return ResponseEntity.ok(List.of());
 
         List<Map<String, Object>> enriched = results.stream().map(r -> {
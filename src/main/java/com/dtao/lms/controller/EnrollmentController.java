@@ -114,8 +114,7 @@ public class EnrollmentController {
 
                         // total videos count
                         try {
-                            List<Video> vids = courseService.getAllVideosForCourse(c.getId());
-                            map.put("totalVideos", vids == null ? 0 : vids.size());
+                            map.put("totalVideos", courseService.getVideoIdsForCourse(c.getId()).size());
                         } catch (Exception ex) {
                             map.put("totalVideos", 0);
                         }
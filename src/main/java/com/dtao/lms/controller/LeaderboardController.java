@@ -1,12 +1,15 @@
 package com.dtao.lms.controller;
 
 import com.dtao.lms.dto.LeaderboardResponse;
-import com.dtao.lms.model.User;
+import com.dtao.lms.dto.LeaderboardWindowResponse;
+import com.dtao.lms.model.LeaderboardEntry;
 import com.dtao.lms.service.LeaderboardService;
+import com.dtao.lms.service.WindowedLeaderboardService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
@@ -58,6 +61,70 @@ public class LeaderboardController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 🔝 Top-K of the global leaderboard plus the caller's own entry.
+     * Example: GET /api/leaderboard/global/top?k=10
+     */
+    @GetMapping("/global/top")
+    public ResponseEntity<LeaderboardWindowResponse> getGlobalTop(@RequestParam(defaultValue = "10") int k,
+                                                                  Authentication auth) {
+        return ResponseEntity.ok(leaderboardService.getGlobalTop(k, currentEmail(auth)));
+    }
+
+    /**
+     * 📄 One page of the global leaderboard by rank offset (zero-based).
+     * Example: GET /api/leaderboard/global/page?offset=50&limit=25
+     */
+    @GetMapping("/global/page")
+    public ResponseEntity<LeaderboardWindowResponse> getGlobalPage(@RequestParam(defaultValue = "0") int offset,
+                                                                   @RequestParam(defaultValue = "25") int limit,
+                                                                   Authentication auth) {
+        return ResponseEntity.ok(leaderboardService.getGlobalPage(offset, limit, currentEmail(auth)));
+    }
+
+    /**
+     * 🎯 Entries around a student on the global leaderboard (defaults to the caller).
+     * Example: GET /api/leaderboard/global/around?radius=5
+     */
+    @GetMapping("/global/around")
+    public ResponseEntity<?> getGlobalAround(@RequestParam(required = false) String email,
+                                             @RequestParam(defaultValue = "5") int radius,
+                                             Authentication auth) {
+        String target = (email != null && !email.isBlank()) ? email : currentEmail(auth);
+        if (target == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "email is required"));
+        }
+        return ResponseEntity.ok(leaderboardService.getGlobalAround(target, radius));
+    }
+
+    /**
+     * 🗓 XP earned over the last 7 days (rolling), by rank offset.
+     * Example: GET /api/leaderboard/global/weekly?offset=0&limit=25
+     */
+    @GetMapping("/global/weekly")
+    public ResponseEntity<LeaderboardWindowResponse> getWeeklyLeaderboard(@RequestParam(defaultValue = "0") int offset,
+                                                                          @RequestParam(defaultValue = "25") int limit,
+                                                                          Authentication auth) {
+        return ResponseEntity.ok(leaderboardService.getWindowPage(
+                WindowedLeaderboardService.Window.WEEKLY, offset, limit, currentEmail(auth)));
+    }
+
+    /**
+     * 📆 XP earned over the last 30 days (rolling), by rank offset.
+     * Example: GET /api/leaderboard/global/monthly?offset=0&limit=25
+     */
+    @GetMapping("/global/monthly")
+    public ResponseEntity<LeaderboardWindowResponse> getMonthlyLeaderboard(@RequestParam(defaultValue = "0") int offset,
+                                                                           @RequestParam(defaultValue = "25") int limit,
+                                                                           Authentication auth) {
+        return ResponseEntity.ok(leaderboardService.getWindowPage(
+                WindowedLeaderboardService.Window.MONTHLY, offset, limit, currentEmail(auth)));
+    }
+
+    private static String currentEmail(Authentication auth) {
+        return (auth != null && auth.isAuthenticated()) ? auth.getName() : null;
+    }
+
     /**
      * ⚡ XP Leaderboard (used by Admin Gamification Page)
      * Example: GET /api/leaderboard/xp
@@ -69,35 +136,21 @@ public class LeaderboardController {
         try {
             log.info("⚡ Fetching XP leaderboard for Admin Gamification Page");
 
-            // Fetch all students
-            List<User> students = leaderboardService.getAllStudents();
-            List<Map<String, Object>> result = new ArrayList<>();
-
-            for (User s : students) {
-                int xp = leaderboardService.getXpForStudent(s.getEmail());
-                int level = (xp / 100) + 1;
-                String badge = xp >= 500 ? "Pro Learner 🥇" :
-                        xp >= 200 ? "Active Learner 🥈" :
-                                "New Learner 🐣";
+            // Global board is already ranked by XP (ties broken by progress, likes, name)
+            List<LeaderboardEntry> entries = leaderboardService.generateGlobalLeaderboard().getEntries();
+            List<Map<String, Object>> result = new ArrayList<>(entries.size());
 
+            for (LeaderboardEntry e : entries) {
                 Map<String, Object> map = new LinkedHashMap<>();
-                map.put("email", s.getEmail());
-                map.put("xp", xp);
-                map.put("level", level);
-                map.put("badge", badge);
-                map.put("name", s.getName());
+                map.put("email", e.getEmail());
+                map.put("xp", e.getXp());
+                map.put("level", e.getLevel());
+                map.put("badge", e.getBadge());
+                map.put("name", e.getName());
+                map.put("rank", e.getRank());
                 result.add(map);
             }
 
-            // Sort by XP descending
-            result.sort((a, b) -> Integer.compare((int) b.get("xp"), (int) a.get("xp")));
-
-            // Assign rank
-            int rank = 1;
-            for (Map<String, Object> m : result) {
-                m.put("rank", rank++);
-            }
-
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             log.error("💥 Failed to fetch XP leaderboard: {}", e.getMessage(), e);
@@ -1,5 +1,7 @@
 package com.dtao.lms.controller;
 
+import com.dtao.lms.dto.BatchProgressRequest;
+import com.dtao.lms.dto.BatchProgressResponse;
 import com.dtao.lms.dto.CourseProgressResponse;
 import com.dtao.lms.dto.VideoProgressRequest;
 import com.dtao.lms.dto.VideoProgressResponse;
@@ -179,6 +181,30 @@ public class ProgressController {
         }
     }
 
+    /**
+     * Replay of buffered heartbeats (offline / reconnecting clients).
+     * Entries are collapsed per video and written with a single bulk write; the response
+     * carries one status per submitted entry, in request order.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> postBatchProgress(@RequestBody(required = false) BatchProgressRequest req) {
+        String email = currentUserEmail();
+        if (email == null) return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
+        if (req == null || req.getEntries() == null) return ResponseEntity.badRequest().body(Map.of("error", "entries required"));
+
+        try {
+            BatchProgressResponse resp = progressService.applyBatch(email, req.getEntries());
+            log.debug("Batch progress for {}: received={} written={}", email, resp.getReceived(), resp.getVideosWritten());
+            return ResponseEntity.ok(resp);
+        } catch (IllegalArgumentException iae) {
+            log.warn("Bad batch progress request from {} : {}", email, iae.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", iae.getMessage()));
+        } catch (Exception ex) {
+            log.error("Failed to apply batch progress for {} : {}", email, ex.getMessage(), ex);
+            return ResponseEntity.status(500).body(Map.of("error", "Could not save progress", "reason", ex.getMessage()));
+        }
+    }
+
     @PostMapping("/video/{videoId}/complete")
     public ResponseEntity<?> completeVideo(@PathVariable String videoId) {
         String email = currentUserEmail();
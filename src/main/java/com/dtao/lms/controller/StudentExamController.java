@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ✅ StudentExamController
@@ -14,6 +15,7 @@ import java.util.List;
  *  - View available exams
  *  - Start exam
  *  - Get exam questions
+ *  - Autosave answers
  *  - Submit answers
  *  - Fetch exam results
  */
@@ -62,6 +64,20 @@ public class StudentExamController {
         return ResponseEntity.ok(questions);
     }
 
+    /* ============================================================
+     * 3.1 Autosave Answers (per-question deltas; submit only needs what changed since)
+     * ============================================================ */
+    @PatchMapping("/{examId}/answers")
+    public ResponseEntity<Map<String, Integer>> saveAnswers(
+            @PathVariable String examId,
+            @RequestBody ExamSubmitRequest request,
+            Principal principal
+    ) {
+        String email = principal.getName();
+        int saved = studentExamService.saveAnswers(examId, email, request);
+        return ResponseEntity.ok(Map.of("saved", saved));
+    }
+
     /* ============================================================
      * 4️⃣ Submit Exam Answers
      * ============================================================ */
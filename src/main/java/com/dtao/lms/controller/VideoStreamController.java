@@ -1,7 +1,6 @@
 package com.dtao.lms.controller;
 
-import com.dtao.lms.model.Video;
-import com.dtao.lms.repo.VideoRepository;
+import com.dtao.lms.service.VideoMetadataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.util.StringUtils;
@@ -13,7 +12,6 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.file.Files;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -31,12 +29,12 @@ import java.util.stream.Collectors;
 
 public class VideoStreamController {
 
-    private final VideoRepository videoRepo;
+    private final VideoMetadataCache videoMetadataCache;
     private static final long CHUNK_SIZE = 1024L * 1024L * 2L; // 2MB
 
     @Autowired
-    public VideoStreamController(VideoRepository videoRepo) {
-        this.videoRepo = videoRepo;
+    public VideoStreamController(VideoMetadataCache videoMetadataCache) {
+        this.videoMetadataCache = videoMetadataCache;
     }
 
     private boolean isYouTubeHost(String url) {
@@ -54,12 +52,12 @@ public class VideoStreamController {
     public ResponseEntity<StreamingResponseBody> streamVideo(@PathVariable("id") String id,
                                                              @RequestHeader(value = "Range", required = false) String rangeHeader) {
         try {
-            Optional<Video> maybe = videoRepo.findById(id);
-            if (maybe.isEmpty()) return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-            Video video = maybe.get();
+            // metadata is cached — a player issues many Range requests per playback
+            VideoMetadataCache.VideoMeta video = videoMetadataCache.get(id);
+            if (video == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
 
-            String path = video.getVideoUrl();
-            if (!StringUtils.hasText(path)) path = video.getSourceUrl();
+            String path = video.videoUrl();
+            if (!StringUtils.hasText(path)) path = video.sourceUrl();
             if (!StringUtils.hasText(path)) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
             }
@@ -127,7 +125,7 @@ public class VideoStreamController {
                 }
             };
 
-            String contentType = video.getContentType();
+            String contentType = video.contentType();
             if (!StringUtils.hasText(contentType)) {
                 try {
                     String probe = Files.probeContentType(file.toPath());
@@ -138,7 +136,7 @@ public class VideoStreamController {
             }
 
             HttpHeaders headers = buildCommonHeaders(
-                    (video.getTitle() != null ? video.getTitle() : "video"),
+                    (video.title() != null ? video.title() : "video"),
                     contentType
             );
             headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
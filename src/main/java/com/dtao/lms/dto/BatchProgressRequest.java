@@ -0,0 +1,51 @@
+package com.dtao.lms.dto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch of buffered player heartbeats replayed by offline / reconnecting clients.
+ */
+public class BatchProgressRequest {
+
+    private List<Entry> entries = new ArrayList<>();
+
+    public BatchProgressRequest() {}
+
+    public List<Entry> getEntries() { return entries; }
+    public void setEntries(List<Entry> entries) { this.entries = entries; }
+
+    public static class Entry {
+        private String videoId;
+        private Double lastPosition;
+        private Double duration;
+        private Boolean completed;
+        private Instant clientTimestamp;
+
+        public Entry() {}
+
+        public Entry(String videoId, Double lastPosition, Double duration, Boolean completed, Instant clientTimestamp) {
+            this.videoId = videoId;
+            this.lastPosition = lastPosition;
+            this.duration = duration;
+            this.completed = completed;
+            this.clientTimestamp = clientTimestamp;
+        }
+
+        public String getVideoId() { return videoId; }
+        public void setVideoId(String videoId) { this.videoId = videoId; }
+
+        public Double getLastPosition() { return lastPosition; }
+        public void setLastPosition(Double lastPosition) { this.lastPosition = lastPosition; }
+
+        public Double getDuration() { return duration; }
+        public void setDuration(Double duration) { this.duration = duration; }
+
+        public Boolean getCompleted() { return completed; }
+        public void setCompleted(Boolean completed) { this.completed = completed; }
+
+        public Instant getClientTimestamp() { return clientTimestamp; }
+        public void setClientTimestamp(Instant clientTimestamp) { this.clientTimestamp = clientTimestamp; }
+    }
+}
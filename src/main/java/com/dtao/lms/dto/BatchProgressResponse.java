@@ -0,0 +1,72 @@
+package com.dtao.lms.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of POST /api/progress/batch — one status per submitted entry, in request order.
+ *
+ * Status values:
+ *  - APPLIED   : entry was the representative write for its video
+ *  - COALESCED : entry was folded into a later entry for the same video
+ *  - REJECTED  : entry was invalid (missing videoId) and ignored
+ *  - FAILED    : the bulk write for the batch failed
+ */
+public class BatchProgressResponse {
+
+    public static final String APPLIED = "APPLIED";
+    public static final String COALESCED = "COALESCED";
+    public static final String REJECTED = "REJECTED";
+    public static final String FAILED = "FAILED";
+
+    private int received;
+    private int videosWritten;
+    private int xpAwarded;
+    private List<EntryStatus> results = new ArrayList<>();
+
+    public BatchProgressResponse() {}
+
+    public int getReceived() { return received; }
+    public void setReceived(int received) { this.received = received; }
+
+    public int getVideosWritten() { return videosWritten; }
+    public void setVideosWritten(int videosWritten) { this.videosWritten = videosWritten; }
+
+    public int getXpAwarded() { return xpAwarded; }
+    public void setXpAwarded(int xpAwarded) { this.xpAwarded = xpAwarded; }
+
+    public List<EntryStatus> getResults() { return results; }
+    public void setResults(List<EntryStatus> results) { this.results = results; }
+
+    public static class EntryStatus {
+        private int index;
+        private String videoId;
+        private String status;
+        private String message;
+        private VideoProgressResponse progress;
+
+        public EntryStatus() {}
+
+        public EntryStatus(int index, String videoId, String status, String message) {
+            this.index = index;
+            this.videoId = videoId;
+            this.status = status;
+            this.message = message;
+        }
+
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+
+        public String getVideoId() { return videoId; }
+        public void setVideoId(String videoId) { this.videoId = videoId; }
+
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+
+        public VideoProgressResponse getProgress() { return progress; }
+        public void setProgress(VideoProgressResponse progress) { this.progress = progress; }
+    }
+}
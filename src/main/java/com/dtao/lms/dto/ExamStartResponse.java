@@ -1,6 +1,7 @@
 package com.dtao.lms.dto;
 
 import java.time.Instant;
+import java.util.List;
 
 /**
  * ✅ Sent after student starts an exam
@@ -12,6 +13,7 @@ public class ExamStartResponse {
     private int durationMinutes;
     private int totalQuestions;
     private Instant startTime;
+    private List<ExamSubmitRequest.Answer> savedAnswers; // autosaved answers when resuming an attempt
 
     public ExamStartResponse() {}
 
@@ -35,6 +37,8 @@ public class ExamStartResponse {
     public void setTotalQuestions(int totalQuestions) { this.totalQuestions = totalQuestions; }
     public Instant getStartTime() { return startTime; }
     public void setStartTime(Instant startTime) { this.startTime = startTime; }
+    public List<ExamSubmitRequest.Answer> getSavedAnswers() { return savedAnswers; }
+    public void setSavedAnswers(List<ExamSubmitRequest.Answer> savedAnswers) { this.savedAnswers = savedAnswers; }
 
     @Override
     public String toString() {
@@ -44,6 +48,7 @@ public class ExamStartResponse {
                 ", durationMinutes=" + durationMinutes +
                 ", totalQuestions=" + totalQuestions +
                 ", startTime=" + startTime +
+                ", savedAnswers=" + savedAnswers +
                 '}';
     }
 
@@ -56,15 +61,19 @@ public class ExamStartResponse {
         private int durationMinutes;
         private int totalQuestions;
         private Instant startTime;
+        private List<ExamSubmitRequest.Answer> savedAnswers;
 
         public Builder examId(String examId) { this.examId = examId; return this; }
         public Builder examName(String examName) { this.examName = examName; return this; }
         public Builder durationMinutes(int durationMinutes) { this.durationMinutes = durationMinutes; return this; }
         public Builder totalQuestions(int totalQuestions) { this.totalQuestions = totalQuestions; return this; }
         public Builder startTime(Instant startTime) { this.startTime = startTime; return this; }
+        public Builder savedAnswers(List<ExamSubmitRequest.Answer> savedAnswers) { this.savedAnswers = savedAnswers; return this; }
 
         public ExamStartResponse build() {
-            return new ExamStartResponse(examId, examName, durationMinutes, totalQuestions, startTime);
+            ExamStartResponse response = new ExamStartResponse(examId, examName, durationMinutes, totalQuestions, startTime);
+            response.setSavedAnswers(savedAnswers);
+            return response;
         }
     }
 }
@@ -0,0 +1,63 @@
+package com.dtao.lms.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * STOMP payload with the coalesced rank changes of one leaderboard.
+ *
+ * Each delta is an upsert of one student's current row: newRank is their rank when the message
+ * was sent (0 = no longer on the board). Clients holding a local copy remove every listed
+ * student, then insert them in ascending newRank order; everyone else keeps their relative order.
+ * seq increases per board so a client can detect a gap and reload. A reset message (no deltas)
+ * means the board was reloaded on the server: clients must fetch it again.
+ */
+public class LeaderboardDeltaMessage {
+    private String scope;
+    private long seq;
+    private int totalEntries;
+    private Instant sentAt;
+    private List<Delta> deltas;
+    private boolean reset;
+
+    // 🔹 No-arg constructor
+    public LeaderboardDeltaMessage() {}
+
+    public LeaderboardDeltaMessage(String scope, long seq, int totalEntries, Instant sentAt, List<Delta> deltas) {
+        this.scope = scope;
+        this.seq = seq;
+        this.totalEntries = totalEntries;
+        this.sentAt = sentAt;
+        this.deltas = deltas;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Delta(String email, String name, int newRank, Integer xp, Double score) {}
+
+    public static LeaderboardDeltaMessage reset(String scope, long seq, int totalEntries) {
+        LeaderboardDeltaMessage m = new LeaderboardDeltaMessage(scope, seq, totalEntries, Instant.now(), List.of());
+        m.setReset(true);
+        return m;
+    }
+
+    // --- Getters and Setters ---
+    public String getScope() { return scope; }
+    public void setScope(String scope) { this.scope = scope; }
+
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public int getTotalEntries() { return totalEntries; }
+    public void setTotalEntries(int totalEntries) { this.totalEntries = totalEntries; }
+
+    public Instant getSentAt() { return sentAt; }
+    public void setSentAt(Instant sentAt) { this.sentAt = sentAt; }
+
+    public List<Delta> getDeltas() { return deltas; }
+    public void setDeltas(List<Delta> deltas) { this.deltas = deltas; }
+
+    public boolean isReset() { return reset; }
+    public void setReset(boolean reset) { this.reset = reset; }
+}
@@ -0,0 +1,44 @@
+package com.dtao.lms.dto;
+
+import com.dtao.lms.model.LeaderboardEntry;
+
+import java.util.List;
+
+/**
+ * DTO for a bounded slice of a leaderboard (top-K, a page, or the window around a student).
+ * totalEntries is the size of the whole board; me is the caller's own entry when known.
+ */
+public class LeaderboardWindowResponse {
+    private String scope;
+    private int totalEntries;
+    private int offset;
+    private List<LeaderboardEntry> entries;
+    private LeaderboardEntry me;
+
+    // 🔹 No-arg constructor
+    public LeaderboardWindowResponse() {}
+
+    public LeaderboardWindowResponse(String scope, int totalEntries, int offset, List<LeaderboardEntry> entries, LeaderboardEntry me) {
+        this.scope = scope;
+        this.totalEntries = totalEntries;
+        this.offset = offset;
+        this.entries = entries;
+        this.me = me;
+    }
+
+    // --- Getters and Setters ---
+    public String getScope() { return scope; }
+    public void setScope(String scope) { this.scope = scope; }
+
+    public int getTotalEntries() { return totalEntries; }
+    public void setTotalEntries(int totalEntries) { this.totalEntries = totalEntries; }
+
+    public int getOffset() { return offset; }
+    public void setOffset(int offset) { this.offset = offset; }
+
+    public List<LeaderboardEntry> getEntries() { return entries; }
+    public void setEntries(List<LeaderboardEntry> entries) { this.entries = entries; }
+
+    public LeaderboardEntry getMe() { return me; }
+    public void setMe(LeaderboardEntry me) { this.me = me; }
+}
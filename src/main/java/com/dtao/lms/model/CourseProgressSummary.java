@@ -0,0 +1,68 @@
+package com.dtao.lms.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CourseProgressSummary
+ *
+ * Read model of one user's progress in one course, kept up to date incrementally
+ * (first video completion, videos added/removed) so course progress is a point read.
+ */
+@Document(collection = "course_progress_summary")
+@CompoundIndex(name = "email_course_idx", def = "{'email': 1, 'courseId': 1}", unique = true)
+public class CourseProgressSummary {
+
+    @Id
+    private String id;
+
+    private String email;
+    private String courseId;
+    private int completedCount;
+    private int totalVideos;
+    private List<String> completedVideoIds = new ArrayList<>();
+    private Instant updatedAt;
+    // true once completions were seeded from video_progress; rows upserted by a completion alone are not
+    private boolean built;
+
+    public CourseProgressSummary() {}
+
+    public CourseProgressSummary(String email, String courseId, int totalVideos, List<String> completedVideoIds) {
+        this.email = email;
+        this.courseId = courseId;
+        this.totalVideos = totalVideos;
+        if (completedVideoIds != null) this.completedVideoIds = completedVideoIds;
+        this.completedCount = this.completedVideoIds.size();
+        this.updatedAt = Instant.now();
+    }
+
+    // --- Getters & Setters ---
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public String getCourseId() { return courseId; }
+    public void setCourseId(String courseId) { this.courseId = courseId; }
+
+    public int getCompletedCount() { return completedCount; }
+    public void setCompletedCount(int completedCount) { this.completedCount = completedCount; }
+
+    public int getTotalVideos() { return totalVideos; }
+    public void setTotalVideos(int totalVideos) { this.totalVideos = totalVideos; }
+
+    public List<String> getCompletedVideoIds() { return completedVideoIds; }
+    public void setCompletedVideoIds(List<String> completedVideoIds) { this.completedVideoIds = completedVideoIds; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public boolean isBuilt() { return built; }
+    public void setBuilt(boolean built) { this.built = built; }
+}
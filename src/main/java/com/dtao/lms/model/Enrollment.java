@@ -1,5 +1,8 @@
 package com.dtao.lms.model;
 
+import com.dtao.lms.utils.EmailNormalizer;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.AccessType;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -17,6 +20,10 @@ public class Enrollment {
     // student identifier (we store email for simplicity)
     private String email;
 
+    // normalized copy of email for indexed case-insensitive lookups (always derived from email)
+    @AccessType(AccessType.Type.PROPERTY)
+    private String emailLower;
+
     // optional: store user id if you want (not required)
     private String userId;
 
@@ -40,6 +47,10 @@ public class Enrollment {
     public String getEmail() { return email; }
     public void setEmail(String email) { this.email = email; }
 
+    @JsonIgnore
+    public String getEmailLower() { return EmailNormalizer.normalize(email); }
+    public void setEmailLower(String emailLower) { this.emailLower = emailLower; }
+
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
 
@@ -1,10 +1,15 @@
 package com.dtao.lms.model;
 
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.AccessType;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ✅ ExamResult
@@ -19,6 +24,10 @@ public class ExamResult {
     private String examName;
     private String studentId;
     private String studentEmail;
+
+    // normalized copy of studentEmail for indexed case-insensitive lookups (always derived from studentEmail)
+    @AccessType(AccessType.Type.PROPERTY)
+    private String studentEmailLower;
     private String studentName;
     private List<AnswerRecord> answers;
     private int totalQuestions;
@@ -31,6 +40,19 @@ public class ExamResult {
     private Instant submittedAt;
     private long durationSeconds;
 
+    // autosaved answers keyed by question ordinal (see ExamDraftWriter)
+    private Map<String, ExamSubmitRequest.Answer> draftAnswers;
+
+    // evaluation job state (see ExamEvaluationPipeline): submitted answers waiting to be scored,
+    // the claim that owns the evaluation and until when, and how often it was claimed
+    private List<ExamSubmitRequest.Answer> pendingAnswers;
+    private String leaseToken;
+    private Instant leaseUntil;
+    private int evaluationAttempts;
+
+    // set by the completion write and cleared once the attempt's exam XP is known to be stored
+    private Instant xpPendingSince;
+
     // --- Getters and setters ---
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -47,6 +69,10 @@ public class ExamResult {
     public String getStudentEmail() { return studentEmail; }
     public void setStudentEmail(String studentEmail) { this.studentEmail = studentEmail; }
 
+    @JsonIgnore
+    public String getStudentEmailLower() { return EmailNormalizer.normalize(studentEmail); }
+    public void setStudentEmailLower(String studentEmailLower) { this.studentEmailLower = studentEmailLower; }
+
     public String getStudentName() { return studentName; }
     public void setStudentName(String studentName) { this.studentName = studentName; }
 
@@ -79,4 +105,28 @@ public class ExamResult {
 
     public long getDurationSeconds() { return durationSeconds; }
     public void setDurationSeconds(long durationSeconds) { this.durationSeconds = durationSeconds; }
+
+    @JsonIgnore
+    public Map<String, ExamSubmitRequest.Answer> getDraftAnswers() { return draftAnswers; }
+    public void setDraftAnswers(Map<String, ExamSubmitRequest.Answer> draftAnswers) { this.draftAnswers = draftAnswers; }
+
+    @JsonIgnore
+    public List<ExamSubmitRequest.Answer> getPendingAnswers() { return pendingAnswers; }
+    public void setPendingAnswers(List<ExamSubmitRequest.Answer> pendingAnswers) { this.pendingAnswers = pendingAnswers; }
+
+    @JsonIgnore
+    public String getLeaseToken() { return leaseToken; }
+    public void setLeaseToken(String leaseToken) { this.leaseToken = leaseToken; }
+
+    @JsonIgnore
+    public Instant getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(Instant leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    @JsonIgnore
+    public int getEvaluationAttempts() { return evaluationAttempts; }
+    public void setEvaluationAttempts(int evaluationAttempts) { this.evaluationAttempts = evaluationAttempts; }
+
+    @JsonIgnore
+    public Instant getXpPendingSince() { return xpPendingSince; }
+    public void setXpPendingSince(Instant xpPendingSince) { this.xpPendingSince = xpPendingSince; }
 }
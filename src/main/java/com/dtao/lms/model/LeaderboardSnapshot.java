@@ -0,0 +1,64 @@
+package com.dtao.lms.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * LeaderboardSnapshot
+ *
+ * Compact binary image of the resident global leaderboard (gzip'd standings), written
+ * periodically so a restarted instance can serve the board immediately. highWaterMark is
+ * the point in time up to which all XP / progress changes are contained in the data.
+ * Only one instance writes it at a time: writer holds a lease until writerLeaseUntil.
+ */
+@Document(collection = "leaderboard_snapshots")
+public class LeaderboardSnapshot {
+
+    @Id
+    private String id; // board name, e.g. "global"
+
+    private int format;
+    private int entries;
+    private Instant takenAt;
+    private Instant highWaterMark;
+    private byte[] data;
+    private String writer;
+    private Instant writerLeaseUntil;
+
+    public LeaderboardSnapshot() {}
+
+    public LeaderboardSnapshot(String id, int format, int entries, Instant takenAt, Instant highWaterMark, byte[] data) {
+        this.id = id;
+        this.format = format;
+        this.entries = entries;
+        this.takenAt = takenAt;
+        this.highWaterMark = highWaterMark;
+        this.data = data;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public int getFormat() { return format; }
+    public void setFormat(int format) { this.format = format; }
+
+    public int getEntries() { return entries; }
+    public void setEntries(int entries) { this.entries = entries; }
+
+    public Instant getTakenAt() { return takenAt; }
+    public void setTakenAt(Instant takenAt) { this.takenAt = takenAt; }
+
+    public Instant getHighWaterMark() { return highWaterMark; }
+    public void setHighWaterMark(Instant highWaterMark) { this.highWaterMark = highWaterMark; }
+
+    public byte[] getData() { return data; }
+    public void setData(byte[] data) { this.data = data; }
+
+    public String getWriter() { return writer; }
+    public void setWriter(String writer) { this.writer = writer; }
+
+    public Instant getWriterLeaseUntil() { return writerLeaseUntil; }
+    public void setWriterLeaseUntil(Instant writerLeaseUntil) { this.writerLeaseUntil = writerLeaseUntil; }
+}
@@ -0,0 +1,52 @@
+package com.dtao.lms.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * UserProgressStats
+ *
+ * Running accumulator of a user's watch ratios, keyed by normalized email.
+ * ratioSum is the sum of min(lastPosition / duration, 1) * 100 over the user's
+ * progress rows with duration > 0, ratioCount the number of such rows — so the
+ * average progress is a single document read.
+ */
+@Document(collection = "user_progress_stats")
+public class UserProgressStats {
+
+    @Id
+    private String email; // EmailNormalizer.normalize(email)
+
+    private double ratioSum;
+    private long ratioCount;
+    private Instant updatedAt;
+
+    public UserProgressStats() {}
+
+    public UserProgressStats(String email, double ratioSum, long ratioCount) {
+        this.email = email;
+        this.ratioSum = ratioSum;
+        this.ratioCount = ratioCount;
+        this.updatedAt = Instant.now();
+    }
+
+    /** Average capped progress percent (0 when there is nothing to average). */
+    public double getAverage() {
+        if (ratioCount <= 0) return 0.0;
+        return Math.max(0.0, Math.min(100.0, ratioSum / ratioCount));
+    }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public double getRatioSum() { return ratioSum; }
+    public void setRatioSum(double ratioSum) { this.ratioSum = ratioSum; }
+
+    public long getRatioCount() { return ratioCount; }
+    public void setRatioCount(long ratioCount) { this.ratioCount = ratioCount; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
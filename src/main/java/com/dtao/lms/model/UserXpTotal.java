@@ -0,0 +1,60 @@
+package com.dtao.lms.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * UserXpTotal
+ *
+ * Materialized XP total of one user, keyed by normalized email. Incremented with $inc
+ * whenever an xp_events row is written, so total XP / level / badge is a single
+ * document read instead of a scan of the user's event history.
+ */
+@Document(collection = "user_xp_totals")
+public class UserXpTotal {
+
+    @Id
+    private String email; // EmailNormalizer.normalize(email)
+
+    private long xp;
+    private int level;
+    private String badge;
+    private Map<String, Long> byType = new HashMap<>(); // event type -> xp
+    private Instant lastEventAt;
+    private Instant updatedAt;
+
+    public UserXpTotal() {}
+
+    public UserXpTotal(String email, long xp, Map<String, Long> byType, Instant lastEventAt) {
+        this.email = email;
+        this.xp = xp;
+        this.byType = byType != null ? byType : new HashMap<>();
+        this.lastEventAt = lastEventAt;
+        this.updatedAt = Instant.now();
+    }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public long getXp() { return xp; }
+    public void setXp(long xp) { this.xp = xp; }
+
+    public int getLevel() { return level; }
+    public void setLevel(int level) { this.level = level; }
+
+    public String getBadge() { return badge; }
+    public void setBadge(String badge) { this.badge = badge; }
+
+    public Map<String, Long> getByType() { return byType; }
+    public void setByType(Map<String, Long> byType) { this.byType = byType; }
+
+    public Instant getLastEventAt() { return lastEventAt; }
+    public void setLastEventAt(Instant lastEventAt) { this.lastEventAt = lastEventAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
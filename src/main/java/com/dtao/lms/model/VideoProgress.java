@@ -1,5 +1,8 @@
 package com.dtao.lms.model;
 
+import com.dtao.lms.utils.EmailNormalizer;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.AccessType;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -20,10 +23,16 @@ public class VideoProgress {
     private String id;
 
     private String email;
+
+    // normalized copy of email for indexed case-insensitive lookups (always derived from email)
+    @AccessType(AccessType.Type.PROPERTY)
+    private String emailLower;
+
     private String videoId;
     private Double lastPosition = 0.0;   // seconds (safe default)
     private Double duration = 0.0;       // total video duration (optional)
     private boolean completed = false;
+    private Instant createdAt;
     private Instant updatedAt;
     private String videoTitle; // ✅ Add this if missing
 
@@ -62,6 +71,15 @@ public class VideoProgress {
         this.email = email;
     }
 
+    @JsonIgnore
+    public String getEmailLower() {
+        return EmailNormalizer.normalize(email);
+    }
+
+    public void setEmailLower(String emailLower) {
+        this.emailLower = emailLower;
+    }
+
     public String getVideoId() {
         return videoId;
     }
@@ -94,6 +112,14 @@ public class VideoProgress {
         this.completed = completed;
     }
 
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public Instant getUpdatedAt() {
         return updatedAt;
     }
@@ -0,0 +1,50 @@
+package com.dtao.lms.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * XpDailyBucket
+ *
+ * XP one user earned on one day, keyed "email|yyyy-MM-dd" (normalized email, day in the
+ * leaderboard zone). Incremented with $inc whenever XP is awarded, so weekly / monthly boards
+ * sum a handful of buckets per user instead of scanning xp_events. Expired via TTL on expiresAt.
+ */
+@Document(collection = "xp_daily_buckets")
+public class XpDailyBucket {
+
+    @Id
+    private String id;
+
+    private String email; // EmailNormalizer.normalize(email)
+    private String day;   // ISO yyyy-MM-dd, sorts chronologically
+    private long xp;
+    private Instant updatedAt;
+    private Instant expiresAt;
+
+    public XpDailyBucket() {}
+
+    public static String idOf(String email, String day) {
+        return email + "|" + day;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public String getDay() { return day; }
+    public void setDay(String day) { this.day = day; }
+
+    public long getXp() { return xp; }
+    public void setXp(long xp) { this.xp = xp; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public Instant getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -1,9 +1,13 @@
 package com.dtao.lms.model;
 
+import com.dtao.lms.utils.EmailNormalizer;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.AccessType;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.util.Locale;
 
 @Document(collection = "xp_events")
 public class XpEvent {
@@ -12,6 +16,14 @@ public class XpEvent {
     private String id;
 
     private String email;         // student email
+
+    // normalized copy of email for indexed case-insensitive lookups (always derived from email)
+    @AccessType(AccessType.Type.PROPERTY)
+    private String emailLower;
+
+    // TYPE:emailLower:entityId for once-per-entity awards (VIDEO / DISCUSSION / COURSE, EXAM per result), unique via xp_dedup_key_idx
+    @AccessType(AccessType.Type.PROPERTY)
+    private String dedupKey;
     private String type;          // VIDEO, DISCUSSION, COURSE
     private int score;            // XP amount
     private String videoId;       // optional
@@ -41,6 +53,38 @@ public class XpEvent {
     public String getEmail() { return email; }
     public void setEmail(String email) { this.email = email; }
 
+    @JsonIgnore
+    public String getEmailLower() { return EmailNormalizer.normalize(email); }
+    public void setEmailLower(String emailLower) { this.emailLower = emailLower; }
+
+    @JsonIgnore
+    public String getDedupKey() { return dedupKey != null ? dedupKey : dedupKeyFor(email, type, videoId, questionId, courseId); }
+    public void setDedupKey(String dedupKey) { this.dedupKey = dedupKey; }
+
+    /**
+     * Deterministic key of a once-per-entity award, or null for repeatable awards (system, ...; exams are keyed per attempt, see examDedupKeyFor).
+     */
+    public static String dedupKeyFor(String email, String type, String videoId, String questionId, String courseId) {
+        String emailKey = EmailNormalizer.normalize(email);
+        if (emailKey == null || type == null) return null;
+        String entity = switch (type.toUpperCase(Locale.ROOT)) {
+            case "VIDEO" -> videoId;
+            case "DISCUSSION" -> questionId;
+            case "COURSE" -> courseId;
+            default -> null;
+        };
+        return entity == null ? null : type.toUpperCase(Locale.ROOT) + ":" + emailKey + ":" + entity;
+    }
+
+    /**
+     * Key of the XP awarded for one evaluated exam attempt, so re-running the award after a crash is a no-op.
+     */
+    public static String examDedupKeyFor(String email, String resultId) {
+        String emailKey = EmailNormalizer.normalize(email);
+        if (emailKey == null || resultId == null) return null;
+        return "EXAM:" + emailKey + ":" + resultId;
+    }
+
     public String getType() { return type; }
     public void setType(String type) { this.type = type; }
 
@@ -0,0 +1,14 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.CourseProgressSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CourseProgressSummaryRepository extends MongoRepository<CourseProgressSummary, String> {
+    Optional<CourseProgressSummary> findByEmailAndCourseId(String email, String courseId);
+
+    void deleteByCourseId(String courseId);
+}
@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 @Repository
 public interface EnrollmentRepository extends MongoRepository<Enrollment, String> {
@@ -24,13 +25,13 @@ public interface EnrollmentRepository extends MongoRepository<Enrollment, String
 
     // ✅ Dashboard Queries — using correct field name "email"
 
-    // 🔹 Count total enrolled courses for student
-    @Query(value = "{ 'email' : { $regex: ?0, $options: 'i' } }", count = true)
-    long countByEmailRegex(String email);
+    // 🔹 Count total enrolled courses for student (emailLower = EmailNormalizer.normalize(email))
+    @Query(value = "{ $or: [ { 'emailLower' : ?0 }, { 'emailLower' : null, 'email' : ?1 } ] }", count = true)
+    long countByEmailLower(String emailLower, Pattern legacyEmail);
 
-    // 🔹 Get all enrollments by email (case-insensitive)
-    @Query(value = "{ 'email' : { $regex: ?0, $options: 'i' } }")
-    List<Enrollment> findAllByEmailRegex(String email);
+    // 🔹 Get all enrollments by email (case-insensitive, exact)
+    @Query(value = "{ $or: [ { 'emailLower' : ?0 }, { 'emailLower' : null, 'email' : ?1 } ] }")
+    List<Enrollment> findAllByEmailLower(String emailLower, Pattern legacyEmail);
 
     // 🔹 Recently enrolled courses (for dashboard preview)
     @Query(value = "{ 'email' : ?0 }", fields = "{ 'courseId' : 1, 'createdAt' : 1 }", sort = "{ 'createdAt' : -1 }")
@@ -2,10 +2,12 @@ package com.dtao.lms.repo;
 
 import com.dtao.lms.model.ExamResult;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 /**
  * ✅ ExamResultRepository
@@ -18,7 +20,13 @@ public interface ExamResultRepository extends MongoRepository<ExamResult, String
      * Find all results for a specific student.
      */
     List<ExamResult> findByStudentEmail(String studentEmail);
-    List<ExamResult> findByStudentEmailIgnoreCase(String email);
+
+    /**
+     * Case-insensitive lookup: exact studentEmailLower match, plus the raw email for
+     * results the backfill has not reached yet.
+     */
+    @Query("{ $or: [ { 'studentEmailLower': ?0 }, { 'studentEmailLower': null, 'studentEmail': ?1 } ] }")
+    List<ExamResult> findByStudentEmailLower(String studentEmailLower, Pattern legacyEmail);
 
     /**
      * Find a student's result for a specific exam.
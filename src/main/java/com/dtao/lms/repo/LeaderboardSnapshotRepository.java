@@ -0,0 +1,9 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.LeaderboardSnapshot;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LeaderboardSnapshotRepository extends MongoRepository<LeaderboardSnapshot, String> {
+}
@@ -0,0 +1,9 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.UserProgressStats;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserProgressStatsRepository extends MongoRepository<UserProgressStats, String> {
+}
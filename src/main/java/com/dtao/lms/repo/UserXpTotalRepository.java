@@ -0,0 +1,9 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.UserXpTotal;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserXpTotalRepository extends MongoRepository<UserXpTotal, String> {
+}
@@ -7,9 +7,10 @@ import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 @Repository
-public interface VideoProgressRepository extends MongoRepository<VideoProgress, String> {
+public interface VideoProgressRepository extends MongoRepository<VideoProgress, String>, VideoProgressRepositoryCustom {
 
     // 🟢 Basic queries
     Optional<VideoProgress> findByEmailAndVideoId(String email, String videoId);
@@ -31,20 +32,18 @@ public interface VideoProgressRepository extends MongoRepository<VideoProgress,
 
     // ✅ Dashboard Queries
 
+    // Dashboard queries match on emailLower (exact, indexed) — pass EmailNormalizer.normalize(email)
+    // and EmailNormalizer.legacyMatch(email) for rows the backfill has not reached yet
+
     // 🔹 Count completed videos (case-insensitive match)
-    @Query(value = "{ 'email': { $regex: ?0, $options: 'i' }, 'completed': true }", count = true)
-    long countCompletedVideosByEmail(String email);
+    @Query(value = "{ $or: [ { 'emailLower': ?0 }, { 'emailLower': null, 'email': ?1 } ], 'completed': true }", count = true)
+    long countCompletedVideosByEmailLower(String emailLower, Pattern legacyEmail);
 
     // 🔹 Get recent completed videos (limit 5)
-    @Query(value = "{ 'email': { $regex: ?0, $options: 'i' }, 'completed': true }",
+    @Query(value = "{ $or: [ { 'emailLower': ?0 }, { 'emailLower': null, 'email': ?1 } ], 'completed': true }",
             sort = "{ 'updatedAt': -1 }",
             fields = "{ 'videoId': 1, 'videoTitle': 1 }")
-    List<VideoProgress> findRecentCompletedVideos(String email);
-
-    // 🔹 Get progress ratios for average progress calculation
-    @Query(value = "{ 'email': { $regex: ?0, $options: 'i' }, 'duration': { $gt: 0 } }",
-            fields = "{ 'lastPosition': 1, 'duration': 1, 'completed': 1 }")
-    List<VideoProgress> findProgressRatioByEmail(String email);
+    List<VideoProgress> findRecentCompletedVideosByEmailLower(String emailLower, Pattern legacyEmail);
 
     // ✅ Fetch recent completed videos with both videoId and title (for dashboard)
     @Query(value = "{ 'email': ?0, 'completed': true }", sort = "{ 'updatedAt': -1 }")
@@ -0,0 +1,45 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.VideoProgress;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * VideoProgressRepositoryCustom
+ *
+ * Atomic, server-side progress writes that MongoRepository's derived queries cannot express.
+ * Uniqueness of (email, videoId) is enforced by the unique email_video_idx index.
+ */
+public interface VideoProgressRepositoryCustom {
+
+    /**
+     * Upsert progress in a single findAndModify:
+     * lastPosition, duration and completed only move forward ($max),
+     * videoTitle/createdAt are written only on insert ($setOnInsert).
+     *
+     * @return the document as it was BEFORE this write, or null if it was inserted
+     */
+    VideoProgress upsertProgressAtomic(String email, String videoId,
+                                       Double lastPosition, Double duration,
+                                       boolean completed, String videoTitle);
+
+    /**
+     * Set videoTitle only on documents that don't have one yet.
+     */
+    void setVideoTitleIfMissing(String email, String videoId, String videoTitle);
+
+    /**
+     * Apply many progress writes with one unordered bulk write using the same
+     * monotonic update as {@link #upsertProgressAtomic}.
+     *
+     * @return number of documents inserted or modified
+     */
+    int bulkUpsertProgress(Collection<VideoProgress> writes);
+
+    /**
+     * Completed-video count per (lower-cased) email over the given videos,
+     * computed with one $match/$group aggregation.
+     */
+    Map<String, Long> countCompletedByEmail(Collection<String> videoIds);
+}
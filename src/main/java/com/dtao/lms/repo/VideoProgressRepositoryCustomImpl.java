@@ -0,0 +1,125 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link VideoProgressRepositoryCustom} on top of MongoTemplate.
+ */
+public class VideoProgressRepositoryCustomImpl implements VideoProgressRepositoryCustom {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoProgressRepositoryCustomImpl.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public VideoProgressRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public VideoProgress upsertProgressAtomic(String email, String videoId,
+                                              Double lastPosition, Double duration,
+                                              boolean completed, String videoTitle) {
+        Query query = byEmailAndVideo(email, videoId);
+        Update update = progressUpdate(email, lastPosition, duration, completed, videoTitle, Instant.now());
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(false);
+
+        try {
+            return mongoTemplate.findAndModify(query, update, options, VideoProgress.class);
+        } catch (DuplicateKeyException e) {
+            // two concurrent first writes raced on the unique index — the loser retries as an update
+            log.debug("Concurrent progress insert for {}/{} — retrying as update", email, videoId);
+            return mongoTemplate.findAndModify(query, update, options, VideoProgress.class);
+        }
+    }
+
+    @Override
+    public void setVideoTitleIfMissing(String email, String videoId, String videoTitle) {
+        if (videoTitle == null || videoTitle.isBlank()) return;
+        Query query = new Query(Criteria.where("email").is(email).and("videoId").is(videoId)
+                .orOperator(Criteria.where("videoTitle").is(null), Criteria.where("videoTitle").is("")));
+        mongoTemplate.updateFirst(query, new Update().set("videoTitle", videoTitle), VideoProgress.class);
+    }
+
+    @Override
+    public int bulkUpsertProgress(Collection<VideoProgress> writes) {
+        if (writes == null || writes.isEmpty()) return 0;
+
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VideoProgress.class);
+        for (VideoProgress w : writes) {
+            Instant at = w.getUpdatedAt() != null ? w.getUpdatedAt() : Instant.now();
+            ops.upsert(byEmailAndVideo(w.getEmail(), w.getVideoId()),
+                    progressUpdate(w.getEmail(), w.getLastPosition(), w.getDuration(), w.isCompleted(), w.getVideoTitle(), at));
+        }
+        BulkWriteResult result = ops.execute();
+        return result.getUpserts().size() + result.getModifiedCount();
+    }
+
+    @Override
+    public Map<String, Long> countCompletedByEmail(Collection<String> videoIds) {
+        if (videoIds == null || videoIds.isEmpty()) return Map.of();
+
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("videoId", new Document("$in", new ArrayList<>(videoIds)))
+                        .append("completed", true)),
+                // same key as the normalized lookups: emailLower, or the lower-cased raw email on legacy rows
+                new Document("$group", new Document("_id", new Document("$ifNull",
+                                List.of("$emailLower", new Document("$toLower", "$email"))))
+                        .append("completed", new Document("$addToSet", "$videoId"))),
+                new Document("$project", new Document("completed", new Document("$size", "$completed")))
+        );
+
+        Map<String, Long> out = new HashMap<>();
+        for (Document d : mongoTemplate.getCollection(mongoTemplate.getCollectionName(VideoProgress.class))
+                .aggregate(pipeline).allowDiskUse(true)) {
+            Object email = d.get("_id");
+            Number completed = d.get("completed", Number.class);
+            if (email != null && completed != null) out.put(email.toString(), completed.longValue());
+        }
+        return out;
+    }
+
+    // --- helpers ---
+
+    private static Query byEmailAndVideo(String email, String videoId) {
+        return new Query(Criteria.where("email").is(email).and("videoId").is(videoId));
+    }
+
+    private static Update progressUpdate(String email, Double lastPosition, Double duration, boolean completed,
+                                         String videoTitle, Instant now) {
+        Update update = new Update()
+                .set("updatedAt", now)
+                .setOnInsert("createdAt", now)
+                .setOnInsert("emailLower", EmailNormalizer.normalize(email))
+                .max("completed", completed); // BSON orders false < true, so completion never reverts
+
+        if (isFinite(lastPosition)) update.max("lastPosition", Math.max(0.0, lastPosition));
+        else update.setOnInsert("lastPosition", 0.0);
+
+        if (isFinite(duration)) update.max("duration", Math.max(0.0, duration));
+        else update.setOnInsert("duration", 0.0);
+
+        if (videoTitle != null && !videoTitle.isBlank()) update.setOnInsert("videoTitle", videoTitle);
+        return update;
+    }
+
+    private static boolean isFinite(Double v) { return v != null && !v.isNaN() && !v.isInfinite(); }
+}
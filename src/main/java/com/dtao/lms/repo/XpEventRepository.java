@@ -6,18 +6,14 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 @Repository
-public interface XpEventRepository extends MongoRepository<XpEvent, String> {
+public interface XpEventRepository extends MongoRepository<XpEvent, String>, XpEventRepositoryCustom {
 
     List<XpEvent> findByEmailOrderByCreatedAtDesc(String email);
 
-    @Query(value = "{ 'email': ?0, 'type': ?1, 'videoId': ?2 }", count = true)
-    long countByEmailAndTypeAndVideoId(String email, String type, String videoId);
-
-    @Query(value = "{ 'email': ?0, 'type': ?1, 'questionId': ?2 }", count = true)
-    long countByEmailAndTypeAndQuestionId(String email, String type, String questionId);
-
-    @Query(value = "{ 'email': ?0, 'type': ?1, 'courseId': ?2 }", count = true)
-    long countByEmailAndTypeAndCourseId(String email, String type, String courseId);
+    // exact emailLower match, plus the raw email for events the backfill has not reached yet
+    @Query(value = "{ $or: [ { 'emailLower': ?0 }, { 'emailLower': null, 'email': ?1 } ] }", sort = "{ 'createdAt': -1 }")
+    List<XpEvent> findByEmailLowerOrderByCreatedAtDesc(String emailLower, Pattern legacyEmail);
 }
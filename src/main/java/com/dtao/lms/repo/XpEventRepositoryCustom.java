@@ -0,0 +1,22 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.XpEvent;
+
+import java.util.List;
+
+/**
+ * XpEventRepositoryCustom
+ *
+ * Idempotent XP inserts. Uniqueness of (email, type, entity) awards is enforced by the
+ * unique partial xp_dedup_key_idx index on dedupKey.
+ */
+public interface XpEventRepositoryCustom {
+
+    /**
+     * Insert all events with one unordered insertMany. Events rejected by the dedup index
+     * (already awarded) are skipped; the rest are still written.
+     *
+     * @return the events that were actually inserted
+     */
+    List<XpEvent> insertIgnoringDuplicates(List<XpEvent> events);
+}
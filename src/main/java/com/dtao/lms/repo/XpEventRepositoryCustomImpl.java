@@ -0,0 +1,55 @@
+package com.dtao.lms.repo;
+
+import com.dtao.lms.model.XpEvent;
+import com.mongodb.bulk.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of {@link XpEventRepositoryCustom} on top of MongoTemplate.
+ */
+public class XpEventRepositoryCustomImpl implements XpEventRepositoryCustom {
+
+    private static final Logger log = LoggerFactory.getLogger(XpEventRepositoryCustomImpl.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    public XpEventRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<XpEvent> insertIgnoringDuplicates(List<XpEvent> events) {
+        if (events == null || events.isEmpty()) return List.of();
+
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, XpEvent.class);
+        ops.insert(events);
+        try {
+            ops.execute();
+            return events;
+        } catch (BulkOperationException e) {
+            Set<Integer> rejected = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                rejected.add(error.getIndex());
+                if (error.getCode() != DUPLICATE_KEY) {
+                    log.warn("XP event insert failed at index {}: {}", error.getIndex(), error.getMessage());
+                }
+            }
+            List<XpEvent> inserted = new ArrayList<>(events.size() - rejected.size());
+            for (int i = 0; i < events.size(); i++) {
+                if (!rejected.contains(i)) inserted.add(events.get(i));
+            }
+            return inserted;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.LeaderboardResponse;
+import com.dtao.lms.model.Enrollment;
+import com.dtao.lms.model.LeaderboardEntry;
+import com.dtao.lms.model.User;
+import com.dtao.lms.repo.VideoProgressRepository;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.dtao.lms.utils.LeaderboardLevels;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 📚 CourseLeaderboardService
+ *
+ * Course-scoped leaderboard over the course's APPROVED enrollments: completion
+ * (completed videos / course videos, from video_progress) and XP earned in the course
+ * (events tagged with the course, or VIDEO events of its videos). Each signal is one
+ * aggregation; the result is cached per course and invalidated only when that course's
+ * enrollments, completions, XP or structure change.
+ */
+@Service
+public class CourseLeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(CourseLeaderboardService.class);
+
+    /** Ranking order of a course board: completion ↓, course XP ↓, name ↑. */
+    static final Comparator<LeaderboardEntry> ORDER = Comparator
+            .comparingDouble(LeaderboardEntry::getProgressPercent).reversed()
+            .thenComparing(Comparator.comparingInt(LeaderboardEntry::getXp).reversed())
+            .thenComparing(LeaderboardEntry::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(LeaderboardEntry::getEmail, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final MongoTemplate mongoTemplate;
+    private final CourseTreeCache courseTreeCache;
+    private final VideoProgressRepository progressRepo;
+
+    private final Cache<String, LeaderboardResponse> boards;
+    // per-course stamp of in-flight builds; invalidate drops it so a stale build is never published
+    private final AtomicLong stamps = new AtomicLong();
+    private final Map<String, Long> building = new ConcurrentHashMap<>();
+
+    public CourseLeaderboardService(MongoTemplate mongoTemplate,
+                                    CourseTreeCache courseTreeCache,
+                                    VideoProgressRepository progressRepo,
+                                    ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                    @Value("${lms.cache.course-leaderboards.max-size:500}") long maxSize,
+                                    @Value("${lms.cache.course-leaderboards.ttl-minutes:30}") long ttlMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.courseTreeCache = courseTreeCache;
+        this.progressRepo = progressRepo;
+        this.boards = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(Math.max(1, ttlMinutes), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, boards, "courseLeaderboards");
+        }
+    }
+
+    /**
+     * Ranked board of the course; built on a miss. A build that fails is answered with an empty
+     * board that is not cached, so the next read tries again.
+     */
+    public LeaderboardResponse getLeaderboard(String courseId) {
+        if (courseId == null || courseId.isBlank()) return new LeaderboardResponse(courseId, List.of());
+
+        LeaderboardResponse cached = boards.getIfPresent(courseId);
+        if (cached != null) return cached;
+
+        Long stamp = building.computeIfAbsent(courseId, k -> stamps.incrementAndGet());
+        try {
+            LeaderboardResponse built = build(courseId);
+            // only publish if nothing changed for this course while we were building
+            boards.asMap().compute(courseId, (k, current) -> stamp.equals(building.get(k)) ? built : current);
+            return built;
+        } catch (Exception e) {
+            log.error("Failed to build course leaderboard for {}: {}", courseId, e.getMessage());
+            return new LeaderboardResponse(courseId, List.of());
+        } finally {
+            building.remove(courseId, stamp);
+        }
+    }
+
+    /**
+     * Something that feeds this course's board changed (enrollment, completion, XP, videos).
+     */
+    public void invalidate(String courseId) {
+        if (courseId == null || courseId.isBlank()) return;
+        building.remove(courseId);
+        boards.invalidate(courseId);
+    }
+
+    private LeaderboardResponse build(String courseId) {
+        long start = System.currentTimeMillis();
+        // 1) approved learners of the course
+        Query enrolled = new Query(Criteria.where("courseId").is(courseId).and("status").is("APPROVED"));
+        enrolled.fields().include("email");
+        Map<String, String> learners = new LinkedHashMap<>(); // emailLower -> email
+        for (Enrollment e : mongoTemplate.find(enrolled, Enrollment.class)) {
+            String key = EmailNormalizer.normalize(e.getEmail());
+            if (key != null) learners.putIfAbsent(key, e.getEmail());
+        }
+        if (learners.isEmpty()) return new LeaderboardResponse(courseId, List.of());
+
+        // 2) completion and course XP — one aggregation each
+        List<String> videoIds = courseTreeCache.videoIds(courseId);
+        Map<String, Long> completed = videoIds.isEmpty() ? Map.of() : progressRepo.countCompletedByEmail(videoIds);
+        Map<String, Long> xp = courseXp(courseId, videoIds);
+
+        // 3) display names in one projected query
+        Map<String, String> names = namesOf(learners.values());
+
+        List<LeaderboardEntry> entries = new ArrayList<>(learners.size());
+        int total = videoIds.size();
+        learners.forEach((key, email) -> {
+            long done = Math.min(completed.getOrDefault(key, 0L), total);
+            double percent = total == 0 ? 0.0 : Math.round(done * 10000.0 / total) / 100.0;
+            int points = (int) Math.min(Integer.MAX_VALUE, xp.getOrDefault(key, 0L));
+            entries.add(new LeaderboardEntry(email, names.get(key), percent, 0, 0,
+                    points, LeaderboardLevels.level(points), LeaderboardLevels.badge(points)));
+        });
+        entries.sort(ORDER);
+        int rank = 1;
+        for (LeaderboardEntry e : entries) e.setRank(rank++);
+
+        log.debug("Course leaderboard built for {}: {} learners in {} ms", courseId, entries.size(), System.currentTimeMillis() - start);
+        return new LeaderboardResponse(courseId, entries);
+    }
+
+    /** XP per learner from events tagged with the course or earned on one of its videos. */
+    private Map<String, Long> courseXp(String courseId, List<String> videoIds) {
+        List<Document> scope = new ArrayList<>();
+        scope.add(new Document("courseId", courseId));
+        if (!videoIds.isEmpty()) scope.add(new Document("videoId", new Document("$in", videoIds)));
+
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("$or", scope)),
+                new Document("$group", new Document("_id",
+                        new Document("$ifNull", List.of("$emailLower", new Document("$toLower", "$email"))))
+                        .append("xp", new Document("$sum", "$score"))));
+
+        Map<String, Long> out = new HashMap<>();
+        for (Document d : mongoTemplate.getCollection("xp_events").aggregate(pipeline).allowDiskUse(true)) {
+            Object id = d.get("_id");
+            Object total = d.get("xp");
+            if (id != null && total instanceof Number n) out.put(id.toString(), n.longValue());
+        }
+        return out;
+    }
+
+    private Map<String, String> namesOf(java.util.Collection<String> emails) {
+        Query query = new Query(Criteria.where("email").in(emails));
+        query.fields().include("email").include("name");
+        Map<String, String> out = new HashMap<>();
+        for (User u : mongoTemplate.find(query, User.class)) {
+            String key = EmailNormalizer.normalize(u.getEmail());
+            if (key != null) out.putIfAbsent(key, u.getName());
+        }
+        return out;
+    }
+}
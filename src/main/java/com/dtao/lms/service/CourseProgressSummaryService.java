@@ -0,0 +1,203 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.CourseProgressSummary;
+import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.repo.CourseProgressSummaryRepository;
+import com.dtao.lms.repo.VideoProgressRepository;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 📊 CourseProgressSummaryService
+ *
+ * Maintains the course_progress_summary read model keyed by (email, courseId).
+ * Summaries are built once from video_progress on first read, then kept current
+ * with small upserts instead of being recomputed per request. Every write is a pipeline
+ * update that merges into the stored completed set and recounts it, so builds and
+ * concurrent completions commute.
+ */
+@Service
+public class CourseProgressSummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(CourseProgressSummaryService.class);
+
+    private final CourseProgressSummaryRepository summaryRepo;
+    private final VideoProgressRepository progressRepo;
+    private final MongoTemplate mongoTemplate;
+    private final CourseTreeCache courseTreeCache;
+    private final VideoMetadataCache videoMetadataCache;
+
+    @Autowired(required = false)
+    private CourseLeaderboardService courseLeaderboardService;
+
+    public CourseProgressSummaryService(CourseProgressSummaryRepository summaryRepo,
+                                        VideoProgressRepository progressRepo,
+                                        MongoTemplate mongoTemplate,
+                                        CourseTreeCache courseTreeCache,
+                                        VideoMetadataCache videoMetadataCache) {
+        this.summaryRepo = summaryRepo;
+        this.progressRepo = progressRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.courseTreeCache = courseTreeCache;
+        this.videoMetadataCache = videoMetadataCache;
+    }
+
+    /**
+     * Point read of the summary; built from video_progress the first time it is requested
+     * (or when only completions have been recorded so far).
+     */
+    public CourseProgressSummary getSummary(String email, String courseId) {
+        return summaryRepo.findByEmailAndCourseId(email, courseId)
+                .filter(CourseProgressSummary::isBuilt)
+                .orElseGet(() -> buildSummary(email, courseId));
+    }
+
+    /**
+     * Called once per (email, video) on the first completion. Upserts the video into the
+     * completed set, so a completion that lands while the summary is being built is never lost.
+     */
+    public void onVideoCompleted(String email, String videoId) {
+        if (videoId != null) onVideosCompleted(email, List.of(videoId));
+    }
+
+    /**
+     * First completions of several videos (batch progress): one upsert per affected course.
+     */
+    public void onVideosCompleted(String email, Collection<String> videoIds) {
+        if (email == null || videoIds == null || videoIds.isEmpty()) return;
+        Map<String, List<String>> byCourse = new LinkedHashMap<>();
+        try {
+            for (VideoMetadataCache.VideoMeta meta : videoMetadataCache.getAll(videoIds).values()) {
+                if (meta.courseId() != null) byCourse.computeIfAbsent(meta.courseId(), k -> new ArrayList<>()).add(meta.id());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to resolve courses of {} completed videos for {}: {}", videoIds.size(), email, e.getMessage());
+            return;
+        }
+
+        byCourse.forEach((courseId, completed) -> {
+            try {
+                if (courseLeaderboardService != null) courseLeaderboardService.invalidate(courseId);
+                Document set = new Document("completedVideoIds", new Document("$setUnion",
+                        List.of(completedOrEmpty(), completed)))
+                        .append("updatedAt", Instant.now());
+                upsert(email, courseId, set);
+            } catch (Exception e) {
+                log.warn("Failed to update course summary for {} course {}: {}", email, courseId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * A video was added to a course: every learner's total grows by one.
+     */
+    public void onVideoAdded(String courseId) {
+        if (courseId == null) return;
+        try {
+            mongoTemplate.updateMulti(
+                    new Query(Criteria.where("courseId").is(courseId)),
+                    new Update().inc("totalVideos", 1).set("updatedAt", Instant.now()),
+                    CourseProgressSummary.class);
+        } catch (Exception e) {
+            log.warn("Failed to bump course summaries for course {}: {}", courseId, e.getMessage());
+        }
+    }
+
+    /**
+     * Videos were removed from a course: shrink totals and drop them from completed sets.
+     */
+    public void onVideosRemoved(String courseId, Collection<String> videoIds) {
+        if (courseId == null || videoIds == null || videoIds.isEmpty()) return;
+        try {
+            // one update: drop the videos from every completed set, shrink totals, recount
+            AggregationUpdate update = AggregationUpdate.from(List.of(
+                    stage(new Document("completedVideoIds", new Document("$setDifference",
+                            List.of(completedOrEmpty(), new ArrayList<>(videoIds))))
+                            .append("totalVideos", new Document("$max",
+                                    List.of(0, new Document("$subtract", List.of("$totalVideos", videoIds.size())))))
+                            .append("updatedAt", Instant.now())),
+                    stage(new Document("completedCount", new Document("$size", "$completedVideoIds")))));
+            mongoTemplate.updateMulti(new Query(Criteria.where("courseId").is(courseId)), update,
+                    CourseProgressSummary.class);
+        } catch (Exception e) {
+            log.warn("Failed to shrink course summaries for course {}: {}", courseId, e.getMessage());
+        }
+    }
+
+    public void onCourseDeleted(String courseId) {
+        if (courseId == null) return;
+        try {
+            summaryRepo.deleteByCourseId(courseId);
+        } catch (Exception e) {
+            log.warn("Failed to delete course summaries for course {}: {}", courseId, e.getMessage());
+        }
+    }
+
+    // --- helpers ---
+
+    /**
+     * Seed the summary from video_progress, merged into whatever completions were upserted
+     * meanwhile, and read back the stored result.
+     */
+    private CourseProgressSummary buildSummary(String email, String courseId) {
+        List<String> videoIds = courseTreeCache.videoIds(courseId);
+        List<String> completed = videoIds.isEmpty() ? new ArrayList<>() :
+                progressRepo.findByEmailAndVideoIdIn(email, videoIds).stream()
+                        .filter(VideoProgress::isCompleted)
+                        .map(VideoProgress::getVideoId)
+                        .distinct()
+                        .collect(Collectors.toCollection(ArrayList::new));
+
+        Document set = new Document("completedVideoIds", new Document("$setUnion", List.of(completedOrEmpty(), completed)))
+                .append("totalVideos", videoIds.size())
+                .append("built", true)
+                .append("updatedAt", Instant.now());
+        CourseProgressSummary stored = upsert(email, courseId, set);
+        return stored != null ? stored : new CourseProgressSummary(email, courseId, videoIds.size(), completed);
+    }
+
+    /**
+     * Pipeline upsert on (email, courseId): apply {@code set}, then recount completedCount from the
+     * set, so the count always matches the ids. Returns the stored summary.
+     */
+    private CourseProgressSummary upsert(String email, String courseId, Document set) {
+        Query query = new Query(Criteria.where("email").is(email).and("courseId").is(courseId));
+        AggregationUpdate update = AggregationUpdate.from(List.of(
+                stage(set),
+                stage(new Document("completedCount", new Document("$size", "$completedVideoIds")))));
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, CourseProgressSummary.class);
+        } catch (DuplicateKeyException e) {
+            // inserted concurrently by another request — apply to the stored one
+            return mongoTemplate.findAndModify(query, update, options, CourseProgressSummary.class);
+        }
+    }
+
+    private static Document completedOrEmpty() {
+        return new Document("$ifNull", List.of("$completedVideoIds", List.of()));
+    }
+
+    private static AggregationOperation stage(Document set) {
+        return context -> new Document("$set", set);
+    }
+}
@@ -14,7 +14,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -31,15 +33,26 @@ public class CourseService {
     private final CourseRepository courseRepo;
     private final ChapterRepository chapterRepo;
     private final VideoRepository videoRepo;
+    private final CourseProgressSummaryService summaryService;
+    private final CourseTreeCache courseTreeCache;
+    private final VideoMetadataCache videoMetadataCache;
 
     // 🆕 XP events (optional)
     @Autowired(required = false)
     private XpEventService xpEventService;
 
-    public CourseService(CourseRepository courseRepo, ChapterRepository chapterRepo, VideoRepository videoRepo) {
+    @Autowired(required = false)
+    private CourseLeaderboardService courseLeaderboardService;
+
+    public CourseService(CourseRepository courseRepo, ChapterRepository chapterRepo, VideoRepository videoRepo,
+                         CourseProgressSummaryService summaryService, CourseTreeCache courseTreeCache,
+                         VideoMetadataCache videoMetadataCache) {
         this.courseRepo = courseRepo;
         this.chapterRepo = chapterRepo;
         this.videoRepo = videoRepo;
+        this.summaryService = summaryService;
+        this.courseTreeCache = courseTreeCache;
+        this.videoMetadataCache = videoMetadataCache;
     }
 
     // === COURSES ===
@@ -91,6 +104,7 @@ public class CourseService {
                     List<Video> vids = videoRepo.findByChapterIdOrderByOrderAsc(ch.getId());
                     if (vids != null && !vids.isEmpty()) {
                         videoRepo.deleteAll(vids);
+                        videoMetadataCache.invalidateAll(vids.stream().map(Video::getId).toList());
                     }
                 }
                 chapterRepo.deleteAll(chapters);
@@ -100,9 +114,12 @@ public class CourseService {
             List<Video> orphans = videoRepo.findByCourseIdAndChapterIdIsNullOrderByOrderAsc(id);
             if (orphans != null && !orphans.isEmpty()) {
                 videoRepo.deleteAll(orphans);
+                videoMetadataCache.invalidateAll(orphans.stream().map(Video::getId).toList());
             }
 
             courseRepo.deleteById(id);
+            invalidateCourse(id);
+            summaryService.onCourseDeleted(id);
             log.debug("Deleted course {} and its chapters/videos", id);
         } catch (Exception ex) {
             log.error("Failed to delete course {} : {}", id, ex.getMessage(), ex);
@@ -124,6 +141,7 @@ public class CourseService {
         ch.setCreatedAt(now);
         ch.setUpdatedAt(now);
         Chapter saved = chapterRepo.save(ch);
+        invalidateCourse(saved.getCourseId());
         log.debug("Created chapter {}", saved.getId());
         return saved;
     }
@@ -135,6 +153,7 @@ public class CourseService {
             if (newData.getDescription() != null) existing.setDescription(newData.getDescription());
             existing.setUpdatedAt(Instant.now());
             Chapter saved = chapterRepo.save(existing);
+            invalidateCourse(saved.getCourseId());
             log.debug("Updated chapter {}", saved.getId());
             return saved;
         });
@@ -147,11 +166,16 @@ public class CourseService {
     public void deleteChapter(String id) {
         if (id == null || id.isBlank()) return;
         try {
+            String courseId = chapterRepo.findById(id).map(Chapter::getCourseId).orElse(null);
             List<Video> vids = videoRepo.findByChapterIdOrderByOrderAsc(id);
             if (vids != null && !vids.isEmpty()) {
+                List<String> ids = vids.stream().map(Video::getId).toList();
                 videoRepo.deleteAll(vids);
+                videoMetadataCache.invalidateAll(ids);
+                summaryService.onVideosRemoved(courseId, ids);
             }
             chapterRepo.deleteById(id);
+            invalidateCourse(courseId);
             log.debug("Deleted chapter {} and its videos", id);
         } catch (Exception ex) {
             log.error("Failed to delete chapter {} : {}", id, ex.getMessage(), ex);
@@ -179,6 +203,9 @@ public class CourseService {
         v.setCreatedAt(now);
         v.setUpdatedAt(now);
         Video saved = videoRepo.save(v);
+        String courseId = resolveCourseId(saved);
+        invalidateCourse(courseId);
+        summaryService.onVideoAdded(courseId);
         log.debug("Created video {}", saved.getId());
         return saved;
     }
@@ -192,6 +219,8 @@ public class CourseService {
             if (newData.getContentType() != null) existing.setContentType(newData.getContentType());
             existing.setUpdatedAt(Instant.now());
             Video saved = videoRepo.save(existing);
+            videoMetadataCache.invalidate(saved.getId());
+            invalidateCourse(resolveCourseId(saved));
             log.debug("Updated video {}", saved.getId());
             return saved;
         });
@@ -200,7 +229,14 @@ public class CourseService {
     public void deleteVideo(String id) {
         if (id == null || id.isBlank()) return;
         try {
+            Video existing = videoRepo.findById(id).orElse(null);
             videoRepo.deleteById(id);
+            videoMetadataCache.invalidate(id);
+            if (existing != null) {
+                String courseId = resolveCourseId(existing);
+                invalidateCourse(courseId);
+                summaryService.onVideosRemoved(courseId, List.of(id));
+            }
             log.debug("Deleted video {}", id);
         } catch (Exception ex) {
             log.error("Failed to delete video {} : {}", id, ex.getMessage(), ex);
@@ -209,25 +245,41 @@ public class CourseService {
     }
 
     /**
-     * Helper to get all videos belonging to a course (videos inside chapters + videos without chapter)
+     * Helper to get all videos belonging to a course (videos inside chapters + videos without chapter).
+     * Order comes from the cached course tree; the documents themselves are one $in query.
      */
     public List<Video> getAllVideosForCourse(String courseId) {
         if (courseId == null || courseId.isBlank()) return List.of();
 
-        List<Chapter> chapters = chapterRepo.findByCourseIdOrderByOrderAsc(courseId);
-        List<Video> all = new ArrayList<>();
+        List<String> ids = courseTreeCache.videoIds(courseId);
+        if (ids.isEmpty()) return List.of();
 
-        if (chapters != null && !chapters.isEmpty()) {
-            for (Chapter ch : chapters) {
-                List<Video> vids = videoRepo.findByChapterIdOrderByOrderAsc(ch.getId());
-                if (vids != null && !vids.isEmpty()) all.addAll(vids);
-            }
+        Map<String, Video> byId = new HashMap<>();
+        for (Video v : videoRepo.findAllById(ids)) byId.put(v.getId(), v);
+
+        List<Video> all = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Video v = byId.get(id);
+            if (v != null) all.add(v);
         }
+        return all;
+    }
 
-        List<Video> noChapter = videoRepo.findByCourseIdAndChapterIdIsNullOrderByOrderAsc(courseId);
-        if (noChapter != null && !noChapter.isEmpty()) all.addAll(noChapter);
+    /**
+     * Ordered video ids of a course, served from the course tree cache (no query on a hit).
+     */
+    public List<String> getVideoIdsForCourse(String courseId) {
+        return courseTreeCache.videoIds(courseId);
+    }
 
-        return all;
+    /**
+     * Course a video belongs to — its own courseId, or its chapter's course.
+     */
+    private String resolveCourseId(Video v) {
+        if (v == null) return null;
+        if (v.getCourseId() != null && !v.getCourseId().isBlank()) return v.getCourseId();
+        if (v.getChapterId() == null || v.getChapterId().isBlank()) return null;
+        return chapterRepo.findById(v.getChapterId()).map(Chapter::getCourseId).orElse(null);
     }
 
     // ✅ NEW METHOD for video lookup by ID (used in ProgressService)
@@ -241,6 +293,14 @@ public class CourseService {
         }
     }
 
+    /**
+     * The course's structure changed: drop the cached tree and the course board built on it.
+     */
+    private void invalidateCourse(String courseId) {
+        courseTreeCache.invalidate(courseId);
+        if (courseLeaderboardService != null) courseLeaderboardService.invalidate(courseId);
+    }
+
     /**
      * 🧩 Emit course-completion XP event (100 XP) — best-effort helper.
      * Call this after you detect a user completed all videos in a course.
@@ -0,0 +1,151 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.Chapter;
+import com.dtao.lms.model.Video;
+import com.dtao.lms.repo.ChapterRepository;
+import com.dtao.lms.repo.VideoRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 🌳 CourseTreeCache
+ *
+ * In-process cache of each course's ordered chapter/video-id structure.
+ * A load takes a unique stamp for the course and publishes atomically only if the
+ * stamp is still current; invalidation drops the stamp, so a load that started
+ * before a mutation can never publish a stale tree. Stamps only exist while a load
+ * is in flight.
+ *
+ * Invalidated explicitly by CourseService on every chapter/video/course mutation. That only
+ * reaches this instance, so trees also expire after a write TTL and pick up edits made through
+ * other instances.
+ */
+@Component
+public class CourseTreeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CourseTreeCache.class);
+
+    /** Key used for videos that sit directly under the course (no chapter). */
+    public static final String NO_CHAPTER = "";
+
+    private final ChapterRepository chapterRepo;
+    private final VideoRepository videoRepo;
+
+    private final Cache<String, CourseTree> trees;
+    private final AtomicLong stamps = new AtomicLong();
+    private final Map<String, Long> loading = new ConcurrentHashMap<>();
+
+    public CourseTreeCache(ChapterRepository chapterRepo,
+                           VideoRepository videoRepo,
+                           ObjectProvider<MeterRegistry> meterRegistryProvider,
+                           @Value("${lms.cache.course-trees.max-size:2000}") long maxSize,
+                           @Value("${lms.cache.course-trees.ttl-minutes:30}") long ttlMinutes) {
+        this.chapterRepo = chapterRepo;
+        this.videoRepo = videoRepo;
+        this.trees = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, ttlMinutes)))
+                .recordStats()
+                .build();
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, trees, "courseTree");
+        }
+    }
+
+    /**
+     * Ordered structure of a course (chapters in order, then their videos in order,
+     * then chapterless videos). Loaded from Mongo on a miss.
+     */
+    public CourseTree get(String courseId) {
+        if (courseId == null || courseId.isBlank()) return CourseTree.empty(courseId);
+
+        CourseTree cached = trees.getIfPresent(courseId);
+        if (cached != null) return cached;
+
+        Long stamp = loading.computeIfAbsent(courseId, k -> stamps.incrementAndGet());
+        try {
+            CourseTree loaded = load(courseId, stamp);
+            // publish only if no invalidation happened while we were loading (atomic with invalidate)
+            trees.asMap().compute(courseId, (k, current) -> stamp.equals(loading.get(k)) ? loaded : current);
+            return loaded;
+        } finally {
+            loading.remove(courseId, stamp);
+        }
+    }
+
+    public List<String> videoIds(String courseId) {
+        return get(courseId).videoIds();
+    }
+
+    /**
+     * Drop a course's tree; the next reader reloads it.
+     */
+    public void invalidate(String courseId) {
+        if (courseId == null || courseId.isBlank()) return;
+        loading.remove(courseId);
+        trees.invalidate(courseId);
+        log.debug("Course tree invalidated for {}", courseId);
+    }
+
+    private CourseTree load(String courseId, long version) {
+        List<Chapter> chapters = chapterRepo.findByCourseIdOrderByOrderAsc(courseId);
+        List<String> chapterIds = new ArrayList<>();
+        Map<String, List<String>> byChapter = new LinkedHashMap<>();
+        List<String> all = new ArrayList<>();
+
+        if (chapters != null) {
+            for (Chapter ch : chapters) {
+                List<String> ids = idsOf(videoRepo.findByChapterIdOrderByOrderAsc(ch.getId()));
+                chapterIds.add(ch.getId());
+                byChapter.put(ch.getId(), ids);
+                all.addAll(ids);
+            }
+        }
+
+        List<String> loose = idsOf(videoRepo.findByCourseIdAndChapterIdIsNullOrderByOrderAsc(courseId));
+        if (!loose.isEmpty()) {
+            byChapter.put(NO_CHAPTER, loose);
+            all.addAll(loose);
+        }
+
+        return new CourseTree(courseId, version, List.copyOf(chapterIds), Collections.unmodifiableMap(byChapter), List.copyOf(all));
+    }
+
+    private static List<String> idsOf(List<Video> videos) {
+        if (videos == null || videos.isEmpty()) return List.of();
+        return videos.stream().map(Video::getId).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Immutable snapshot of a course's structure at a given version.
+     */
+    public record CourseTree(String courseId,
+                             long version,
+                             List<String> chapterIds,
+                             Map<String, List<String>> videoIdsByChapter,
+                             List<String> videoIds) {
+
+        static CourseTree empty(String courseId) {
+            return new CourseTree(courseId, 0L, List.of(), Map.of(), List.of());
+        }
+    }
+}
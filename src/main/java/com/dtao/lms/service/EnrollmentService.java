@@ -6,6 +6,7 @@ import com.dtao.lms.model.EnrollmentAudit;
 import com.dtao.lms.repo.CourseRepository;
 import com.dtao.lms.repo.EnrollmentAuditRepository;
 import com.dtao.lms.repo.EnrollmentRepository;
+import com.dtao.lms.utils.EmailNormalizer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -32,6 +33,9 @@ public class EnrollmentService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired(required = false)
+    private CourseLeaderboardService courseLeaderboardService;
+
     private final RestTemplate restTemplate = new RestTemplate();
 
     @Value("${brevo.api.key}")
@@ -279,6 +283,7 @@ public class EnrollmentService {
         e.setNotes(approverNote);
         e.setUpdatedAt(Instant.now());
         Enrollment saved = enrollmentRepo.save(e);
+        invalidateCourseBoard(e.getCourseId());
 
         auditRepo.save(new EnrollmentAudit(
                 e.getId(), e.getCourseId(), e.getEmail(),
@@ -295,6 +300,7 @@ public class EnrollmentService {
         e.setNotes(note);
         e.setUpdatedAt(Instant.now());
         Enrollment saved = enrollmentRepo.save(e);
+        invalidateCourseBoard(e.getCourseId());
 
         auditRepo.save(new EnrollmentAudit(
                 e.getId(), e.getCourseId(), e.getEmail(),
@@ -306,13 +312,19 @@ public class EnrollmentService {
     }
 
     public void deleteEnrollment(String id) {
+        String courseId = enrollmentRepo.findById(id).map(Enrollment::getCourseId).orElse(null);
         enrollmentRepo.deleteById(id);
+        invalidateCourseBoard(courseId);
+    }
+
+    private void invalidateCourseBoard(String courseId) {
+        if (courseLeaderboardService != null) courseLeaderboardService.invalidate(courseId);
     }
 
     public long countEnrollmentsByEmail(String email) {
         if (email == null || email.isBlank()) return 0;
         try {
-            return enrollmentRepo.countByEmailRegex(email);
+            return enrollmentRepo.countByEmailLower(EmailNormalizer.normalize(email), EmailNormalizer.legacyMatch(email));
         } catch (Exception e) {
             System.err.println("[EnrollmentService] Failed to count enrollments: " + e.getMessage());
             return 0;
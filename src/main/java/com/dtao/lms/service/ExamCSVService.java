@@ -24,6 +24,9 @@ public class ExamCSVService {
 
     private final ExamRepository examRepository;
 
+    @Autowired(required = false)
+    private ExamSnapshotCache examSnapshotCache;
+
     @Autowired
     public ExamCSVService(ExamRepository examRepository) {
         this.examRepository = examRepository;
@@ -52,6 +55,7 @@ public class ExamCSVService {
             // ✅ Step 3: Attach to Exam and Save
             exam.setQuestions(questions);
             Exam savedExam = examRepository.save(exam);
+            if (examSnapshotCache != null) examSnapshotCache.invalidate(examId);
 
             System.out.println(String.format(
                     "✅ Successfully imported %d questions into exam '%s' (ID: %s)",
@@ -0,0 +1,93 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.ExamResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ✏️ ExamDraftWriter
+ *
+ * Writes autosaved exam answers onto the student's attempt. Each autosave is one update that
+ * {@code $set}s only the slots it carries: {@code draftAnswers.<question ordinal>} (the latest
+ * answer per question wins, also within one request). Drafts only land on attempts that are
+ * still IN_PROGRESS; autosaving a missing or already submitted attempt is rejected.
+ *
+ * Every autosave is stored before the request returns, so the draft is complete whichever
+ * instance serves the submit, and the final submission only needs to carry what changed since
+ * the last autosave.
+ */
+@Component
+public class ExamDraftWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ExamDraftWriter.class);
+
+    static final String DRAFT_FIELD = "draftAnswers";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Counter deltasCounter;
+    private final Counter writesCounter;
+
+    public ExamDraftWriter(MongoTemplate mongoTemplate, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.mongoTemplate = mongoTemplate;
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            this.deltasCounter = Counter.builder("lms.exam.drafts.deltas")
+                    .description("Autosaved answer deltas stored")
+                    .register(registry);
+            this.writesCounter = Counter.builder("lms.exam.drafts.writes")
+                    .description("Autosave writes to attempt drafts")
+                    .register(registry);
+        } else {
+            this.deltasCounter = null;
+            this.writesCounter = null;
+        }
+    }
+
+    /**
+     * Store answer deltas on the student's open attempt in one write. Answers to questions the
+     * exam doesn't have are ignored. Returns the number of deltas stored; throws when there is no
+     * IN_PROGRESS attempt to store them on.
+     */
+    public int record(ExamSnapshotCache.ExamSnapshot exam, String studentEmail, List<ExamSubmitRequest.Answer> answers) {
+        if (answers == null || answers.isEmpty()) return 0;
+
+        Map<Integer, ExamSubmitRequest.Answer> slots = new HashMap<>();
+        for (ExamSubmitRequest.Answer a : answers) {
+            if (a == null || a.getQuestionId() == null) continue;
+            int ordinal = exam.answerKey().ordinal(a.getQuestionId().trim());
+            if (ordinal < 0) continue;
+            slots.put(ordinal, new ExamSubmitRequest.Answer(exam.answerKey().questionId(ordinal), a.getSelectedOption()));
+        }
+        if (slots.isEmpty()) return 0;
+
+        Update update = new Update();
+        slots.forEach((ordinal, answer) -> update.set(DRAFT_FIELD + "." + ordinal, answer));
+        UpdateResult written = mongoTemplate.updateFirst(new Query(Criteria.where("examId").is(exam.id())
+                .and("studentEmail").is(studentEmail)
+                .and("status").is("IN_PROGRESS")), update, ExamResult.class);
+        if (written.getMatchedCount() == 0) {
+            throw new RuntimeException("Exam session not found or already submitted");
+        }
+
+        if (writesCounter != null) writesCounter.increment();
+        if (deltasCounter != null) deltasCounter.increment(slots.size());
+        log.debug("Autosaved {} answer slots for {} on exam {}", slots.size(), studentEmail, exam.id());
+        return slots.size();
+    }
+}
@@ -0,0 +1,497 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.ExamResult;
+import com.dtao.lms.model.XpEvent;
+import com.dtao.lms.utils.ExamEvaluatorUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 📝 ExamEvaluationPipeline
+ *
+ * Durable evaluation queue over exam_results. Submitting is one findAndModify that stores the
+ * answers not yet autosaved on the attempt (status EVALUATING) together with a lease; the attempt is then handed
+ * to an in-memory queue that dedicated workers drain in batches: each batch is scored against
+ * the exams' compiled answer keys, persisted with one unordered bulk write and handed to the
+ * leaderboards in one call.
+ *
+ * The stored answers are the source of truth. Attempts whose lease ran out (crash, restart,
+ * full queue) are re-claimed by the recovery sweep at startup and every recovery interval.
+ * A worker renews the lease when it takes an attempt off the queue and only then counts an
+ * evaluation attempt, so queued copies that were re-claimed meanwhile are dropped without
+ * using up attempts. Completions are fenced by the lease token, so a stale claim never
+ * overwrites a newer one. The completion marks the attempt's exam XP as pending; the sweep
+ * awards it again (idempotent via the XP event's dedupKey) when the process died before the
+ * award was stored.
+ *
+ * Metrics: lms.exam.eval.queue.depth, lms.exam.eval.batch.size, lms.exam.eval.latency
+ * (submit → persisted), lms.exam.eval.results{outcome}, lms.exam.eval.overflow,
+ * lms.exam.eval.recovered.
+ */
+@Component
+public class ExamEvaluationPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ExamEvaluationPipeline.class);
+
+    static final String EVALUATING = "EVALUATING";
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "EVALUATION_FAILED";
+
+    private final MongoTemplate mongoTemplate;
+    private final LeaderboardService leaderboardService;
+    private final ExamSnapshotCache examSnapshots;
+    private final ThreadPoolTaskExecutor executor;
+    private final BlockingQueue<Task> queue;
+    private final int maxBatch;
+    private final int workers;
+    private final Duration lease;
+    private final int maxAttempts;
+    private volatile boolean running = false;
+
+    private final DistributionSummary batchSize;
+    private final Timer latency;
+    private final Counter completed;
+    private final Counter failed;
+    private final Counter overflow;
+    private final Counter recovered;
+
+    public ExamEvaluationPipeline(MongoTemplate mongoTemplate,
+                                  LeaderboardService leaderboardService,
+                                  ExamSnapshotCache examSnapshots,
+                                  @Qualifier("examEvaluationExecutor") ThreadPoolTaskExecutor executor,
+                                  ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                  @Value("${lms.exam.eval.queue-capacity:10000}") int capacity,
+                                  @Value("${lms.exam.eval.max-batch:200}") int maxBatch,
+                                  @Value("${lms.exam.eval.workers:2}") int workers,
+                                  @Value("${lms.exam.eval.lease-seconds:120}") long leaseSeconds,
+                                  @Value("${lms.exam.eval.max-attempts:5}") int maxAttempts) {
+        this.mongoTemplate = mongoTemplate;
+        this.leaderboardService = leaderboardService;
+        this.examSnapshots = examSnapshots;
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxBatch = Math.max(1, maxBatch);
+        this.workers = Math.max(1, workers);
+        this.lease = Duration.ofSeconds(Math.max(10, leaseSeconds));
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("lms.exam.eval.queue.depth", queue, BlockingQueue::size)
+                    .description("Submitted attempts waiting for evaluation")
+                    .register(registry);
+            this.batchSize = DistributionSummary.builder("lms.exam.eval.batch.size")
+                    .description("Attempts evaluated per batch")
+                    .register(registry);
+            this.latency = Timer.builder("lms.exam.eval.latency")
+                    .description("Time from submit to persisted result")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry);
+            this.completed = Counter.builder("lms.exam.eval.results")
+                    .description("Evaluated exam attempts")
+                    .tag("outcome", "completed")
+                    .register(registry);
+            this.failed = Counter.builder("lms.exam.eval.results")
+                    .description("Evaluated exam attempts")
+                    .tag("outcome", "failed")
+                    .register(registry);
+            this.overflow = Counter.builder("lms.exam.eval.overflow")
+                    .description("Submitted attempts left to the recovery sweep because the queue was full")
+                    .register(registry);
+            this.recovered = Counter.builder("lms.exam.eval.recovered")
+                    .description("Attempts re-claimed after their evaluation lease expired")
+                    .register(registry);
+        } else {
+            this.batchSize = null;
+            this.latency = null;
+            this.completed = null;
+            this.failed = null;
+            this.overflow = null;
+            this.recovered = null;
+        }
+    }
+
+    private record Task(ExamSnapshotCache.ExamSnapshot exam, ExamResult result, long submittedNanos) {}
+
+    /**
+     * Store the answers on the student's open attempt and queue it, in one write. Returns the
+     * attempt as stored, or null when there is no attempt that can still be submitted.
+     */
+    public ExamResult submit(ExamSnapshotCache.ExamSnapshot exam, String studentEmail,
+                             List<ExamSubmitRequest.Answer> answers) {
+        long submittedNanos = System.nanoTime();
+        Instant now = Instant.now();
+        Query open = new Query(Criteria.where("examId").is(exam.id())
+                .and("studentEmail").is(studentEmail)
+                .and("status").nin(COMPLETED, EVALUATING));
+        Update update = new Update()
+                .set("status", EVALUATING)
+                .set("submittedAt", now)
+                .set("pendingAnswers", answers != null ? answers : List.of())
+                .set("leaseToken", UUID.randomUUID().toString())
+                .set("leaseUntil", now.plus(lease))
+                .set("evaluationAttempts", 0);
+
+        ExamResult result = mongoTemplate.findAndModify(open, update,
+                FindAndModifyOptions.options().returnNew(true), ExamResult.class);
+        if (result != null) enqueue(exam, result, submittedNanos);
+        return result;
+    }
+
+    private void enqueue(ExamSnapshotCache.ExamSnapshot exam, ExamResult result, long submittedNanos) {
+        if (queue.offer(new Task(exam, result, submittedNanos))) return;
+
+        // stays EVALUATING in Mongo; the recovery sweep claims it once the lease runs out
+        if (overflow != null) overflow.increment();
+        log.warn("Exam evaluation queue full ({}), deferring {} to recovery", queue.size(), result.getStudentEmail());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (running) return;
+        running = true;
+        for (int i = 0; i < workers; i++) executor.execute(this::work);
+        log.info("Exam evaluation pipeline started: workers={} maxBatch={} capacity={}", workers, maxBatch,
+                queue.remainingCapacity() + queue.size());
+        recover();
+    }
+
+    /** Workers finish what is queued, then exit. */
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    private void work() {
+        while (running || !queue.isEmpty()) {
+            try {
+                processBatch(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Exam evaluation batch failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Take up to max-batch queued attempts (waiting up to {@code waitMillis} for the first) and
+     * evaluate them. Returns the number of attempts taken off the queue.
+     */
+    int processBatch(long waitMillis) throws InterruptedException {
+        Task first = queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+        if (first == null) return 0;
+        List<Task> batch = new ArrayList<>(maxBatch);
+        batch.add(first);
+        queue.drainTo(batch, maxBatch - 1);
+        process(batch);
+        return batch.size();
+    }
+
+    private void process(List<Task> taken) {
+        List<Task> batch = renew(taken);
+        if (batch.isEmpty()) return;
+        if (batchSize != null) batchSize.record(batch.size());
+
+        List<Task> evaluated = new ArrayList<>(batch.size());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ExamResult.class);
+        for (Task task : batch) {
+            ExamResult result = task.result();
+            try {
+                apply(result, ExamEvaluatorUtil.evaluateAnswers(task.exam().answerKey(), task.exam().questions(),
+                        finalAnswers(result)));
+                bulk.updateOne(claimed(result), completion(result));
+                evaluated.add(task);
+            } catch (Exception e) {
+                // lease left to expire: retried by the recovery sweep up to max-attempts
+                if (failed != null) failed.increment();
+                log.error("💥 Error evaluating exam for {}: {}", result.getStudentEmail(), e.getMessage());
+            }
+        }
+        if (evaluated.isEmpty()) return;
+
+        int modified;
+        try {
+            modified = bulk.execute().getModifiedCount();
+        } catch (Exception e) {
+            if (failed != null) failed.increment(evaluated.size());
+            log.error("💥 Failed to store {} evaluated exam results: {}", evaluated.size(), e.getMessage());
+            return;
+        }
+        if (modified < evaluated.size()) {
+            List<Task> owned = stillOwned(evaluated, COMPLETED);
+            log.warn("{} of {} exam evaluations lost their lease", evaluated.size() - owned.size(), evaluated.size());
+            evaluated = owned;
+        }
+
+        long now = System.nanoTime();
+        List<ExamResult> results = new ArrayList<>(evaluated.size());
+        for (Task task : evaluated) {
+            if (latency != null) latency.record(now - task.submittedNanos(), TimeUnit.NANOSECONDS);
+            results.add(task.result());
+        }
+        if (completed != null) completed.increment(results.size());
+        if (results.isEmpty()) return;
+
+        // 🏆 One leaderboard update per batch
+        try {
+            leaderboardService.onResultsEvaluated(results);
+        } catch (Exception e) {
+            log.warn("⚠️ Leaderboard update failed for {} exam results: {}", results.size(), e.getMessage());
+        }
+        log.debug("Evaluated {} exam results", results.size());
+    }
+
+    /**
+     * Renew the lease of every attempt taken off the queue and count the evaluation attempt, in one
+     * bulk write. Attempts re-claimed by the sweep while they were queued (their token changed) are
+     * dropped here: the newer claim is queued too and carries on.
+     */
+    private List<Task> renew(List<Task> taken) {
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ExamResult.class);
+        for (Task task : taken) {
+            bulk.updateOne(claimed(task.result()), new Update()
+                    .set("leaseUntil", now.plus(lease))
+                    .inc("evaluationAttempts", 1));
+        }
+
+        int modified;
+        try {
+            modified = bulk.execute().getModifiedCount();
+        } catch (Exception e) {
+            // leases left to expire: the recovery sweep re-claims them
+            log.error("💥 Failed to renew the lease of {} exam attempts: {}", taken.size(), e.getMessage());
+            return List.of();
+        }
+        if (modified == taken.size()) return taken;
+
+        List<Task> owned = stillOwned(taken, EVALUATING);
+        log.info("Dropped {} queued exam attempts re-claimed by recovery", taken.size() - owned.size());
+        return owned;
+    }
+
+    /**
+     * Some writes did not match their claim (lease expired and the attempt was re-claimed): keep
+     * only the tasks whose token the stored result, now in {@code status}, carries.
+     */
+    private List<Task> stillOwned(List<Task> tasks, String status) {
+        List<String> ids = new ArrayList<>(tasks.size());
+        for (Task task : tasks) ids.add(task.result().getId());
+        Query query = new Query(Criteria.where("_id").in(ids).and("status").is(status));
+        query.fields().include("leaseToken");
+
+        Set<String> owned = new HashSet<>();
+        for (ExamResult stored : mongoTemplate.find(query, ExamResult.class)) {
+            owned.add(stored.getId() + "|" + stored.getLeaseToken());
+        }
+        List<Task> out = new ArrayList<>(owned.size());
+        for (Task task : tasks) {
+            if (owned.contains(task.result().getId() + "|" + task.result().getLeaseToken())) out.add(task);
+        }
+        return out;
+    }
+
+    /* ============================================================
+     * ♻️ Recovery
+     * ============================================================ */
+
+    /**
+     * Re-claim EVALUATING attempts whose lease expired, as far as the queue has room. Attempts that
+     * keep failing are parked as EVALUATION_FAILED (the student can submit again); legacy attempts
+     * stuck without stored answers are reopened as IN_PROGRESS. Completed attempts whose exam XP
+     * is still pending after a lease period get it awarded again.
+     */
+    @Scheduled(fixedDelayString = "${lms.exam.eval.recovery-interval-ms:60000}",
+            initialDelayString = "${lms.exam.eval.recovery-interval-ms:60000}")
+    public void recover() {
+        if (!running) return;
+        try {
+            Instant now = Instant.now();
+            Criteria expired = new Criteria().orOperator(
+                    Criteria.where("leaseUntil").exists(false),
+                    Criteria.where("leaseUntil").lt(now));
+
+            long reopened = mongoTemplate.updateMulti(
+                    new Query(Criteria.where("status").is(EVALUATING).and("pendingAnswers").exists(false)
+                            .and("leaseToken").exists(false)),
+                    new Update().set("status", "IN_PROGRESS"),
+                    ExamResult.class).getModifiedCount();
+            long parked = mongoTemplate.updateMulti(
+                    new Query(new Criteria().andOperator(Criteria.where("status").is(EVALUATING)
+                            .and("evaluationAttempts").gte(maxAttempts), expired)),
+                    new Update().set("status", FAILED).unset("leaseUntil"),
+                    ExamResult.class).getModifiedCount();
+
+            int claimed = 0;
+            while (queue.remainingCapacity() > 0) {
+                ExamResult result = claimExpired(expired, now);
+                if (result == null) break;
+                claimed++;
+                try {
+                    enqueue(examSnapshots.get(result.getExamId()), result, System.nanoTime());
+                } catch (Exception e) {
+                    log.error("💥 Cannot evaluate recovered exam attempt {}: {}", result.getId(), e.getMessage());
+                }
+            }
+            if (recovered != null) recovered.increment(claimed);
+            int reawarded = reawardPendingXp(now);
+            if (claimed + reopened + parked + reawarded > 0) {
+                log.info("♻️ Exam evaluation recovery: claimed={} reopened={} failed={} xpReawarded={}",
+                        claimed, reopened, parked, reawarded);
+            }
+        } catch (Exception e) {
+            log.error("Exam evaluation recovery failed: {}", e.getMessage());
+        }
+    }
+
+    private ExamResult claimExpired(Criteria expired, Instant now) {
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("status").is(EVALUATING)
+                        .and("pendingAnswers").exists(true)
+                        .and("evaluationAttempts").lt(maxAttempts),
+                expired));
+        // the attempt is counted when a worker takes it off the queue (see renew)
+        Update update = new Update()
+                .set("leaseToken", UUID.randomUUID().toString())
+                .set("leaseUntil", now.plus(lease));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), ExamResult.class);
+    }
+
+    /**
+     * Completed attempts still marked XP-pending a lease period after completion (the process died
+     * between the completion write and the award, or the award failed): clear the mark where the
+     * attempt's XP event is stored, hand the rest to the leaderboards again and re-check them on a
+     * later sweep. Returns the number of attempts re-awarded.
+     */
+    private int reawardPendingXp(Instant now) {
+        Query pendingQuery = new Query(Criteria.where("xpPendingSince").lt(now.minus(lease)))
+                .with(Sort.by(Sort.Direction.ASC, "xpPendingSince"))
+                .limit(maxBatch);
+        pendingQuery.fields().exclude("answers");
+
+        int reawarded = 0;
+        List<ExamResult> pending;
+        do {
+            pending = mongoTemplate.find(pendingQuery, ExamResult.class);
+            if (pending.isEmpty()) break;
+
+            Map<String, String> keys = new HashMap<>();
+            for (ExamResult result : pending) {
+                if (Math.round(result.getPercentage()) <= 0) continue; // nothing was awarded
+                String key = XpEvent.examDedupKeyFor(result.getStudentEmail(), result.getId());
+                if (key != null) keys.put(result.getId(), key);
+            }
+            Set<String> stored = keys.isEmpty() ? Set.of() : new HashSet<>(mongoTemplate.findDistinct(
+                    new Query(Criteria.where("dedupKey").in(keys.values())), "dedupKey", XpEvent.class, String.class));
+
+            List<String> done = new ArrayList<>();
+            List<ExamResult> missing = new ArrayList<>();
+            for (ExamResult result : pending) {
+                String key = keys.get(result.getId());
+                if (key == null || stored.contains(key)) done.add(result.getId());
+                else missing.add(result);
+            }
+            if (!done.isEmpty()) {
+                mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(done)),
+                        new Update().unset("xpPendingSince"), ExamResult.class);
+            }
+            if (!missing.isEmpty()) {
+                leaderboardService.onResultsEvaluated(missing);
+                List<String> ids = missing.stream().map(ExamResult::getId).toList();
+                mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(ids)),
+                        new Update().set("xpPendingSince", now), ExamResult.class);
+                reawarded += missing.size();
+            }
+        } while (pending.size() == maxBatch);
+        return reawarded;
+    }
+
+    /**
+     * Autosaved draft overlaid with what was submitted (later answers to a question win).
+     */
+    static List<ExamSubmitRequest.Answer> finalAnswers(ExamResult result) {
+        Map<String, ExamSubmitRequest.Answer> draft = result.getDraftAnswers();
+        List<ExamSubmitRequest.Answer> pending = result.getPendingAnswers();
+        if (draft == null || draft.isEmpty()) return pending;
+
+        List<ExamSubmitRequest.Answer> out = new ArrayList<>(draft.size() + (pending != null ? pending.size() : 0));
+        out.addAll(draft.values());
+        if (pending != null) out.addAll(pending);
+        return out;
+    }
+
+    private static Query claimed(ExamResult result) {
+        return new Query(Criteria.where("_id").is(result.getId())
+                .and("status").is(EVALUATING)
+                .and("leaseToken").is(result.getLeaseToken()));
+    }
+
+    private static void apply(ExamResult result, ExamEvaluatorUtil.EvaluationResult eval) {
+        Instant now = Instant.now();
+        result.setAnswers(eval.getAnswerRecords());
+        result.setCorrectCount(eval.getCorrectCount());
+        result.setWrongCount(eval.getWrongCount());
+        result.setTotalQuestions(eval.getTotalQuestions());
+        result.setPercentage(eval.getPercentage());
+        result.setScore(eval.getCorrectCount());
+        result.setStatus(COMPLETED);
+        result.setDurationSeconds(result.getStartTime() != null
+                ? now.getEpochSecond() - result.getStartTime().getEpochSecond()
+                : 0);
+        result.setSubmittedAt(now);
+    }
+
+    private static Update completion(ExamResult result) {
+        return new Update()
+                .set("answers", result.getAnswers())
+                .set("correctCount", result.getCorrectCount())
+                .set("wrongCount", result.getWrongCount())
+                .set("totalQuestions", result.getTotalQuestions())
+                .set("percentage", result.getPercentage())
+                .set("score", result.getScore())
+                .set("status", result.getStatus())
+                .set("durationSeconds", result.getDurationSeconds())
+                .set("submittedAt", result.getSubmittedAt())
+                .unset("pendingAnswers")
+                .unset(ExamDraftWriter.DRAFT_FIELD)
+                .unset("leaseUntil")
+                .set("xpPendingSince", Instant.now());
+    }
+}
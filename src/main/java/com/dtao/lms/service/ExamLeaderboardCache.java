@@ -0,0 +1,214 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.ExamResult;
+import com.dtao.lms.model.LeaderboardEntry;
+import com.dtao.lms.repo.ExamResultRepository;
+import com.dtao.lms.utils.OrderStatisticTree;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 📘 ExamLeaderboardCache
+ *
+ * One sorted board per exam (percentage ↓, then name), loaded from the exam's COMPLETED
+ * results on first read and kept in a bounded in-process cache. A newly evaluated result is
+ * inserted into its own exam's board only (O(log n)); boards of other exams are untouched
+ * and keep serving from memory. Rank changes are pushed to clients via LeaderboardDeltaPublisher.
+ *
+ * Boards are evicted when idle and, however busy, reloaded a fixed time after they were loaded:
+ * results evaluated on other instances only reach a board through that reload.
+ */
+@Component
+public class ExamLeaderboardCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExamLeaderboardCache.class);
+
+    static final Comparator<ExamStanding> ORDER = Comparator
+            .comparingDouble(ExamStanding::percentage).reversed()
+            .thenComparing(ExamStanding::name, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(ExamStanding::resultId);
+
+    private final ExamResultRepository examResultRepository;
+    private final LeaderboardDeltaPublisher deltaPublisher;
+    private final Cache<String, ExamBoard> boards;
+
+    public ExamLeaderboardCache(ExamResultRepository examResultRepository,
+                                LeaderboardDeltaPublisher deltaPublisher,
+                                ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                @Value("${lms.cache.exam-leaderboards.max-size:500}") long maxSize,
+                                @Value("${lms.cache.exam-leaderboards.idle-minutes:60}") long idleMinutes,
+                                @Value("${lms.cache.exam-leaderboards.ttl-minutes:5}") long ttlMinutes) {
+        this.examResultRepository = examResultRepository;
+        this.deltaPublisher = deltaPublisher;
+        this.boards = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfter(new BoardExpiry(TimeUnit.MINUTES.toNanos(Math.max(1, idleMinutes)),
+                        TimeUnit.MINUTES.toNanos(Math.max(1, ttlMinutes))))
+                .recordStats()
+                .build();
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, boards, "examLeaderboards");
+        }
+        deltaPublisher.examRanks((examId, resultId) -> {
+            ExamBoard board = boards.asMap().get(examId);
+            return board == null ? -1 : board.rankOf(resultId);
+        });
+    }
+
+    /**
+     * One completed result on an exam board. resultId keeps several attempts of a student apart.
+     */
+    public record ExamStanding(String resultId, String email, String name, double percentage) {
+
+        static ExamStanding of(ExamResult r) {
+            return new ExamStanding(r.getId(), r.getStudentEmail(), r.getStudentName(), r.getPercentage());
+        }
+    }
+
+    /**
+     * Full board of the exam in rank order.
+     */
+    public List<LeaderboardEntry> snapshot(String examId) {
+        return page(examId, 0, Integer.MAX_VALUE);
+    }
+
+    public List<LeaderboardEntry> page(String examId, int offset, int limit) {
+        if (examId == null) return List.of();
+        return board(examId).page(offset, limit);
+    }
+
+    /**
+     * An evaluation completed: place the result on its exam's board if that board is resident.
+     * A board that is not loaded picks the result up from Mongo on its next read.
+     */
+    public void onResult(ExamResult result) {
+        if (result == null || result.getExamId() == null || result.getId() == null) return;
+        boolean completed = "COMPLETED".equals(result.getStatus());
+        // computeIfPresent waits for an in-flight load of the same exam, so the result is never lost
+        boards.asMap().computeIfPresent(result.getExamId(), (id, board) -> {
+            int[] ranks = completed ? board.put(ExamStanding.of(result)) : board.remove(result.getId());
+            if (ranks[0] != ranks[1]) {
+                deltaPublisher.examRankChanged(id, result.getId(), result.getStudentEmail(), result.getStudentName(),
+                        ranks[1], result.getPercentage(), ranks[2]);
+            }
+            return board;
+        });
+    }
+
+    public void invalidate(String examId) {
+        if (examId != null) boards.invalidate(examId);
+    }
+
+    private ExamBoard board(String examId) {
+        return boards.get(examId, this::load);
+    }
+
+    private ExamBoard load(String examId) {
+        ExamBoard board = new ExamBoard();
+        try {
+            List<ExamResult> results = examResultRepository.findByExamIdAndStatus(examId, "COMPLETED");
+            if (results != null) {
+                for (ExamResult r : results) {
+                    if (r.getId() != null) board.put(ExamStanding.of(r));
+                }
+            }
+            log.debug("Exam leaderboard loaded for {} ({} results)", examId, board.size());
+        } catch (Exception e) {
+            log.error("Failed to load exam leaderboard for {}: {}", examId, e.getMessage());
+        }
+        return board;
+    }
+
+    /**
+     * Expire-after-write counted from the board's load, not from its last in-place update (every
+     * placed result is a cache write), combined with expire-after-access for idle boards.
+     */
+    private record BoardExpiry(long idleNanos, long ttlNanos) implements Expiry<String, ExamBoard> {
+
+        @Override
+        public long expireAfterCreate(String examId, ExamBoard board, long currentTime) {
+            return Math.min(idleNanos, ttlNanos);
+        }
+
+        @Override
+        public long expireAfterUpdate(String examId, ExamBoard board, long currentTime, long currentDuration) {
+            return remaining(board, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String examId, ExamBoard board, long currentTime, long currentDuration) {
+            return remaining(board, currentTime);
+        }
+
+        private long remaining(ExamBoard board, long currentTime) {
+            return Math.max(0, Math.min(idleNanos, ttlNanos - (currentTime - board.loadedNanos)));
+        }
+    }
+
+    /**
+     * Sorted results of one exam, indexed by result id.
+     */
+    private static final class ExamBoard {
+        private final long loadedNanos = System.nanoTime(); // same clock as the cache's ticker
+        private final OrderStatisticTree<ExamStanding> tree = new OrderStatisticTree<>(ORDER);
+        private final Map<String, ExamStanding> byResult = new HashMap<>();
+
+        /** @return {old rank, new rank, board size}; rank 0 = not on the board */
+        synchronized int[] put(ExamStanding s) {
+            ExamStanding old = byResult.put(s.resultId(), s);
+            int oldRank = 0;
+            if (old != null) {
+                oldRank = tree.indexOf(old) + 1;
+                tree.remove(old);
+            }
+            tree.add(s);
+            return new int[]{oldRank, tree.indexOf(s) + 1, tree.size()};
+        }
+
+        synchronized int[] remove(String resultId) {
+            ExamStanding old = byResult.remove(resultId);
+            if (old == null) return new int[]{0, 0, tree.size()};
+            int oldRank = tree.indexOf(old) + 1;
+            tree.remove(old);
+            return new int[]{oldRank, 0, tree.size()};
+        }
+
+        /** One-based rank of the result, 0 if it is not on the board. */
+        synchronized int rankOf(String resultId) {
+            ExamStanding s = byResult.get(resultId);
+            return s == null ? 0 : tree.indexOf(s) + 1;
+        }
+
+        synchronized int size() {
+            return tree.size();
+        }
+
+        synchronized List<LeaderboardEntry> page(int offset, int limit) {
+            int from = Math.max(0, offset);
+            List<ExamStanding> slice = tree.range(from, limit);
+            List<LeaderboardEntry> out = new ArrayList<>(slice.size());
+            int rank = from + 1;
+            for (ExamStanding s : slice) {
+                out.add(new LeaderboardEntry(s.email(), s.name(), s.percentage(), 0, rank++));
+            }
+            return out;
+        }
+    }
+}
@@ -26,6 +26,12 @@ public class ExamService {
     @Autowired(required = false)
     private EmailNotificationService emailNotificationService;
 
+    @Autowired(required = false)
+    private ExamLeaderboardCache examLeaderboardCache;
+
+    @Autowired(required = false)
+    private ExamSnapshotCache examSnapshotCache;
+
     @Autowired
     public ExamService(ExamRepository examRepository) {
         this.examRepository = examRepository;
@@ -105,7 +111,9 @@ public class ExamService {
         existingExam.setEndDate(updatedExam.getEndDate());
         existingExam.setDuration(updatedExam.getDuration());
 
-        return examRepository.save(existingExam);
+        Exam saved = examRepository.save(existingExam);
+        invalidateSnapshot(id);
+        return saved;
     }
 
     /**
@@ -114,7 +122,9 @@ public class ExamService {
     public Exam togglePublish(String id, boolean publish) {
         Exam exam = getExamById(id);
         exam.setPublished(publish);
-        return examRepository.save(exam);
+        Exam saved = examRepository.save(exam);
+        invalidateSnapshot(id);
+        return saved;
     }
 
     /**
@@ -123,5 +133,11 @@ public class ExamService {
     public void deleteExam(String id) {
         Exam exam = getExamById(id);
         examRepository.delete(exam);
+        if (examLeaderboardCache != null) examLeaderboardCache.invalidate(id);
+        invalidateSnapshot(id);
+    }
+
+    private void invalidateSnapshot(String examId) {
+        if (examSnapshotCache != null) examSnapshotCache.invalidate(examId);
     }
 }
@@ -0,0 +1,131 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.ExamQuestionResponse;
+import com.dtao.lms.model.Exam;
+import com.dtao.lms.model.Question;
+import com.dtao.lms.repo.ExamRepository;
+import com.dtao.lms.utils.CompiledAnswerKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 🧾 ExamSnapshotCache
+ *
+ * Immutable, pre-compiled view of an exam for the student hot path (start, questions, submit):
+ * metadata with the active window resolved to instants, the question DTOs students see, the
+ * questions used for evaluation, and the answer key compiled in question order. Built from
+ * one Mongo read per exam; dropped by ExamService / ExamCSVService whenever the exam changes.
+ */
+@Component
+public class ExamSnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExamSnapshotCache.class);
+
+    private final ExamRepository examRepository;
+    private final Cache<String, ExamSnapshot> snapshots;
+
+    public ExamSnapshotCache(ExamRepository examRepository,
+                             ObjectProvider<MeterRegistry> meterRegistryProvider,
+                             @Value("${lms.cache.exam-snapshots.max-size:200}") long maxSize,
+                             @Value("${lms.cache.exam-snapshots.ttl-minutes:30}") long ttlMinutes) {
+        this.examRepository = examRepository;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(Math.max(1, ttlMinutes), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, snapshots, "examSnapshots");
+        }
+    }
+
+    /**
+     * Compiled exam. {@code questions} and {@code answerKey} are in the same (stored) order.
+     */
+    public record ExamSnapshot(String id, String name, String type, String language,
+                               Instant start, Instant end, int durationMinutes, boolean published,
+                               List<ExamQuestionResponse> questionViews, List<Question> questions,
+                               CompiledAnswerKey answerKey) {
+
+        public int totalQuestions() {
+            return questions.size();
+        }
+
+        public boolean isActive(Instant now) {
+            return start != null && end != null && !now.isBefore(start) && !now.isAfter(end);
+        }
+    }
+
+    /**
+     * Snapshot of the exam, compiled on first use. Throws like the repository lookups it replaces.
+     */
+    public ExamSnapshot get(String examId) {
+        ExamSnapshot snapshot = examId == null ? null : snapshots.get(examId, this::load);
+        if (snapshot == null) throw new RuntimeException("Exam not found");
+        return snapshot;
+    }
+
+    public void invalidate(String examId) {
+        if (examId != null) snapshots.invalidate(examId);
+    }
+
+    private ExamSnapshot load(String examId) {
+        Exam exam = examRepository.findById(examId).orElse(null);
+        if (exam == null) return null; // not cached: a later create is picked up
+        ExamSnapshot snapshot = compile(exam);
+        log.debug("Exam snapshot compiled for {} ({} questions)", examId, snapshot.totalQuestions());
+        return snapshot;
+    }
+
+    static ExamSnapshot compile(Exam exam) {
+        List<Question> source = exam.getQuestions() != null ? exam.getQuestions() : List.of();
+        List<ExamQuestionResponse> views = new ArrayList<>(source.size());
+        List<Question> questions = new ArrayList<>(source.size());
+        for (Question q : source) {
+            if (q == null) continue;
+            views.add(ExamQuestionResponse.builder()
+                    .questionId(q.getId())
+                    .question(q.getQuestion())
+                    .optionA(q.getOptionA())
+                    .optionB(q.getOptionB())
+                    .optionC(q.getOptionC())
+                    .optionD(q.getOptionD())
+                    .build());
+            // detached copy, so nothing outside the cache can change a compiled exam
+            questions.add(Question.builder()
+                    .id(q.getId())
+                    .question(q.getQuestion())
+                    .optionA(q.getOptionA())
+                    .optionB(q.getOptionB())
+                    .optionC(q.getOptionC())
+                    .optionD(q.getOptionD())
+                    .answer(q.getAnswer())
+                    .explanation(q.getExplanation())
+                    .build());
+        }
+
+        return new ExamSnapshot(exam.getId(), exam.getName(), exam.getType(), exam.getLanguage(),
+                toInstant(exam.getStartDate()), toInstant(exam.getEndDate()), exam.getDuration(), exam.isPublished(),
+                List.copyOf(views), List.copyOf(questions), CompiledAnswerKey.compile(questions));
+    }
+
+    private static Instant toInstant(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+}
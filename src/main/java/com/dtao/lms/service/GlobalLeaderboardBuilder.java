@@ -0,0 +1,99 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.LikeType;
+import com.dtao.lms.model.User;
+import com.dtao.lms.utils.EmailNormalizer;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 🏗 GlobalLeaderboardBuilder
+ *
+ * Builds every student's global standing in a fixed number of Mongo commands, whatever the
+ * student count: three aggregations grouped by normalized email (XP from xp_events, likes
+ * given from likes, capped progress ratios from video_progress) joined in memory with one
+ * projected users query.
+ */
+@Component
+public class GlobalLeaderboardBuilder {
+
+    static final String XP_EVENTS = "xp_events";
+    static final String LIKES = "likes";
+    static final String VIDEO_PROGRESS = "video_progress";
+
+    private final MongoTemplate mongoTemplate;
+
+    public GlobalLeaderboardBuilder(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Standings of all students keyed by normalized email.
+     */
+    public Map<String, LeaderboardEngine.Standing> build() {
+        Map<String, Long> xp = sumByEmail(XP_EVENTS, null, "$score");
+        Map<String, Long> likes = sumByEmail(LIKES, new Document("type", LikeType.LIKE.name()), 1);
+        Map<String, double[]> ratios = ratiosByEmail();
+
+        Map<String, LeaderboardEngine.Standing> out = new HashMap<>();
+        for (User u : students()) {
+            String key = EmailNormalizer.normalize(u.getEmail());
+            if (key == null) continue;
+            double[] r = ratios.getOrDefault(key, new double[2]);
+            int points = (int) Math.min(Integer.MAX_VALUE, xp.getOrDefault(key, 0L));
+            out.put(key, new LeaderboardEngine.Standing(u.getEmail(), u.getName(), points, r[0], (long) r[1],
+                    likes.getOrDefault(key, 0L)));
+        }
+        return out;
+    }
+
+    /** $group by normalized email summing {@code value} over the matched documents. */
+    Map<String, Long> sumByEmail(String collection, Document match, Object value) {
+        List<Document> pipeline = new ArrayList<>();
+        if (match != null) pipeline.add(new Document("$match", match));
+        pipeline.add(new Document("$group", new Document("_id", emailKey())
+                .append("total", new Document("$sum", value))));
+
+        Map<String, Long> out = new HashMap<>();
+        for (Document d : mongoTemplate.getCollection(collection).aggregate(pipeline).allowDiskUse(true)) {
+            Object id = d.get("_id");
+            Object total = d.get("total");
+            if (id != null && total instanceof Number n) out.put(id.toString(), n.longValue());
+        }
+        return out;
+    }
+
+    static Document emailKey() {
+        return new Document("$ifNull", List.of("$emailLower", new Document("$toLower", "$email")));
+    }
+
+    /** (ratioSum, ratioCount) per user, capped the same way as user_progress_stats. */
+    private Map<String, double[]> ratiosByEmail() {
+        Map<String, double[]> out = new HashMap<>();
+        for (Document d : mongoTemplate.getCollection(VIDEO_PROGRESS)
+                .aggregate(UserProgressStatsService.allUsersPipeline()).allowDiskUse(true)) {
+            Object id = d.get("_id");
+            if (id != null) out.put(id.toString(), new double[]{number(d.get("ratioSum")), number(d.get("ratioCount"))});
+        }
+        return out;
+    }
+
+    /** Students with only the fields the board shows. */
+    List<User> students() {
+        Query query = new Query(Criteria.where("role").regex("^STUDENT$", "i"));
+        query.fields().include("email").include("name");
+        return mongoTemplate.find(query, User.class);
+    }
+
+    private static double number(Object o) {
+        return o instanceof Number n ? n.doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,155 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.LeaderboardDeltaMessage;
+import com.dtao.lms.utils.EmailNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 📡 LeaderboardDeltaPublisher
+ *
+ * Collects rank changes from the global and per-exam boards and pushes them over STOMP,
+ * coalesced per board over a short window: a burst of submissions becomes one message per
+ * board, with one upsert per changed row. Ranks are read from the board when the message is
+ * sent (see {@link RankLookup}), so moves of other students during the window are accounted for.
+ * A board that is reloaded wholesale sends a reset instead, dropping its pending deltas.
+ *
+ * Topics: /topic/leaderboard (global) and /topic/leaderboard/exam/{examId}.
+ */
+@Component
+public class LeaderboardDeltaPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardDeltaPublisher.class);
+
+    public static final String GLOBAL = "GLOBAL";
+    public static final String GLOBAL_TOPIC = "/topic/leaderboard";
+    public static final String EXAM_TOPIC_PREFIX = "/topic/leaderboard/exam/";
+
+    /**
+     * Current one-based rank of a row on a board (0 = not on it, -1 = unknown: keep the recorded rank).
+     */
+    @FunctionalInterface
+    public interface RankLookup {
+        int rankOf(String scope, String rowKey);
+    }
+
+    @Autowired(required = false)
+    private SimpMessagingTemplate messagingTemplate;
+
+    private final boolean enabled;
+    private final Map<String, PendingBoard> pending = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    private volatile RankLookup globalRanks;
+    private volatile RankLookup examRanks;
+
+    public LeaderboardDeltaPublisher(@Value("${lms.leaderboard.push.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void globalRanks(RankLookup lookup) {
+        this.globalRanks = lookup;
+    }
+
+    public void examRanks(RankLookup lookup) {
+        this.examRanks = lookup;
+    }
+
+    public void globalRankChanged(String email, String name, int newRank, int xp, int boardSize) {
+        record(GLOBAL, EmailNormalizer.normalize(email), email, name, newRank, xp, null, boardSize);
+    }
+
+    /** One exam result moved; rows of an exam board are results, so resultId is the row key. */
+    public void examRankChanged(String examId, String resultId, String email, String name, int newRank, double score, int boardSize) {
+        if (examId != null && resultId != null) record(examId, resultId, email, name, newRank, null, score, boardSize);
+    }
+
+    /**
+     * The board was replaced (full rebuild, snapshot restore): drop its pending deltas and tell
+     * clients to reload, with a new sequence number.
+     */
+    public synchronized void reset(String scope, int boardSize) {
+        if (!enabled || messagingTemplate == null || scope == null) return;
+        PendingBoard dropped = pending.remove(scope);
+        if (dropped != null) {
+            synchronized (dropped) {
+                dropped.flushed = true;
+            }
+        }
+        send(scope, LeaderboardDeltaMessage.reset(scope, nextSeq(scope), boardSize));
+    }
+
+    private void record(String scope, String rowKey, String email, String name, int newRank, Integer xp, Double score, int boardSize) {
+        if (!enabled || messagingTemplate == null || rowKey == null) return;
+        while (true) {
+            PendingBoard board = pending.computeIfAbsent(scope, k -> new PendingBoard());
+            synchronized (board) {
+                if (board.flushed) continue; // taken by a flush in between: start a new window
+                board.size = boardSize;
+                board.deltas.put(rowKey, new LeaderboardDeltaMessage.Delta(email, name, newRank, xp, score));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send one message per board that changed during the window, with every row's current rank.
+     */
+    @Scheduled(fixedDelayString = "${lms.leaderboard.push.window-ms:1000}")
+    public synchronized void flush() {
+        if (messagingTemplate == null || pending.isEmpty()) return;
+
+        for (String scope : new ArrayList<>(pending.keySet())) {
+            PendingBoard board = pending.remove(scope);
+            if (board == null) continue;
+
+            Map<String, LeaderboardDeltaMessage.Delta> rows;
+            int size;
+            synchronized (board) {
+                board.flushed = true;
+                rows = new LinkedHashMap<>(board.deltas);
+                size = board.size;
+            }
+            if (rows.isEmpty()) continue;
+
+            RankLookup lookup = GLOBAL.equals(scope) ? globalRanks : examRanks;
+            List<LeaderboardDeltaMessage.Delta> deltas = new ArrayList<>(rows.size());
+            rows.forEach((rowKey, d) -> {
+                int rank = lookup == null ? -1 : lookup.rankOf(scope, rowKey);
+                deltas.add(rank < 0 ? d : new LeaderboardDeltaMessage.Delta(d.email(), d.name(), rank, d.xp(), d.score()));
+            });
+            send(scope, new LeaderboardDeltaMessage(scope, nextSeq(scope), size, Instant.now(), deltas));
+        }
+    }
+
+    private long nextSeq(String scope) {
+        return sequences.computeIfAbsent(scope, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private void send(String scope, LeaderboardDeltaMessage message) {
+        String topic = GLOBAL.equals(scope) ? GLOBAL_TOPIC : EXAM_TOPIC_PREFIX + scope;
+        try {
+            messagingTemplate.convertAndSend(topic, message);
+        } catch (Exception e) {
+            log.warn("Failed to push leaderboard deltas to {}: {}", topic, e.getMessage());
+        }
+    }
+
+    private static final class PendingBoard {
+        final Map<String, LeaderboardDeltaMessage.Delta> deltas = new LinkedHashMap<>();
+        int size;
+        boolean flushed;
+    }
+}
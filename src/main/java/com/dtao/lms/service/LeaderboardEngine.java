@@ -0,0 +1,697 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.LeaderboardEntry;
+import com.dtao.lms.model.LikeType;
+import com.dtao.lms.model.User;
+import com.dtao.lms.repo.UserRepository;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.dtao.lms.utils.LeaderboardLevels;
+import com.dtao.lms.utils.OrderStatisticTree;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * 🏆 LeaderboardEngine
+ *
+ * Resident, incrementally maintained global leaderboard. Every student's standing
+ * (xp, average progress, likes given, name) lives in an order-statistic tree ordered by
+ * xp ↓, progress ↓, likes ↓, name ↑ (email as the final tie-break), so an XP event,
+ * a progress delta or a like toggle is an O(log n) re-position and top-N / page /
+ * rank reads never touch Mongo. Rank changes are pushed to clients via LeaderboardDeltaPublisher.
+ *
+ * Loaded once in the background after startup (or on first read): from the latest binary
+ * snapshot plus the changes made after it when one is available, otherwise by
+ * GlobalLeaderboardBuilder (a fixed number of aggregations). Changes persisted through other
+ * instances (whose signals never reach this board) are caught up from the last consistent point
+ * on a short fixed delay, and the board is rebuilt on a schedule to correct any remaining drift.
+ * Students touched while a load or catch-up is in flight are recorded and re-read from their
+ * persisted state once its result is in place, so no signal that arrives meanwhile is lost.
+ */
+@Component
+public class LeaderboardEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardEngine.class);
+
+    private static final Duration SNAPSHOT_SKEW = Duration.ofMinutes(1);
+    private static final int MAX_REPLAY_ROUNDS = 3;
+
+    /** Ranking order of the global board. */
+    static final Comparator<Standing> ORDER = Comparator
+            .comparingInt(Standing::xp).reversed()
+            .thenComparing(Comparator.comparingDouble(Standing::progressPercent).reversed())
+            .thenComparing(Comparator.comparingLong(Standing::likes).reversed())
+            .thenComparing(Standing::name, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(Standing::email);
+
+    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+    private final UserProgressStatsService statsService;
+    private final UserXpTotalsService xpTotals;
+    private final LeaderboardSnapshotStore snapshotStore;
+    private final LeaderboardDeltaPublisher deltaPublisher;
+    private final GlobalLeaderboardBuilder builder;
+    private final boolean rebuildEnabled;
+    private final boolean catchUpEnabled;
+    private final boolean snapshotEnabled;
+    private final Duration snapshotMaxAge;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private OrderStatisticTree<Standing> tree = new OrderStatisticTree<>(ORDER);
+    private Map<String, Standing> byEmail = new HashMap<>();
+    private Set<String> touched; // keys signalled while a load is in flight (guarded by lock)
+    private Instant loadStartedAt;
+    private volatile Instant consistentAt; // every persisted change up to here is on the board
+    private volatile boolean loaded = false;
+
+    public LeaderboardEngine(UserRepository userRepository,
+                             MongoTemplate mongoTemplate,
+                             UserProgressStatsService statsService,
+                             UserXpTotalsService xpTotals,
+                             LeaderboardSnapshotStore snapshotStore,
+                             LeaderboardDeltaPublisher deltaPublisher,
+                             GlobalLeaderboardBuilder builder,
+                             @Value("${lms.leaderboard.engine.rebuild.enabled:true}") boolean rebuildEnabled,
+                             @Value("${lms.leaderboard.engine.catch-up.enabled:true}") boolean catchUpEnabled,
+                             @Value("${lms.leaderboard.snapshot.enabled:true}") boolean snapshotEnabled,
+                             @Value("${lms.leaderboard.snapshot.max-age-hours:24}") long snapshotMaxAgeHours) {
+        this.userRepository = userRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.statsService = statsService;
+        this.xpTotals = xpTotals;
+        this.snapshotStore = snapshotStore;
+        this.deltaPublisher = deltaPublisher;
+        this.builder = builder;
+        this.rebuildEnabled = rebuildEnabled;
+        this.catchUpEnabled = catchUpEnabled;
+        this.snapshotEnabled = snapshotEnabled;
+        this.snapshotMaxAge = Duration.ofHours(Math.max(1, snapshotMaxAgeHours));
+        deltaPublisher.globalRanks((scope, key) -> currentRank(key));
+    }
+
+    /**
+     * One student's ranking inputs (email as stored on the user). ratioSum / ratioCount mirror user_progress_stats.
+     */
+    public record Standing(String email, String name, int xp, double ratioSum, long ratioCount, long likes) {
+
+        public double progressPercent() {
+            if (ratioCount <= 0) return 0.0;
+            double avg = Math.max(0.0, Math.min(100.0, ratioSum / ratioCount));
+            return Math.round(avg * 100.0) / 100.0;
+        }
+
+        Standing withXp(int delta) {
+            return new Standing(email, name, Math.max(0, xp + delta), ratioSum, ratioCount, likes);
+        }
+
+        Standing withProgress(double sumDelta, long countDelta) {
+            long count = Math.max(0, ratioCount + countDelta);
+            return new Standing(email, name, xp, count == 0 ? 0.0 : ratioSum + sumDelta, count, likes);
+        }
+
+        Standing withLikes(long delta) {
+            return new Standing(email, name, xp, ratioSum, ratioCount, Math.max(0, likes + delta));
+        }
+
+        Standing withXpTotal(long total) {
+            return new Standing(email, name, (int) Math.min(Integer.MAX_VALUE, Math.max(0, total)), ratioSum, ratioCount, likes);
+        }
+
+        Standing withRatios(double sum, long count) {
+            return new Standing(email, name, xp, sum, count, likes);
+        }
+
+        Standing withLikesTotal(long total) {
+            return new Standing(email, name, xp, ratioSum, ratioCount, Math.max(0, total));
+        }
+
+        Standing withIdentity(String newEmail, String newName) {
+            return new Standing(newEmail, newName, xp, ratioSum, ratioCount, likes);
+        }
+    }
+
+    // ----------------------------------------------------------
+    // updates — O(log n) each
+    // ----------------------------------------------------------
+
+    public void onXp(String email, int delta) {
+        if (delta != 0) update(email, s -> s.withXp(delta));
+    }
+
+    public void onProgressDelta(String email, double sumDelta, long countDelta) {
+        if (sumDelta != 0.0 || countDelta != 0) update(email, s -> s.withProgress(sumDelta, countDelta));
+    }
+
+    public void onLikeDelta(String email, long delta) {
+        if (delta != 0) update(email, s -> s.withLikes(delta));
+    }
+
+    /**
+     * A user was saved with a new name, email or role: re-position them, or drop them
+     * when they are no longer a student. {@code previousEmail} is their email before the change.
+     */
+    public void onUserChanged(String previousEmail, User user) {
+        if (user == null) return;
+        String key = EmailNormalizer.normalize(user.getEmail());
+        String previousKey = EmailNormalizer.normalize(previousEmail);
+        if (previousKey != null && !previousKey.equals(key)) remove(previousEmail);
+        if (user.getRole() == null || !"STUDENT".equalsIgnoreCase(user.getRole())) {
+            remove(user.getEmail());
+        } else {
+            update(user.getEmail(), s -> s.withIdentity(user.getEmail(), user.getName()));
+        }
+    }
+
+    /**
+     * Drop a user from the board (deleted account / no longer a student).
+     */
+    public void remove(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return;
+        lock.writeLock().lock();
+        try {
+            if (touched != null) touched.add(key);
+            if (loaded) place(key, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void update(String email, UnaryOperator<Standing> change) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return;
+
+        lock.writeLock().lock();
+        try {
+            if (touched != null) touched.add(key); // a load is in flight: it re-reads this student afterwards
+            if (!loaded) return; // nothing loaded yet: the load reads the persisted state
+            Standing old = byEmail.get(key);
+            if (old != null) {
+                place(key, change.apply(old));
+                return;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // first signal for a student we don't hold yet: load their persisted state (it already includes this change)
+        Standing fresh = loadOne(email, key);
+        if (fresh == null) return;
+        lock.writeLock().lock();
+        try {
+            if (!byEmail.containsKey(key)) place(key, fresh);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Put (or with null, drop) one standing and push the rank change. Caller holds the write lock.
+     */
+    private void place(String key, Standing updated) {
+        Standing old = byEmail.get(key);
+        int oldRank = 0;
+        if (old != null) {
+            oldRank = tree.indexOf(old) + 1;
+            tree.remove(old);
+        }
+        if (updated == null) {
+            byEmail.remove(key);
+            if (old != null) deltaPublisher.globalRankChanged(old.email(), old.name(), 0, old.xp(), tree.size());
+            return;
+        }
+        tree.add(updated);
+        byEmail.put(key, updated);
+        int newRank = tree.indexOf(updated) + 1;
+        if (old == null || oldRank != newRank || old.xp() != updated.xp() || !Objects.equals(old.name(), updated.name())) {
+            deltaPublisher.globalRankChanged(updated.email(), updated.name(), newRank, updated.xp(), tree.size());
+        }
+    }
+
+    // ----------------------------------------------------------
+    // reads — no Mongo access once loaded
+    // ----------------------------------------------------------
+
+    public int size() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return tree.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Full board in rank order. */
+    public List<LeaderboardEntry> snapshot() {
+        return page(0, Integer.MAX_VALUE);
+    }
+
+    public List<LeaderboardEntry> top(int limit) {
+        return page(0, Math.max(1, limit));
+    }
+
+    /** {@code limit} entries starting at zero-based position {@code offset}. */
+    public List<LeaderboardEntry> page(int offset, int limit) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<Standing> slice = tree.range(offset, limit);
+            List<LeaderboardEntry> out = new ArrayList<>(slice.size());
+            int rank = Math.max(0, offset) + 1;
+            for (Standing s : slice) out.add(toEntry(s, rank++));
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code radius} entries above and below the user, the user included. Empty if not ranked.
+     */
+    public List<LeaderboardEntry> around(String email, int radius) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return List.of();
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Standing s = byEmail.get(key);
+            if (s == null) return List.of();
+            int r = Math.max(0, radius);
+            int from = Math.max(0, tree.indexOf(s) - r);
+            List<Standing> slice = tree.range(from, 2 * r + 1);
+            List<LeaderboardEntry> out = new ArrayList<>(slice.size());
+            int rank = from + 1;
+            for (Standing st : slice) out.add(toEntry(st, rank++));
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** One-based rank of the user, or 0 if they are not on the board. */
+    public int rankOf(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return 0;
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Standing s = byEmail.get(key);
+            return s == null ? 0 : tree.indexOf(s) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Rank by normalized key without triggering a load (-1 while nothing is loaded). */
+    private int currentRank(String key) {
+        if (!loaded) return -1;
+        lock.readLock().lock();
+        try {
+            Standing s = byEmail.get(key);
+            return s == null ? 0 : tree.indexOf(s) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<LeaderboardEntry> entryOf(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return Optional.empty();
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Standing s = byEmail.get(key);
+            return s == null ? Optional.empty() : Optional.of(toEntry(s, tree.indexOf(s) + 1));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ----------------------------------------------------------
+    // loading
+    // ----------------------------------------------------------
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    /**
+     * Full rebuild from Mongo; swaps the board in atomically. Corrects drift from missed signals.
+     */
+    @Scheduled(cron = "${lms.leaderboard.engine.rebuild.cron:0 15 */6 * * *}")
+    public void scheduledRebuild() {
+        if (rebuildEnabled && loaded) rebuild();
+    }
+
+    /**
+     * Replay what was persisted after the last consistent point (changes made through other
+     * instances included) onto the live board, re-positioning only the students that changed.
+     * Skipped while a load is in flight; the load sets its own consistent point.
+     */
+    @Scheduled(fixedDelayString = "${lms.leaderboard.engine.catch-up.interval-ms:60000}",
+            initialDelayString = "${lms.leaderboard.engine.catch-up.interval-ms:60000}")
+    public void scheduledCatchUp() {
+        if (!catchUpEnabled || !loaded || !loadLock.tryLock()) return;
+        try {
+            Instant since = consistentAt;
+            if (since == null) return;
+            long start = System.currentTimeMillis();
+            track();
+            Map<String, Standing> before;
+            lock.readLock().lock();
+            try {
+                before = new HashMap<>(byEmail);
+            } finally {
+                lock.readLock().unlock();
+            }
+            Map<String, Standing> after = new HashMap<>(before);
+            catchUp(after, since);
+
+            Set<String> keys = new HashSet<>(before.keySet());
+            keys.addAll(after.keySet());
+            int applied = 0;
+            Set<String> pending;
+            lock.writeLock().lock();
+            try {
+                for (String key : keys) {
+                    Standing caughtUp = after.get(key);
+                    // students signalled since the copy are re-read below instead
+                    if (Objects.equals(before.get(key), caughtUp) || touched.contains(key)) continue;
+                    place(key, caughtUp);
+                    applied++;
+                }
+                consistentAt = loadStartedAt;
+                pending = touched;
+                touched = new HashSet<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            int replayed = replay(pending);
+            if (applied + replayed > 0) {
+                log.debug("Global leaderboard caught up since {}: {} students updated, {} re-read in {} ms",
+                        since, applied, replayed, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            untrack();
+            log.warn("Global leaderboard catch-up failed: {}", e.getMessage());
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    public void rebuild() {
+        loadLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            track();
+            Map<String, Standing> fresh = builder.build();
+            int replayed = publish(fresh);
+            log.info("Global leaderboard engine loaded {} students ({} re-read after the build) in {} ms",
+                    fresh.size(), replayed, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            untrack();
+            log.error("Global leaderboard engine load failed: {}", e.getMessage());
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    // ----------------------------------------------------------
+    // snapshots
+    // ----------------------------------------------------------
+
+    /**
+     * Store the current board as a compact binary snapshot. The high-water mark is the last
+     * consistent point (start of the last load or catch-up): signals from other instances only
+     * reach this board through catch-up, so only changes persisted before that point are
+     * guaranteed to be in it. Restore replays everything after it (replay is idempotent: it sets
+     * totals, it doesn't add deltas).
+     */
+    @Scheduled(fixedDelayString = "${lms.leaderboard.snapshot.interval-ms:300000}",
+            initialDelayString = "${lms.leaderboard.snapshot.interval-ms:300000}")
+    public void writeSnapshot() {
+        Instant highWaterMark = consistentAt;
+        if (!snapshotEnabled || !loaded || highWaterMark == null) return;
+        List<Standing> standings;
+        lock.readLock().lock();
+        try {
+            standings = tree.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+        snapshotStore.save(standings, highWaterMark);
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        writeSnapshot();
+    }
+
+    /**
+     * Load the stored snapshot and replay what changed after its high-water mark.
+     *
+     * @return false when there is no usable snapshot (caller falls back to a full rebuild)
+     */
+    private boolean restoreFromSnapshot() {
+        long start = System.currentTimeMillis();
+        LeaderboardSnapshotStore.Restored snapshot = snapshotStore.load();
+        if (snapshot == null) return false;
+        if (snapshot.highWaterMark().isBefore(Instant.now().minus(snapshotMaxAge))) {
+            log.info("Leaderboard snapshot complete up to {} is older than {} — rebuilding instead",
+                    snapshot.highWaterMark(), snapshotMaxAge);
+            return false;
+        }
+
+        try {
+            track();
+            Map<String, Standing> board = new HashMap<>();
+            for (Standing st : snapshot.standings()) {
+                String key = EmailNormalizer.normalize(st.email());
+                if (key != null) board.put(key, st);
+            }
+            int replayed = catchUp(board, snapshot.highWaterMark());
+            replayed += publish(board);
+            log.info("Global leaderboard restored from snapshot: {} students, {} changes replayed since {} in {} ms",
+                    board.size(), replayed, snapshot.highWaterMark(), System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            untrack();
+            log.warn("Leaderboard snapshot replay failed, rebuilding instead: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Bring a board (restored, or a copy of the live one) up to date with changes after
+     * {@code since}: new / renamed / re-roled users, deleted users, changed XP totals and
+     * progress accumulators, and newly given likes. Removed likes are picked up by the next
+     * scheduled rebuild.
+     */
+    private int catchUp(Map<String, Standing> board, Instant since) {
+        int replayed = 0;
+
+        Query changedUsers = new Query(new Criteria().orOperator(
+                Criteria.where("createdAt").gt(since), Criteria.where("updatedAt").gt(since)));
+        changedUsers.fields().include("email").include("name").include("role");
+        for (User u : mongoTemplate.find(changedUsers, User.class)) {
+            String key = EmailNormalizer.normalize(u.getEmail());
+            if (key == null) continue;
+            if (u.getRole() != null && "STUDENT".equalsIgnoreCase(u.getRole())) {
+                Standing old = board.get(key);
+                board.put(key, old == null
+                        ? new Standing(u.getEmail(), u.getName(), 0, 0.0, 0, 0)
+                        : new Standing(u.getEmail(), u.getName(), old.xp(), old.ratioSum(), old.ratioCount(), old.likes()));
+            } else {
+                board.remove(key);
+            }
+            replayed++;
+        }
+
+        // deleted accounts leave no trace to query by time: keep only users that are still students
+        Set<String> students = new HashSet<>();
+        for (User u : builder.students()) {
+            String key = EmailNormalizer.normalize(u.getEmail());
+            if (key != null) students.add(key);
+        }
+        int before = board.size();
+        board.keySet().retainAll(students);
+        replayed += before - board.size();
+
+        for (Map.Entry<String, Long> e : xpTotals.changedSince(since).entrySet()) {
+            if (board.computeIfPresent(e.getKey(), (k, st) -> st.withXpTotal(e.getValue())) != null) replayed++;
+        }
+        for (Map.Entry<String, double[]> e : statsService.changedSince(since).entrySet()) {
+            double[] r = e.getValue();
+            if (board.computeIfPresent(e.getKey(), (k, st) -> st.withRatios(r[0], (long) r[1])) != null) replayed++;
+        }
+
+        List<String> likers = new ArrayList<>();
+        mongoTemplate.getCollection(GlobalLeaderboardBuilder.LIKES)
+                .distinct("email", new Document("createdAt", new Document("$gt", Date.from(since))), String.class)
+                .into(likers);
+        if (!likers.isEmpty()) {
+            Map<String, Long> likes = builder.sumByEmail(GlobalLeaderboardBuilder.LIKES,
+                    new Document("email", new Document("$in", likers)).append("type", LikeType.LIKE.name()), 1);
+            for (String liker : likers) {
+                String key = EmailNormalizer.normalize(liker);
+                if (key == null) continue;
+                long total = likes.getOrDefault(key, 0L);
+                if (board.computeIfPresent(key, (k, st) -> st.withLikesTotal(total)) != null) replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /** Start recording the students signalled from now on (a load is starting). */
+    private void track() {
+        lock.writeLock().lock();
+        try {
+            touched = new HashSet<>();
+            loadStartedAt = Instant.now().minus(SNAPSHOT_SKEW);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void untrack() {
+        lock.writeLock().lock();
+        try {
+            touched = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Swap the loaded board in, then re-read every student signalled while it was being
+     * loaded (the load may or may not have seen their change).
+     *
+     * @return number of students re-read
+     */
+    private int publish(Map<String, Standing> fresh) {
+        OrderStatisticTree<Standing> freshTree = new OrderStatisticTree<>(ORDER);
+        fresh.values().forEach(freshTree::add);
+
+        Set<String> pending;
+        int size = freshTree.size();
+        lock.writeLock().lock();
+        try {
+            byEmail = fresh;
+            tree = freshTree;
+            loaded = true;
+            consistentAt = loadStartedAt;
+            pending = touched;
+            touched = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // clients' copies describe the old board: make them reload (changes re-read below follow as deltas)
+        deltaPublisher.reset(LeaderboardDeltaPublisher.GLOBAL, size);
+        return replay(pending);
+    }
+
+    /**
+     * Re-read the students signalled while a load or catch-up was in flight, until no new signals
+     * arrive (bounded), then stop recording.
+     *
+     * @return number of students re-read
+     */
+    private int replay(Set<String> pending) {
+        int replayed = 0;
+        try {
+            for (int round = 0; round < MAX_REPLAY_ROUNDS && pending != null && !pending.isEmpty(); round++) {
+                Map<String, Optional<Standing>> reread = new HashMap<>();
+                for (String key : pending) {
+                    try {
+                        reread.put(key, Optional.ofNullable(standingOf(key, key)));
+                    } catch (Exception e) {
+                        log.warn("Could not re-read leaderboard standing for {}: {}", key, e.getMessage());
+                    }
+                }
+                lock.writeLock().lock();
+                try {
+                    reread.forEach((key, st) -> place(key, st.orElse(null)));
+                    pending = touched;
+                    touched = round + 1 < MAX_REPLAY_ROUNDS ? new HashSet<>() : null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                replayed += reread.size();
+            }
+        } finally {
+            untrack();
+        }
+        return replayed;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loadLock.lock();
+        try {
+            if (!loaded && !(snapshotEnabled && restoreFromSnapshot())) rebuild();
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private Standing loadOne(String email, String key) {
+        try {
+            return standingOf(email, key);
+        } catch (Exception e) {
+            log.warn("Could not load leaderboard standing for {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * One student's persisted standing (point reads only), or null when they are not a student.
+     */
+    private Standing standingOf(String email, String key) {
+        User u = userRepository.findByEmail(email)
+                .or(() -> userRepository.findByEmail(key))
+                .orElse(null);
+        if (u == null || u.getRole() == null || !"STUDENT".equalsIgnoreCase(u.getRole())) return null;
+
+        int xp = xpTotals.getTotal(key);
+        // likes store the raw email: match the user's stored form and the normalized one (email_type_idx)
+        Query given = new Query(Criteria.where("email").in(List.of(u.getEmail(), key)).and("type").is(LikeType.LIKE.name()));
+        long likes = mongoTemplate.count(given, GlobalLeaderboardBuilder.LIKES);
+        double[] r = statsService.ratiosFor(key);
+        return new Standing(u.getEmail(), u.getName(), xp, r[0], (long) r[1], likes);
+    }
+
+    private static LeaderboardEntry toEntry(Standing s, int rank) {
+        return new LeaderboardEntry(s.email(), s.name(), s.progressPercent(), s.likes(), rank,
+                s.xp(), LeaderboardLevels.level(s.xp()), LeaderboardLevels.badge(s.xp()));
+    }
+}
@@ -2,19 +2,17 @@
 package com.dtao.lms.service;
 
 import com.dtao.lms.dto.LeaderboardResponse;
+import com.dtao.lms.dto.LeaderboardWindowResponse;
 import com.dtao.lms.model.*;
 import com.dtao.lms.repo.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 🏆 LeaderboardService
@@ -26,59 +24,71 @@ public class LeaderboardService {
 
     private static final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
 
-    private final ProgressService progressService;
-    private final LikeRepository likeRepository;
+    /** Largest slice any windowed leaderboard call returns. */
+    public static final int MAX_WINDOW = 100;
+
     private final UserRepository userRepository;
     private final LeaderboardAuditRepository auditRepository;
-    private final ExamResultRepository examResultRepository;
+    private final LeaderboardEngine leaderboardEngine;
+    private final ExamLeaderboardCache examBoards;
+    private final CourseLeaderboardService courseLeaderboardService;
+    private final WindowedLeaderboardService windowedLeaderboards;
 
     @Autowired(required = false)
     private XpEventService xpEventService;
 
     @Autowired
     public LeaderboardService(
-            ProgressService progressService,
-            LikeRepository likeRepository,
             UserRepository userRepository,
             LeaderboardAuditRepository auditRepository,
-            ExamResultRepository examResultRepository
+            LeaderboardEngine leaderboardEngine,
+            ExamLeaderboardCache examBoards,
+            CourseLeaderboardService courseLeaderboardService,
+            WindowedLeaderboardService windowedLeaderboards
     ) {
-        this.progressService = progressService;
-        this.likeRepository = likeRepository;
         this.userRepository = userRepository;
         this.auditRepository = auditRepository;
-        this.examResultRepository = examResultRepository;
+        this.leaderboardEngine = leaderboardEngine;
+        this.examBoards = examBoards;
+        this.courseLeaderboardService = courseLeaderboardService;
+        this.windowedLeaderboards = windowedLeaderboards;
     }
 
     /* ============================================================
-     * 1️⃣ Async leaderboard updater (called after exam submit)
+     * 1️⃣ Leaderboard updates after exam evaluation
      * ============================================================ */
     @Async("taskExecutor")
-    @CacheEvict(value = {"globalLeaderboard", "examLeaderboards"}, allEntries = true)
     public void updateLeaderboardAsync(ExamResult result) {
-        try {
-            if (result == null) return;
-
-            String email = result.getStudentEmail();
-            double newScore = result.getPercentage();
+        if (result != null) onResultsEvaluated(List.of(result));
+    }
 
-            // 🧮 Update XP if service available
-            if (xpEventService != null) {
-                try {
-                    int xpEarned = (int) Math.round(newScore); // 1 XP per percentage point
-                    xpEventService.addXp(email, xpEarned, "Exam Completed", "Exam: " + result.getExamName());
-                    log.info("🎖 XP +{} added for {}", xpEarned, email);
-                } catch (Exception e) {
-                    log.warn("⚠️ Failed XP update for {}: {}", email, e.getMessage());
+    /**
+     * A batch of evaluated results: place each on its exam board, then award the exam XP
+     * (1 XP per percentage point, once per attempt) with one insert for the whole batch.
+     */
+    public void onResultsEvaluated(List<ExamResult> results) {
+        if (results == null || results.isEmpty()) return;
+        try {
+            List<XpEvent> xp = new ArrayList<>(results.size());
+            for (ExamResult result : results) {
+                // 📘 Place the result on its own exam board (other exams stay resident)
+                examBoards.onResult(result);
+
+                int xpEarned = (int) Math.round(result.getPercentage());
+                if (result.getStudentEmail() != null && xpEarned > 0) {
+                    XpEvent event = new XpEvent(result.getStudentEmail(), "Exam Completed", xpEarned, null, null, null,
+                            "Exam: " + result.getExamName());
+                    // one award per attempt: a re-run after a crash is rejected by xp_dedup_key_idx
+                    event.setDedupKey(XpEvent.examDedupKeyFor(result.getStudentEmail(), result.getId()));
+                    xp.add(event);
                 }
             }
 
-            // 🏆 Refresh the student’s leaderboard entry
-            LeaderboardResponse updated = generateGlobalLeaderboard();
-            log.info("✅ [Async] Leaderboard refreshed after exam result for {}", email);
-
+            // 🧮 The global board picks the XP up incrementally
+            if (xpEventService != null && !xp.isEmpty()) xpEventService.awardXpEvents(xp);
+            log.info("✅ Leaderboards updated for {} exam results", results.size());
         } catch (Exception e) {
-            log.error("💥 Async leaderboard update failed: {}", e.getMessage());
+            log.error("💥 Leaderboard update failed for {} exam results: {}", results.size(), e.getMessage());
         }
     }
 
@@ -91,116 +101,68 @@ public class LeaderboardService {
         return generateCourseLeaderboard(courseId);
     }
 
-    // New internal name — preserves previous behavior by delegating
-    // to generateExamLeaderboard (examId-based) to avoid breaking logic.
+    // Course board: approved enrollments ranked by completion and course XP (CourseLeaderboardService).
     public LeaderboardResponse generateCourseLeaderboard(String courseId) {
-        // If courseId maps to an examId in your system, this will work.
-        // Otherwise, you can replace this delegation with course-specific logic.
-        return generateExamLeaderboard(courseId);
+        return courseLeaderboardService.getLeaderboard(courseId);
     }
 
     /* ============================================================
-     * 2️⃣ Global leaderboard (cached)
+     * 2️⃣ Global leaderboard (resident, kept current by LeaderboardEngine)
      * ============================================================ */
-    @Cacheable(value = "globalLeaderboard")
     public LeaderboardResponse generateGlobalLeaderboard() {
-        log.info("⚙️ Building global leaderboard (cache miss, computing fresh...)");
-
-        List<User> students = userRepository.findByRoleIgnoreCase("STUDENT");
-        if (students.isEmpty()) {
-            return new LeaderboardResponse("GLOBAL", Collections.emptyList());
-        }
-
-        List<LeaderboardEntry> entries = students.stream().map(student -> {
-            String email = student.getEmail();
-            String name = student.getName();
-
-            double avgPercent = 0.0;
-            try {
-                avgPercent = progressService.getAverageProgressForUser(email);
-            } catch (Exception ex) {
-                log.warn("Failed to get average progress for {}: {}", email, ex.getMessage());
-            }
-
-            long likes = likeRepository.countByEmailAndType(email, LikeType.LIKE);
+        return new LeaderboardResponse("GLOBAL", leaderboardEngine.snapshot());
+    }
 
-            LeaderboardEntry e = new LeaderboardEntry();
-            e.setEmail(email);
-            e.setName(name);
-            e.setProgressPercent(avgPercent);
-            e.setTotalLikes(likes);
+    /**
+     * Top {@code k} of the global board plus the caller's own entry (if {@code email} is ranked).
+     */
+    public LeaderboardWindowResponse getGlobalTop(int k, String email) {
+        List<LeaderboardEntry> top = leaderboardEngine.top(clampWindow(k));
+        return new LeaderboardWindowResponse("GLOBAL", leaderboardEngine.size(), 0, top, myEntry(email));
+    }
 
-            try {
-                if (xpEventService != null) {
-                    int xp = xpEventService.getTotalXp(email);
-                    e.setXp(xp);
-                    e.setLevel((xp / 100) + 1);
-                    String badge = xp >= 500 ? "Pro Learner 🥇" :
-                            xp >= 200 ? "Active Learner 🥈" :
-                                    "New Learner 🐣";
-                    e.setBadge(badge);
-                }
-            } catch (Exception ex) {
-                log.warn("XP fetch failed for {}: {}", email, ex.getMessage());
-            }
+    /**
+     * {@code limit} entries of the global board starting at zero-based rank offset {@code offset}.
+     */
+    public LeaderboardWindowResponse getGlobalPage(int offset, int limit, String email) {
+        int from = Math.max(0, offset);
+        List<LeaderboardEntry> page = leaderboardEngine.page(from, clampWindow(limit));
+        return new LeaderboardWindowResponse("GLOBAL", leaderboardEngine.size(), from, page, myEntry(email));
+    }
 
-            return e;
-        }).collect(Collectors.toList());
+    /**
+     * {@code radius} entries above and below the student on the global board.
+     */
+    public LeaderboardWindowResponse getGlobalAround(String email, int radius) {
+        int r = Math.max(0, Math.min(radius, MAX_WINDOW / 2));
+        List<LeaderboardEntry> window = leaderboardEngine.around(email, r);
+        int offset = window.isEmpty() ? 0 : window.get(0).getRank() - 1;
+        return new LeaderboardWindowResponse("GLOBAL", leaderboardEngine.size(), offset, window, myEntry(email));
+    }
 
-        entries.sort(Comparator
-                .comparingInt(LeaderboardEntry::getXp).reversed()
-                .thenComparingDouble(LeaderboardEntry::getProgressPercent).reversed()
-                .thenComparingLong(LeaderboardEntry::getTotalLikes).reversed()
-                .thenComparing(LeaderboardEntry::getName, Comparator.nullsLast(String::compareToIgnoreCase)));
+    /**
+     * One page of a rolling XP board ("this week" / "this month"), plus the caller's own entry.
+     */
+    public LeaderboardWindowResponse getWindowPage(WindowedLeaderboardService.Window window, int offset, int limit, String email) {
+        int from = Math.max(0, offset);
+        List<LeaderboardEntry> page = windowedLeaderboards.page(window, from, clampWindow(limit));
+        LeaderboardEntry me = email == null ? null : windowedLeaderboards.entryOf(window, email).orElse(null);
+        return new LeaderboardWindowResponse(window.name(), windowedLeaderboards.size(window), from, page, me);
+    }
 
-        int rank = 1;
-        for (LeaderboardEntry e : entries) {
-            e.setRank(rank++);
-        }
+    private LeaderboardEntry myEntry(String email) {
+        return email == null ? null : leaderboardEngine.entryOf(email).orElse(null);
+    }
 
-        log.info("✅ Global leaderboard built with {} entries", entries.size());
-        return new LeaderboardResponse("GLOBAL", entries);
+    private static int clampWindow(int n) {
+        return Math.max(1, Math.min(n, MAX_WINDOW));
     }
 
     /* ============================================================
-     * 3️⃣ Exam leaderboard (cached)
+     * 3️⃣ Exam leaderboard (per-exam sorted board, updated in place)
      * ============================================================ */
-    @Cacheable(value = "examLeaderboards", key = "#examId")
     public LeaderboardResponse generateExamLeaderboard(String examId) {
-        log.info("📘 Building leaderboard for examId={} (cache miss)", examId);
-
-        List<ExamResult> results;
-        try {
-            results = examResultRepository.findByExamIdAndStatus(examId, "COMPLETED");
-        } catch (Exception e) {
-            log.error("💥 Failed to fetch exam results: {}", e.getMessage());
-            return new LeaderboardResponse(examId, List.of());
-        }
-
-        if (results == null || results.isEmpty()) {
-            log.warn("⚠️ No results for examId={}", examId);
-            return new LeaderboardResponse(examId, List.of());
-        }
-
-        List<LeaderboardEntry> entries = results.stream()
-                .map(r -> {
-                    LeaderboardEntry entry = new LeaderboardEntry();
-                    entry.setEmail(r.getStudentEmail());
-                    entry.setName(r.getStudentName());
-                    entry.setProgressPercent(r.getPercentage());
-                    entry.setTotalLikes(0);
-                    return entry;
-                })
-                .sorted(Comparator
-                        .comparingDouble(LeaderboardEntry::getProgressPercent).reversed()
-                        .thenComparing(LeaderboardEntry::getName, Comparator.nullsLast(String::compareToIgnoreCase)))
-                .collect(Collectors.toList());
-
-        int rank = 1;
-        for (LeaderboardEntry e : entries) e.setRank(rank++);
-
-        log.info("✅ Exam leaderboard generated with {} entries", entries.size());
-        return new LeaderboardResponse(examId, entries);
+        return new LeaderboardResponse(examId, examBoards.snapshot(examId));
     }
 
     /* ============================================================
@@ -211,6 +173,8 @@ public class LeaderboardService {
     }
 
     public int getXpForStudent(String email) {
+        Optional<LeaderboardEntry> entry = leaderboardEngine.entryOf(email);
+        if (entry.isPresent()) return entry.get().getXp();
         try {
             if (xpEventService != null) return xpEventService.getTotalXp(email);
         } catch (Exception e) {
@@ -219,6 +183,11 @@ public class LeaderboardService {
         return 0;
     }
 
+    /** One-based global rank of the student, or 0 if they are not ranked. */
+    public int getGlobalRank(String email) {
+        return leaderboardEngine.rankOf(email);
+    }
+
     public Map<String, Object> resetLeaderboardData(String scope, String note) {
         try {
             log.warn("Admin triggered leaderboard reset for scope={}", scope);
@@ -251,11 +220,6 @@ public class LeaderboardService {
     }
 
     public List<LeaderboardEntry> getTopStudentsGlobal(int limit) {
-        LeaderboardResponse global = generateGlobalLeaderboard();
-        if (global == null || global.getEntries() == null) return List.of();
-        return global.getEntries().stream()
-                .sorted(Comparator.comparingInt(LeaderboardEntry::getRank))
-                .limit(Math.max(1, limit))
-                .collect(Collectors.toList());
+        return leaderboardEngine.top(clampWindow(limit));
     }
 }
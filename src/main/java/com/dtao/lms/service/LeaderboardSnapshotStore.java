@@ -0,0 +1,145 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.LeaderboardSnapshot;
+import com.dtao.lms.repo.LeaderboardSnapshotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 💾 LeaderboardSnapshotStore
+ *
+ * Persists the global leaderboard's standings as one gzip'd binary blob in
+ * leaderboard_snapshots, and reads it back on startup. With several instances only one
+ * writes: the first to store a snapshot holds a writer lease (three snapshot intervals)
+ * that it renews on every write; the others skip until it lapses.
+ */
+@Component
+public class LeaderboardSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardSnapshotStore.class);
+
+    static final String GLOBAL = "global";
+    private static final int FORMAT = 1;
+    private static final int MAX_BYTES = 15 * 1024 * 1024; // stay under the 16 MB document limit
+
+    private final LeaderboardSnapshotRepository repository;
+    private final MongoTemplate mongoTemplate;
+    private final Duration writerLease;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public LeaderboardSnapshotStore(LeaderboardSnapshotRepository repository,
+                                    MongoTemplate mongoTemplate,
+                                    @Value("${lms.leaderboard.snapshot.interval-ms:300000}") long intervalMs) {
+        this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+        this.writerLease = Duration.ofMillis(3 * Math.max(1000, intervalMs));
+    }
+
+    /**
+     * Standings restored from a snapshot plus the high-water mark they are complete up to.
+     */
+    public record Restored(List<LeaderboardEngine.Standing> standings, Instant highWaterMark, Instant takenAt) {}
+
+    public boolean save(Collection<LeaderboardEngine.Standing> standings, Instant highWaterMark) {
+        try {
+            byte[] data = encode(standings);
+            if (data.length > MAX_BYTES) {
+                log.warn("Leaderboard snapshot too large ({} bytes for {} entries) — not stored", data.length, standings.size());
+                return false;
+            }
+            Instant now = Instant.now();
+            // matches only while we hold (or may take) the lease; otherwise the upsert collides on _id
+            Query ours = new Query(Criteria.where("_id").is(GLOBAL).orOperator(
+                    Criteria.where("writer").is(instanceId),
+                    Criteria.where("writer").exists(false),
+                    Criteria.where("writerLeaseUntil").lt(now)));
+            mongoTemplate.upsert(ours, new Update()
+                    .set("format", FORMAT)
+                    .set("entries", standings.size())
+                    .set("takenAt", now)
+                    .set("highWaterMark", highWaterMark)
+                    .set("data", data)
+                    .set("writer", instanceId)
+                    .set("writerLeaseUntil", now.plus(writerLease)), LeaderboardSnapshot.class);
+            log.debug("Leaderboard snapshot stored: {} entries, {} bytes", standings.size(), data.length);
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.debug("Leaderboard snapshot is written by another instance — skipped");
+            return false;
+        } catch (Exception e) {
+            log.warn("Failed to store leaderboard snapshot: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Latest snapshot, or null if there is none or it can't be read.
+     */
+    public Restored load() {
+        try {
+            LeaderboardSnapshot snapshot = repository.findById(GLOBAL).orElse(null);
+            if (snapshot == null || snapshot.getData() == null || snapshot.getHighWaterMark() == null) return null;
+            if (snapshot.getFormat() != FORMAT) {
+                log.info("Ignoring leaderboard snapshot with format {}", snapshot.getFormat());
+                return null;
+            }
+            return new Restored(decode(snapshot.getData()), snapshot.getHighWaterMark(), snapshot.getTakenAt());
+        } catch (Exception e) {
+            log.warn("Failed to read leaderboard snapshot: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // --- codec ---
+
+    static byte[] encode(Collection<LeaderboardEngine.Standing> standings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(standings.size());
+            for (LeaderboardEngine.Standing s : standings) {
+                out.writeUTF(s.email());
+                out.writeBoolean(s.name() != null);
+                if (s.name() != null) out.writeUTF(s.name());
+                out.writeInt(s.xp());
+                out.writeDouble(s.ratioSum());
+                out.writeLong(s.ratioCount());
+                out.writeLong(s.likes());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<LeaderboardEngine.Standing> decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            int count = in.readInt();
+            List<LeaderboardEngine.Standing> out = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String email = in.readUTF();
+                String name = in.readBoolean() ? in.readUTF() : null;
+                out.add(new LeaderboardEngine.Standing(email, name, in.readInt(), in.readDouble(), in.readLong(), in.readLong()));
+            }
+            return out;
+        }
+    }
+}
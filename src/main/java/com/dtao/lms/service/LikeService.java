@@ -14,6 +14,9 @@ public class LikeService {
 
     private final LikeRepository likeRepository;
 
+    @Autowired(required = false)
+    private LeaderboardEngine leaderboardEngine;
+
     @Autowired
     public LikeService(LikeRepository likeRepository) {
         this.likeRepository = likeRepository;
@@ -28,13 +31,16 @@ public class LikeService {
         if (existing == null) {
             LikeRecord r = new LikeRecord(targetType, targetId, email, LikeType.LIKE);
             likeRepository.save(r);
+            onLikesGiven(email, 1);
         } else if (existing.getType() == LikeType.LIKE) {
             // already liked -> remove (unlike)
             likeRepository.deleteByTargetTypeAndTargetIdAndEmail(targetType, targetId, email);
+            onLikesGiven(email, -1);
         } else {
             // was DISLIKE -> switch to LIKE
             existing.setType(LikeType.LIKE);
             likeRepository.save(existing);
+            onLikesGiven(email, 1);
         }
         return buildResponse(targetType, targetId, email);
     }
@@ -52,6 +58,7 @@ public class LikeService {
             // was LIKE -> switch to DISLIKE
             existing.setType(LikeType.DISLIKE);
             likeRepository.save(existing);
+            onLikesGiven(email, -1);
         }
         return buildResponse(targetType, targetId, email);
     }
@@ -60,6 +67,11 @@ public class LikeService {
         return buildResponse(targetType, targetId, email);
     }
 
+    /** Likes given count towards the global leaderboard tie-break. */
+    private void onLikesGiven(String email, long delta) {
+        if (leaderboardEngine != null) leaderboardEngine.onLikeDelta(email, delta);
+    }
+
     private ActionResponse buildResponse(TargetType targetType, String targetId, String email) {
         long likes = likeRepository.countByTargetTypeAndTargetIdAndType(targetType, targetId, LikeType.LIKE);
         long dislikes = likeRepository.countByTargetTypeAndTargetIdAndType(targetType, targetId, LikeType.DISLIKE);
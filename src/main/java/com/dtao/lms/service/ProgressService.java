@@ -1,11 +1,16 @@
 package com.dtao.lms.service;
 
+import com.dtao.lms.dto.BatchProgressRequest;
+import com.dtao.lms.dto.BatchProgressResponse;
 import com.dtao.lms.dto.CourseProgressResponse;
+import com.dtao.lms.dto.VideoProgressResponse;
+import com.dtao.lms.model.CourseProgressSummary;
 import com.dtao.lms.model.User;
-import com.dtao.lms.model.Video;
 import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.model.XpEvent;
 import com.dtao.lms.repo.UserRepository;
 import com.dtao.lms.repo.VideoProgressRepository;
+import com.dtao.lms.utils.EmailNormalizer;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
@@ -17,7 +22,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class ProgressService {
@@ -25,7 +29,12 @@ public class ProgressService {
     private static final Logger log = LoggerFactory.getLogger(ProgressService.class);
 
     private final VideoProgressRepository progressRepo;
-    private final CourseService courseService;
+    private final ProgressWriteBuffer writeBuffer;
+    private final CourseProgressSummaryService summaryService;
+    private final VideoMetadataCache videoMetadataCache;
+    private final CourseTreeCache courseTreeCache;
+    private final UserProgressStatsService statsService;
+    private final ProgressStageMetrics stageMetrics;
 
     @Autowired
     private UserRepository userRepository;
@@ -34,15 +43,28 @@ public class ProgressService {
     @Autowired(required = false)
     private XpEventService xpEventService;
 
+    /** Upper bound on entries accepted by one batch request. */
+    static final int MAX_BATCH_ENTRIES = 1000;
+
     private final Counter createCounter;
     private final Counter updateCounter;
     private final Counter completeCounter;
 
     public ProgressService(VideoProgressRepository progressRepo,
-                           CourseService courseService,
+                           ProgressWriteBuffer writeBuffer,
+                           CourseProgressSummaryService summaryService,
+                           VideoMetadataCache videoMetadataCache,
+                           CourseTreeCache courseTreeCache,
+                           UserProgressStatsService statsService,
+                           ProgressStageMetrics stageMetrics,
                            ObjectProvider<MeterRegistry> meterRegistryProvider) {
         this.progressRepo = progressRepo;
-        this.courseService = courseService;
+        this.writeBuffer = writeBuffer;
+        this.summaryService = summaryService;
+        this.videoMetadataCache = videoMetadataCache;
+        this.courseTreeCache = courseTreeCache;
+        this.statsService = statsService;
+        this.stageMetrics = stageMetrics;
 
         MeterRegistry registry = meterRegistryProvider.getIfAvailable();
         if (registry != null) {
@@ -74,206 +96,340 @@ public class ProgressService {
     private void incComplete() { if (completeCounter != null) completeCounter.increment(); }
 
     // ----------------------------------------------------------
-    // upsertProgress (safe version that cleans duplicates and avoids races)
+    // upsertProgress — one atomic findAndModify per heartbeat
+    // (every stage is timed under lms.video_progress.stage{op="upsert"})
     // ----------------------------------------------------------
     @Transactional
     public VideoProgress upsertProgress(String email, String videoId, Double lastPosition, Double duration, Boolean completed) {
         if (email == null || email.isBlank()) throw new IllegalArgumentException("email required");
         if (videoId == null || videoId.isBlank()) throw new IllegalArgumentException("videoId required");
 
-        try {
-            List<VideoProgress> list = progressRepo.findAllByEmailAndVideoId(email, videoId);
-            VideoProgress progress;
-            boolean changed = false;
-
-            if (list == null || list.isEmpty()) {
-                progress = new VideoProgress(
-                        email,
-                        videoId,
-                        sanitizeTime(lastPosition, 0.0),
-                        sanitizeTime(duration, 0.0),
-                        completed != null && completed
-                );
-
-                try {
-                    Video v = courseService.getVideoById(videoId);
-                    if (v != null && v.getTitle() != null) progress.setVideoTitle(v.getTitle());
-                } catch (Exception ignored) {}
+        final String op = "upsert";
+        long start = System.nanoTime();
+        boolean completing = completed != null && completed;
 
-                progress.setUpdatedAt(Instant.now());
-                VideoProgress saved = progressRepo.save(progress);
-                incCreate();
-                try { debugProgressEvent("upsertProgress", email, videoId, saved.isCompleted(), false); } catch (Exception ignored) {}
-                return saved;
+        try {
+            // ⚡ Write-behind: plain heartbeats are coalesced in memory; completion transitions fall through
+            VideoProgress buffered = stageMetrics.time(op, "buffer",
+                    () -> writeBuffer.offer(email, videoId, lastPosition, duration, completing));
+            if (buffered != null) {
+                stageMetrics.record(op, "total", "buffered", System.nanoTime() - start);
+                return buffered;
             }
 
-            progress = list.get(0);
-            if (list.size() > 1) {
-                log.warn("Duplicate progress entries for {}/{} → cleaning up {}", email, videoId, list.size() - 1);
-                for (int i = 1; i < list.size(); i++) {
-                    try {
-                        progressRepo.delete(list.get(i));
-                    } catch (Exception e) {
-                        log.warn("Failed to delete duplicate progress id {}: {}", list.get(i).getId(), e.getMessage());
-                    }
-                }
+            // $max on position/duration/completed + unique email_video_idx → no read, no duplicates, no lost updates;
+            // the (cached) title goes in with $setOnInsert, so a first write is this one command
+            String title = stageMetrics.time(op, "title", () -> titleOf(videoId));
+            VideoProgress before = stageMetrics.time(op, "save",
+                    () -> progressRepo.upsertProgressAtomic(email, videoId, lastPosition, duration, completing, title));
+            VideoProgress saved = afterImage(before, email, videoId, lastPosition, duration, completing, title);
+            stageMetrics.time(op, "stats", () -> statsService.applyChange(email, before, saved));
+
+            if (before == null) incCreate(); else incUpdate();
+            if (saved.getVideoTitle() == null || saved.getVideoTitle().isBlank()) {
+                stageMetrics.time(op, "title", () -> fillMissingTitle(saved));
             }
 
-            if (isFinite(lastPosition)) {
-                double existingPos = progress.getLastPosition() == null ? 0.0 : progress.getLastPosition();
-                if (lastPosition > existingPos) {
-                    progress.setLastPosition(lastPosition);
-                    changed = true;
-                }
+            boolean firstCompletion = saved.isCompleted() && (before == null || !before.isCompleted());
+            if (firstCompletion) {
+                incComplete();
+                stageMetrics.time(op, "summary", () -> summaryService.onVideoCompleted(email, videoId));
+                stageMetrics.time(op, "xp", () -> awardVideoXp(email, videoId, saved.getVideoTitle()));
             }
 
-            if (isFinite(duration)) {
-                double newDur = Math.max(0.0, duration);
-                if (progress.getDuration() == null || Double.compare(progress.getDuration(), newDur) != 0) {
-                    progress.setDuration(newDur);
-                    changed = true;
-                }
-            }
-
-            if (completed != null && completed && !progress.isCompleted()) {
-                progress.setCompleted(true);
-                changed = true;
-            }
+            stageMetrics.record(op, "total", "success", System.nanoTime() - start);
+            stageMetrics.event(op, email, videoId, saved.isCompleted(), firstCompletion && xpEventService != null, start);
+            return saved;
 
-            if ((progress.getVideoTitle() == null || progress.getVideoTitle().isBlank())) {
-                try {
-                    Video v = courseService.getVideoById(videoId);
-                    if (v != null && v.getTitle() != null) {
-                        progress.setVideoTitle(v.getTitle());
-                        changed = true;
-                    }
-                } catch (Exception ignored) {}
-            }
+        } catch (Exception ex) {
+            stageMetrics.record(op, "total", "error", System.nanoTime() - start);
+            log.error("upsertProgress failed for {}/{} : {}", email, videoId, ex.getMessage());
+            throw ex;
+        }
+    }
 
-            if (changed) {
-                progress.setUpdatedAt(Instant.now());
-                VideoProgress saved = progressRepo.save(progress);
-                incUpdate();
-
-                // ✅ Award XP when video first marked completed
-                try {
-                    if (xpEventService != null && saved.isCompleted()) {
-                        xpEventService.addXpEvent(
-                                email,
-                                "VIDEO",
-                                10,
-                                videoId,
-                                null,
-                                null,
-                                "Completed video: " + (saved.getVideoTitle() != null ? saved.getVideoTitle() : videoId)
-                        );
-                    }
-                } catch (Exception e) {
-                    log.warn("⚠️ XP event failed in upsertProgress for {} video {}: {}", email, videoId, e.getMessage());
-                }
+    // ----------------------------------------------------------
+    // markCompleted — same atomic upsert, XP only on the first completion
+    // ----------------------------------------------------------
+    @Transactional
+    public VideoProgress markCompleted(String email, String videoId) {
+        if (email == null || email.isBlank()) throw new IllegalArgumentException("email required");
+        if (videoId == null || videoId.isBlank()) throw new IllegalArgumentException("videoId required");
 
-                try { debugProgressEvent("upsertProgress", email, videoId, saved.isCompleted(), xpEventService != null && saved.isCompleted()); } catch (Exception ignored) {}
+        final String op = "markCompleted";
+        long start = System.nanoTime();
+        try {
+            String title = stageMetrics.time(op, "title", () -> titleOf(videoId));
+            VideoProgress before = stageMetrics.time(op, "save",
+                    () -> progressRepo.upsertProgressAtomic(email, videoId, null, null, true, title));
+            VideoProgress saved = afterImage(before, email, videoId, null, null, true, title);
+
+            if (before != null && before.isCompleted()) {
+                log.debug("User {} already completed video {} — skipping duplicate XP event", email, videoId);
+                stageMetrics.record(op, "total", "duplicate", System.nanoTime() - start);
                 return saved;
             }
 
-            try { debugProgressEvent("upsertProgress", email, videoId, progress.isCompleted(), false); } catch (Exception ignored) {}
-            return progress;
+            if (saved.getVideoTitle() == null || saved.getVideoTitle().isBlank()) {
+                stageMetrics.time(op, "title", () -> fillMissingTitle(saved));
+            }
+            incComplete();
+            stageMetrics.time(op, "summary", () -> summaryService.onVideoCompleted(email, videoId));
+            stageMetrics.time(op, "xp", () -> awardVideoXp(email, videoId, saved.getVideoTitle()));
 
+            stageMetrics.record(op, "total", "success", System.nanoTime() - start);
+            stageMetrics.event(op, email, videoId, true, xpEventService != null, start);
+            return saved;
         } catch (Exception ex) {
-            log.error("upsertProgress failed for {}/{} : {}", email, videoId, ex.getMessage());
+            stageMetrics.record(op, "total", "error", System.nanoTime() - start);
             throw ex;
         }
     }
 
     // ----------------------------------------------------------
-    // markCompleted — now emits XP event via XpEventService
+    // applyBatch — replayed heartbeats: collapse per video, one pre-read,
+    // one unordered bulk write and one batched XP insert for the whole request;
+    // completing videos are written one by one so their pre-image decides the first completion
     // ----------------------------------------------------------
-    @Transactional
-    public VideoProgress markCompleted(String email, String videoId) {
+    public BatchProgressResponse applyBatch(String email, List<BatchProgressRequest.Entry> entries) {
         if (email == null || email.isBlank()) throw new IllegalArgumentException("email required");
-        if (videoId == null || videoId.isBlank()) throw new IllegalArgumentException("videoId required");
+        List<BatchProgressRequest.Entry> list = entries == null ? List.of() : entries;
+        if (list.size() > MAX_BATCH_ENTRIES) {
+            throw new IllegalArgumentException("too many entries (max " + MAX_BATCH_ENTRIES + ")");
+        }
 
-        Optional<VideoProgress> maybe = progressRepo.findByEmailAndVideoId(email, videoId);
+        BatchProgressResponse resp = new BatchProgressResponse();
+        resp.setReceived(list.size());
+        BatchProgressResponse.EntryStatus[] statuses = new BatchProgressResponse.EntryStatus[list.size()];
+
+        // 1) collapse per video — $max semantics make the merged value order-independent
+        Map<String, MergedEntry> merged = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            BatchProgressRequest.Entry e = list.get(i);
+            if (e == null || e.getVideoId() == null || e.getVideoId().isBlank()) {
+                statuses[i] = new BatchProgressResponse.EntryStatus(i, e == null ? null : e.getVideoId(),
+                        BatchProgressResponse.REJECTED, "videoId required");
+                continue;
+            }
+            merged.computeIfAbsent(e.getVideoId(), MergedEntry::new).add(i, e);
+        }
+        if (merged.isEmpty()) {
+            resp.setResults(Arrays.asList(statuses));
+            return resp;
+        }
 
-        if (maybe.isEmpty()) {
-            VideoProgress p = new VideoProgress(email, videoId, 0.0, 0.0, true);
+        // 2) one pre-read: existing state for stats deltas and which titles are needed
+        final String op = "batch";
+        long start = System.nanoTime();
+        Map<String, VideoProgress> before = new HashMap<>();
+        for (VideoProgress vp : stageMetrics.time(op, "lookup",
+                () -> progressRepo.findByEmailAndVideoIdIn(email, new ArrayList<>(merged.keySet())))) {
+            before.putIfAbsent(vp.getVideoId(), vp);
+        }
+
+        Set<String> needTitle = new HashSet<>();
+        for (MergedEntry m : merged.values()) {
+            VideoProgress b = before.get(m.videoId);
+            if (b == null || b.getVideoTitle() == null || b.getVideoTitle().isBlank()) needTitle.add(m.videoId);
+        }
+        Map<String, String> titles = new HashMap<>();
+        for (VideoMetadataCache.VideoMeta meta : stageMetrics.time(op, "title", () -> videoMetadataCache.getAll(needTitle)).values()) {
+            if (meta.title() != null) titles.put(meta.id(), meta.title());
+        }
 
-            try {
-                Video video = courseService.getVideoById(videoId);
-                if (video != null && video.getTitle() != null) {
-                    p.setVideoTitle(video.getTitle());
+        // 3) heartbeats: one unordered bulk write with the same monotonic update as single heartbeats;
+        //    completions: one findAndModify each, whose pre-image (not the pre-read) tells whether
+        //    this request is the one that completed the video
+        Instant now = Instant.now();
+        List<VideoProgress> writes = new ArrayList<>(merged.size());
+        List<MergedEntry> completing = new ArrayList<>();
+        for (MergedEntry m : merged.values()) {
+            if (m.completed) {
+                completing.add(m);
+                continue;
+            }
+            VideoProgress w = new VideoProgress(email, m.videoId, m.lastPosition, m.duration, false);
+            w.setVideoTitle(titles.get(m.videoId));
+            w.setUpdatedAt(now);
+            writes.add(w);
+        }
+
+        try {
+            if (!writes.isEmpty()) stageMetrics.time(op, "save", () -> progressRepo.bulkUpsertProgress(writes));
+            for (MergedEntry m : completing) {
+                VideoProgress pre = stageMetrics.time(op, "complete", () -> progressRepo.upsertProgressAtomic(
+                        email, m.videoId, m.lastPosition, m.duration, true, titles.get(m.videoId)));
+                if (pre != null) before.put(m.videoId, pre); else before.remove(m.videoId);
+            }
+        } catch (Exception ex) {
+            stageMetrics.record(op, "total", "error", System.nanoTime() - start);
+            log.error("Batch progress write failed for {} ({} videos): {}", email, merged.size(), ex.getMessage());
+            for (MergedEntry m : merged.values()) {
+                for (int idx : m.indexes) {
+                    statuses[idx] = new BatchProgressResponse.EntryStatus(idx, m.videoId, BatchProgressResponse.FAILED, "write failed");
                 }
-            } catch (Exception e) {
-                log.warn("Could not set video title for {}: {}", videoId, e.getMessage());
+            }
+            resp.setResults(Arrays.asList(statuses));
+            return resp;
+        }
+        resp.setVideosWritten(merged.size());
+
+        // 4) post-write bookkeeping: counters, titles on legacy rows, summaries, stats deltas and batched XP
+        List<XpEvent> xp = new ArrayList<>();
+        List<String> firstCompleted = new ArrayList<>();
+        List<UserProgressStatsService.Change> changes = new ArrayList<>();
+        for (MergedEntry m : merged.values()) {
+            VideoProgress b = before.get(m.videoId);
+            VideoProgress after = afterImage(b, email, m.videoId, m.lastPosition, m.duration, m.completed, titles.get(m.videoId));
+            changes.add(new UserProgressStatsService.Change(email, b, after));
+            String title = titles.get(m.videoId);
+            if (after.getVideoTitle() == null && title != null) {
+                after.setVideoTitle(title);
+                if (b != null) progressRepo.setVideoTitleIfMissing(email, m.videoId, title);
             }
 
-            p.setUpdatedAt(Instant.now());
-            VideoProgress saved = progressRepo.save(p);
-            incComplete();
+            if (b == null) incCreate(); else incUpdate();
+            if (after.isCompleted() && (b == null || !b.isCompleted())) {
+                incComplete();
+                firstCompleted.add(m.videoId);
+                xp.add(new XpEvent(email, "VIDEO", 10, m.videoId, null, courseOf(m.videoId),
+                        "Completed video: " + (title != null ? title : m.videoId)));
+            }
 
-            // 🧩 Add XP event (first-time completion)
-            try {
-                if (xpEventService != null) {
-                    xpEventService.addXpEvent(
-                            email,
-                            "VIDEO",
-                            10,
-                            videoId,
-                            null,
-                            null,
-                            "Completed video: " + (p.getVideoTitle() != null ? p.getVideoTitle() : videoId)
-                    );
-                }
-            } catch (Exception e) {
-                log.warn("XP event failed for {} video {}: {}", email, videoId, e.getMessage());
+            VideoProgressResponse view = new VideoProgressResponse(after.getVideoId(), after.getLastPosition(),
+                    after.getDuration(), after.isCompleted(), after.getUpdatedAt());
+            for (int idx : m.indexes) {
+                boolean representative = idx == m.representative;
+                BatchProgressResponse.EntryStatus st = new BatchProgressResponse.EntryStatus(idx, m.videoId,
+                        representative ? BatchProgressResponse.APPLIED : BatchProgressResponse.COALESCED,
+                        representative ? null : "merged into entry " + m.representative);
+                if (representative) st.setProgress(view);
+                statuses[idx] = st;
             }
+        }
 
-            try { debugProgressEvent("markCompleted", email, videoId, true, xpEventService != null); } catch (Exception ignored) {}
-            return saved;
+        stageMetrics.time(op, "stats", () -> statsService.applyChanges(changes));
+        if (!firstCompleted.isEmpty()) {
+            stageMetrics.time(op, "summary", () -> summaryService.onVideosCompleted(email, firstCompleted));
+        }
+        if (!xp.isEmpty() && xpEventService != null) {
+            resp.setXpAwarded(stageMetrics.time(op, "xp", () -> xpEventService.addVideoXpEvents(email, xp)));
+        }
+        stageMetrics.record(op, "total", "success", System.nanoTime() - start);
 
-        } else {
-            VideoProgress p = maybe.get();
+        log.debug("Batch progress for {}: {} entries -> {} videos, {} XP events", email, list.size(), merged.size(), resp.getXpAwarded());
+        resp.setResults(Arrays.asList(statuses));
+        return resp;
+    }
 
-            if (p.isCompleted()) {
-                log.info("User {} already completed video {} — skipping duplicate XP event", email, videoId);
-                try { debugProgressEvent("markCompleted", email, videoId, true, false); } catch (Exception ignored) {}
-                return p;
-            }
+    /**
+     * All entries of one batch that target the same video. The entry with the newest
+     * clientTimestamp (ties: later in the batch) is reported as the applied one.
+     */
+    private static final class MergedEntry {
+        final String videoId;
+        final List<Integer> indexes = new ArrayList<>();
+        Double lastPosition;
+        Double duration;
+        boolean completed;
+        int representative = -1;
+        Instant representativeAt;
+
+        MergedEntry(String videoId) {
+            this.videoId = videoId;
+        }
 
-            p.setCompleted(true);
-            if (p.getVideoTitle() == null || p.getVideoTitle().isBlank()) {
-                try {
-                    Video video = courseService.getVideoById(videoId);
-                    if (video != null && video.getTitle() != null) {
-                        p.setVideoTitle(video.getTitle());
-                    }
-                } catch (Exception e) {
-                    log.warn("Could not set video title for {}: {}", videoId, e.getMessage());
-                }
-            }
-            p.setUpdatedAt(Instant.now());
-            VideoProgress saved = progressRepo.save(p);
-            incComplete();
+        void add(int index, BatchProgressRequest.Entry e) {
+            indexes.add(index);
+            if (isFinite(e.getLastPosition())) lastPosition = Math.max(lastPosition == null ? 0.0 : lastPosition, Math.max(0.0, e.getLastPosition()));
+            if (isFinite(e.getDuration())) duration = Math.max(duration == null ? 0.0 : duration, Math.max(0.0, e.getDuration()));
+            if (Boolean.TRUE.equals(e.getCompleted())) completed = true;
 
-            // 🧩 Add XP event (only once)
-            try {
-                if (xpEventService != null) {
-                    xpEventService.addXpEvent(
-                            email,
-                            "VIDEO",
-                            10,
-                            videoId,
-                            null,
-                            null,
-                            "Completed video: " + (p.getVideoTitle() != null ? p.getVideoTitle() : videoId)
-                    );
-                }
-            } catch (Exception e) {
-                log.warn("XP event failed for {} video {}: {}", email, videoId, e.getMessage());
+            Instant at = e.getClientTimestamp();
+            if (representative < 0 || at == null || representativeAt == null || !at.isBefore(representativeAt)) {
+                representative = index;
+                representativeAt = at;
             }
+        }
+    }
 
-            try { debugProgressEvent("markCompleted", email, videoId, true, xpEventService != null); } catch (Exception ignored) {}
-            return saved;
+    /**
+     * Rebuild the post-write state from the pre-image returned by findAndModify,
+     * mirroring the $max / $setOnInsert rules of the atomic upsert.
+     */
+    private static VideoProgress afterImage(VideoProgress before, String email, String videoId,
+                                            Double lastPosition, Double duration, boolean completed,
+                                            String insertTitle) {
+        VideoProgress after = new VideoProgress(email, videoId, 0.0, 0.0, false);
+        Instant now = Instant.now();
+        if (before != null) {
+            after.setId(before.getId());
+            after.setLastPosition(before.getLastPosition());
+            after.setDuration(before.getDuration());
+            after.setCompleted(before.isCompleted());
+            after.setVideoTitle(before.getVideoTitle());
+            after.setCreatedAt(before.getCreatedAt());
+        } else {
+            after.setCreatedAt(now);
+            after.setVideoTitle(insertTitle);
+        }
+        if (isFinite(lastPosition) && lastPosition > after.getLastPosition()) after.setLastPosition(lastPosition);
+        if (isFinite(duration) && duration > after.getDuration()) after.setDuration(duration);
+        if (completed) after.setCompleted(true);
+        after.setUpdatedAt(now);
+        return after;
+    }
+
+    /** Cached title of a video, written on insert; null when unknown. */
+    private String titleOf(String videoId) {
+        try {
+            VideoMetadataCache.VideoMeta meta = videoMetadataCache.get(videoId);
+            return meta != null ? meta.title() : null;
+        } catch (Exception e) {
+            log.warn("Could not resolve video title for {}: {}", videoId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Backfills legacy documents stored without a title (first writes get it via $setOnInsert).
+     */
+    private void fillMissingTitle(VideoProgress progress) {
+        try {
+            VideoMetadataCache.VideoMeta meta = videoMetadataCache.get(progress.getVideoId());
+            if (meta == null || meta.title() == null) return;
+            progress.setVideoTitle(meta.title());
+            progressRepo.setVideoTitleIfMissing(progress.getEmail(), progress.getVideoId(), meta.title());
+        } catch (Exception e) {
+            log.warn("Could not set video title for {}: {}", progress.getVideoId(), e.getMessage());
+        }
+    }
+
+    /** Course of a video (cached), so VIDEO XP counts towards that course's board. */
+    private String courseOf(String videoId) {
+        try {
+            VideoMetadataCache.VideoMeta meta = videoMetadataCache.get(videoId);
+            return meta != null ? meta.courseId() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void awardVideoXp(String email, String videoId, String videoTitle) {
+        try {
+            if (xpEventService != null) {
+                xpEventService.addXpEvent(
+                        email,
+                        "VIDEO",
+                        10,
+                        videoId,
+                        null,
+                        courseOf(videoId),
+                        "Completed video: " + (videoTitle != null ? videoTitle : videoId)
+                );
+            }
+        } catch (Exception e) {
+            log.warn("XP event failed for {} video {}: {}", email, videoId, e.getMessage());
         }
     }
 
@@ -285,44 +441,20 @@ public class ProgressService {
             return new CourseProgressResponse(courseId, 0, 0, Collections.emptyList());
         }
 
-        List<Video> all = courseService.getAllVideosForCourse(courseId);
-        int total = all == null ? 0 : all.size();
+        // single indexed point read on course_progress_summary
+        CourseProgressSummary summary = summaryService.getSummary(email, courseId);
+        int total = Math.max(0, summary.getTotalVideos());
         if (total == 0) return new CourseProgressResponse(courseId, 0, 0, Collections.emptyList());
 
-        List<String> videoIds = all.stream().map(Video::getId).filter(Objects::nonNull).toList();
-        List<VideoProgress> progressList = progressRepo.findByEmailAndVideoIdIn(email, videoIds);
-
-        Set<String> completedSet = progressList.stream()
-                .filter(VideoProgress::isCompleted)
-                .map(VideoProgress::getVideoId)
-                .collect(Collectors.toSet());
+        List<String> completedIds = summary.getCompletedVideoIds() == null
+                ? Collections.emptyList() : summary.getCompletedVideoIds();
+        int completed = Math.min(completedIds.size(), total);
 
-        int completed = completedSet.size();
-
-        return new CourseProgressResponse(courseId, total, completed, new ArrayList<>(completedSet));
+        return new CourseProgressResponse(courseId, total, completed, new ArrayList<>(completedIds));
     }
 
     // --- helpers ---
     private static boolean isFinite(Double v) { return v != null && !v.isNaN() && !v.isInfinite(); }
-    private static double sanitizeTime(Double v, double fallback) { return (!isFinite(v)) ? fallback : Math.max(0.0, v); }
-
-    /**
-     * 🔍 DEBUG helper - logs video progress updates and XP triggers in detail.
-     */
-    private void debugProgressEvent(String action, String email, String videoId, boolean completed, boolean xpTriggered) {
-        log.info(
-                "\n=============================\n" +
-                        "🎬 Progress Event Triggered\n" +
-                        "Action: {}\n" +
-                        "User: {}\n" +
-                        "Video ID: {}\n" +
-                        "Completed: {}\n" +
-                        "XP Triggered: {}\n" +
-                        "Timestamp: {}\n" +
-                        "=============================",
-                action, email, videoId, completed, xpTriggered, Instant.now()
-        );
-    }
 
     // ----------------------------------------------------------
     // 🏆 Analytics / Dashboard Methods
@@ -334,43 +466,43 @@ public class ProgressService {
 
     public double getCourseCompletionPercent(String email, String courseId) {
         if (email == null || courseId == null) return 0.0;
-        List<Video> courseVideos = courseService.getAllVideosForCourse(courseId);
-        if (courseVideos == null || courseVideos.isEmpty()) return 0.0;
-
-        List<String> videoIds = courseVideos.stream().map(Video::getId).toList();
-        long completedCount = progressRepo.findByEmailAndVideoIdIn(email, videoIds)
-                .stream().filter(VideoProgress::isCompleted).count();
+        CourseProgressSummary summary = summaryService.getSummary(email, courseId);
+        int total = summary.getTotalVideos();
+        if (total <= 0) return 0.0;
 
-        return (completedCount == videoIds.size()) ? 100.0
-                : (videoIds.isEmpty() ? 0.0 : (completedCount * 100.0 / videoIds.size()));
+        int completedCount = Math.min(summary.getCompletedCount(), total);
+        return (completedCount == total) ? 100.0 : (completedCount * 100.0 / total);
     }
 
+    /**
+     * Completion percent per student for a course: one cached course tree lookup, one
+     * aggregation over video_progress and one students query — independent of student count.
+     */
     public Map<String, Double> getLeaderboardProgress(String courseId) {
         List<User> students = userRepository.findByRoleIgnoreCase("STUDENT");
         Map<String, Double> leaderboard = new HashMap<>();
+        if (students == null || students.isEmpty()) return leaderboard;
+
+        List<String> videoIds = courseId == null ? List.of() : courseTreeCache.videoIds(courseId);
+        int total = videoIds.size();
+        Map<String, Long> completedByEmail = total == 0 ? Map.of() : progressRepo.countCompletedByEmail(videoIds);
+
         for (User s : students) {
-            double percent = getCourseCompletionPercent(s.getEmail(), courseId);
+            if (s.getEmail() == null) continue;
+            long completed = Math.min(completedByEmail.getOrDefault(EmailNormalizer.normalize(s.getEmail()), 0L), total);
+            double percent = total == 0 ? 0.0 : (completed == total ? 100.0 : completed * 100.0 / total);
             leaderboard.put(s.getEmail(), percent);
         }
         return leaderboard;
     }
 
+    /**
+     * Average capped watch percent over the user's videos — a point read of user_progress_stats.
+     */
     public double getAverageProgressForUser(String email) {
         if (email == null || email.isBlank()) return 0.0;
         try {
-            var progressList = progressRepo.findProgressRatioByEmail(email);
-            if (progressList == null || progressList.isEmpty()) return 0.0;
-
-            double totalPercent = 0.0;
-            int count = 0;
-            for (var vp : progressList) {
-                if (vp.getDuration() != null && vp.getDuration() > 0) {
-                    double percent = (vp.getLastPosition() / vp.getDuration()) * 100.0;
-                    totalPercent += Math.min(percent, 100.0);
-                    count++;
-                }
-            }
-            return count > 0 ? Math.round((totalPercent / count) * 100.0) / 100.0 : 0.0;
+            return statsService.getAverage(email);
         } catch (Exception e) {
             log.error("Error calculating average progress for {}: {}", email, e.getMessage());
             return 0.0;
@@ -380,7 +512,7 @@ public class ProgressService {
     public long getTotalVideosCompleted(String email) {
         if (email == null || email.isBlank()) return 0;
         try {
-            return progressRepo.countCompletedVideosByEmail(email);
+            return progressRepo.countCompletedVideosByEmailLower(EmailNormalizer.normalize(email), EmailNormalizer.legacyMatch(email));
         } catch (Exception e) {
             log.error("Error counting completed videos for {}: {}", email, e.getMessage());
             return 0;
@@ -390,7 +522,7 @@ public class ProgressService {
     public List<String> getRecentCompletedVideos(String email) {
         if (email == null || email.isBlank()) return List.of();
         try {
-            return progressRepo.findRecentCompletedVideos(email)
+            return progressRepo.findRecentCompletedVideosByEmailLower(EmailNormalizer.normalize(email), EmailNormalizer.legacyMatch(email))
                     .stream()
                     .map(vp -> {
                         String title = vp.getVideoTitle();
@@ -410,6 +542,8 @@ public class ProgressService {
         if (email == null || email.isBlank()) return Optional.empty();
         if (videoId == null || videoId.isBlank()) return Optional.empty();
         try {
+            Optional<VideoProgress> buffered = writeBuffer.peek(email, videoId);
+            if (buffered.isPresent()) return buffered;
             return progressRepo.findByEmailAndVideoId(email, videoId);
         } catch (Exception e) {
             log.error("Error fetching progress for {}/{}: {}", email, videoId, e.getMessage());
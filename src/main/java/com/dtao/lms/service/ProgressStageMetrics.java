@@ -0,0 +1,146 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.utils.EmailNormalizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * ⏱️ ProgressStageMetrics
+ *
+ * Per-stage latency of the progress write pipeline as Micrometer timers
+ * ({@code lms.video_progress.stage}, tags: op, stage, outcome) with p50/p95/p99 and a
+ * percentile histogram, plus sampled one-line structured events replacing the old
+ * per-heartbeat INFO banner. Snapshots are exposed at /actuator/progressstages.
+ */
+@Component
+public class ProgressStageMetrics {
+
+    private static final Logger events = LoggerFactory.getLogger("lms.progress.events");
+
+    public static final String METRIC = "lms.video_progress.stage";
+
+    private final MeterRegistry registry;
+    private final double sampleRate;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public ProgressStageMetrics(ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                @Value("${lms.progress.events.sample-rate:0.01}") double sampleRate) {
+        this.registry = meterRegistryProvider.getIfAvailable();
+        this.sampleRate = Math.max(0.0, Math.min(1.0, sampleRate));
+    }
+
+    /**
+     * Run one stage of an operation and record its latency, tagged success or error.
+     */
+    public <T> T time(String op, String stage, Supplier<T> body) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            record(op, stage, outcome, System.nanoTime() - start);
+        }
+    }
+
+    public void time(String op, String stage, Runnable body) {
+        time(op, stage, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public void record(String op, String stage, String outcome, long nanos) {
+        if (registry == null) return;
+        timers.computeIfAbsent(op + '|' + stage + '|' + outcome, k -> Timer.builder(METRIC)
+                        .description("Latency of one stage of the video progress write pipeline")
+                        .tag("op", op)
+                        .tag("stage", stage)
+                        .tag("outcome", outcome)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Structured, sampled progress event. First completions are always logged.
+     * The user is identified by {@link #userRef} only, never by the raw email.
+     */
+    public void event(String op, String email, String videoId, boolean completed, boolean xpAwarded, long startNanos) {
+        if (!xpAwarded && (sampleRate <= 0.0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) return;
+        if (!events.isInfoEnabled()) return;
+        events.info("event=video_progress op={} user={} videoId={} completed={} xp={} tookMs={}",
+                op, userRef(email), videoId, completed, xpAwarded,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * op → stage → outcome → {count, mean, max, p50, p95, p99} in milliseconds.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new TreeMap<>();
+        if (registry == null) return out;
+
+        for (Timer t : registry.find(METRIC).timers()) {
+            String op = t.getId().getTag("op");
+            String stage = t.getId().getTag("stage");
+            String outcome = t.getId().getTag("outcome");
+            HistogramSnapshot snap = t.takeSnapshot();
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", snap.count());
+            stats.put("meanMs", round(snap.mean(TimeUnit.MILLISECONDS)));
+            stats.put("maxMs", round(snap.max(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile p : snap.percentileValues()) {
+                stats.put("p" + Math.round(p.percentile() * 100) + "Ms", round(p.value(TimeUnit.MILLISECONDS)));
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> stages = (Map<String, Object>) out.computeIfAbsent(op, k -> new TreeMap<>());
+            @SuppressWarnings("unchecked")
+            Map<String, Object> outcomes = (Map<String, Object>) stages.computeIfAbsent(stage, k -> new TreeMap<>());
+            outcomes.put(outcome, stats);
+        }
+        return out;
+    }
+
+    /**
+     * Stable pseudonymous id for log lines: first 12 hex chars of SHA-256 over the normalized email.
+     */
+    static String userRef(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return "-";
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            return "-";
+        }
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 1000.0) / 1000.0;
+    }
+}
@@ -0,0 +1,343 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.repo.VideoProgressRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ProgressWriteBuffer
+ *
+ * Optional write-behind buffer for player heartbeats. Keeps only the latest
+ * position per (email, videoId) in lock-striped maps and flushes them to
+ * video_progress with one unordered bulk write per interval, using the same
+ * monotonic ($max) update as the synchronous path.
+ *
+ * Completion transitions are never buffered — callers write those synchronously.
+ */
+@Component
+public class ProgressWriteBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressWriteBuffer.class);
+
+    private final VideoProgressRepository progressRepo;
+    private final VideoMetadataCache videoMetadataCache;
+    private final UserProgressStatsService statsService;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Stripe[] stripes;
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final Counter bufferedCounter;
+    private final Counter flushedCounter;
+    private final DistributionSummary flushSize;
+    private final Timer flushLatency;
+
+    public ProgressWriteBuffer(VideoProgressRepository progressRepo,
+                               VideoMetadataCache videoMetadataCache,
+                               UserProgressStatsService statsService,
+                               ObjectProvider<MeterRegistry> meterRegistryProvider,
+                               @Value("${lms.progress.write-behind.enabled:false}") boolean enabled,
+                               @Value("${lms.progress.write-behind.stripes:16}") int stripeCount,
+                               @Value("${lms.progress.write-behind.max-entries:50000}") int maxEntries) {
+        this.progressRepo = progressRepo;
+        this.videoMetadataCache = videoMetadataCache;
+        this.statsService = statsService;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Stripe();
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            this.bufferedCounter = Counter.builder("lms.video_progress.writes")
+                    .description("Video progress write operations (absorbed by write-behind buffer)")
+                    .tag("type", "buffered")
+                    .register(registry);
+            this.flushedCounter = Counter.builder("lms.video_progress.writes")
+                    .description("Video progress write operations (flushed from write-behind buffer)")
+                    .tag("type", "flushed")
+                    .register(registry);
+            Gauge.builder("lms.video_progress.buffer.depth", depth, AtomicInteger::get)
+                    .description("Pending (email, videoId) entries in the write-behind buffer")
+                    .register(registry);
+            this.flushSize = DistributionSummary.builder("lms.video_progress.flush.size")
+                    .description("Documents written per write-behind flush")
+                    .register(registry);
+            this.flushLatency = Timer.builder("lms.video_progress.flush.latency")
+                    .description("Time taken by one write-behind bulk flush")
+                    .register(registry);
+        } else {
+            this.bufferedCounter = null;
+            this.flushedCounter = null;
+            this.flushSize = null;
+            this.flushLatency = null;
+        }
+
+        log.info("Progress write-behind buffer {} (stripes={}, maxEntries={})",
+                enabled ? "enabled" : "disabled", stripes.length, this.maxEntries);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffer a heartbeat. Returns the merged view of the progress, or null when the
+     * caller must write synchronously (buffer disabled/full, or this heartbeat is the
+     * first completion of the video).
+     */
+    public VideoProgress offer(String email, String videoId, Double lastPosition, Double duration, boolean completed) {
+        if (!enabled) return null;
+
+        String key = key(email, videoId);
+        Stripe stripe = stripeFor(key);
+
+        PendingProgress seed = null;
+        if (!stripe.contains(key)) {
+            if (depth.get() >= maxEntries) return null;
+            seed = loadSeed(email, videoId);
+        }
+
+        PendingProgress handOff;
+        stripe.lock.lock();
+        try {
+            PendingProgress pending = stripe.entries.get(key);
+            if (pending == null) {
+                // flushed between the check and the lock, or a first completion: take the sync path
+                if (seed == null || (completed && !seed.completed)) return null;
+                pending = seed;
+                stripe.entries.put(key, pending);
+                depth.incrementAndGet();
+            }
+
+            if (!completed || pending.completed) {
+                pending.merge(lastPosition, duration);
+                if (bufferedCounter != null) bufferedCounter.increment();
+                return pending.toView();
+            }
+
+            // completion transition: drop the entry and let the caller write synchronously
+            stripe.entries.remove(key);
+            depth.decrementAndGet();
+            handOff = pending;
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        writeOne(handOff); // persist what was buffered before the synchronous completion write
+        return null;
+    }
+
+    /**
+     * Current buffered state for (email, videoId), if any.
+     */
+    public Optional<VideoProgress> peek(String email, String videoId) {
+        if (!enabled) return Optional.empty();
+        String key = key(email, videoId);
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            PendingProgress pending = stripe.entries.get(key);
+            return pending == null ? Optional.empty() : Optional.of(pending.toView());
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Flush all buffered entries with one unordered bulk write.
+     */
+    @Scheduled(fixedDelayString = "${lms.progress.write-behind.flush-interval-ms:5000}")
+    public void flush() {
+        if (!enabled || depth.get() == 0) return;
+
+        List<PendingProgress> batch = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                if (stripe.entries.isEmpty()) continue;
+                batch.addAll(stripe.entries.values());
+                depth.addAndGet(-stripe.entries.size());
+                stripe.entries = new HashMap<>();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        long start = System.nanoTime();
+        try {
+            progressRepo.bulkUpsertProgress(batch.stream().map(PendingProgress::toView).toList());
+        } catch (Exception e) {
+            requeue(batch);
+            log.error("Write-behind flush of {} progress entries failed, kept for the next flush: {}",
+                    batch.size(), e.getMessage());
+            return;
+        } finally {
+            if (flushLatency != null) flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (flushedCounter != null) flushedCounter.increment(batch.size());
+        if (flushSize != null) flushSize.record(batch.size());
+        try {
+            statsService.applyChanges(batch.stream().map(PendingProgress::toChange).toList());
+        } catch (Exception e) {
+            log.error("Stats update for {} flushed progress entries failed: {}", batch.size(), e.getMessage());
+        }
+        log.debug("Flushed {} buffered progress entries", batch.size());
+    }
+
+    /**
+     * Put a batch whose write failed back into the stripes, merged ($max) with anything buffered
+     * for the same (email, videoId) since the flush took it.
+     */
+    private void requeue(List<PendingProgress> batch) {
+        for (PendingProgress failed : batch) {
+            String key = key(failed.email, failed.videoId);
+            Stripe stripe = stripeFor(key);
+            stripe.lock.lock();
+            try {
+                PendingProgress pending = stripe.entries.get(key);
+                if (pending == null) {
+                    stripe.entries.put(key, failed);
+                    depth.incrementAndGet();
+                } else {
+                    pending.absorb(failed);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    // --- helpers ---
+
+    private PendingProgress loadSeed(String email, String videoId) {
+        Optional<VideoProgress> existing = progressRepo.findByEmailAndVideoId(email, videoId);
+        if (existing.isPresent()) return PendingProgress.from(existing.get());
+
+        PendingProgress p = new PendingProgress(email, videoId);
+        VideoMetadataCache.VideoMeta meta = videoMetadataCache.get(videoId);
+        if (meta != null) p.videoTitle = meta.title();
+        return p;
+    }
+
+    private void writeOne(PendingProgress p) {
+        try {
+            progressRepo.upsertProgressAtomic(p.email, p.videoId, p.lastPosition, p.duration, false, p.videoTitle);
+            statsService.applyChanges(List.of(p.toChange()));
+        } catch (Exception e) {
+            log.warn("Could not write buffered progress for {}/{}: {}", p.email, p.videoId, e.getMessage());
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    private static String key(String email, String videoId) {
+        return email + '|' + videoId;
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        Map<String, PendingProgress> entries = new HashMap<>();
+
+        boolean contains(String key) {
+            lock.lock();
+            try {
+                return entries.containsKey(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class PendingProgress {
+        final String email;
+        final String videoId;
+        String id;
+        double lastPosition;
+        Double duration;
+        boolean completed;
+        String videoTitle;
+        Instant updatedAt = Instant.now();
+        VideoProgress base; // stored state this entry was seeded from (null if none) — for stats deltas
+
+        PendingProgress(String email, String videoId) {
+            this.email = email;
+            this.videoId = videoId;
+        }
+
+        static PendingProgress from(VideoProgress vp) {
+            PendingProgress p = new PendingProgress(vp.getEmail(), vp.getVideoId());
+            p.id = vp.getId();
+            p.lastPosition = vp.getLastPosition();
+            p.duration = vp.getDuration();
+            p.completed = vp.isCompleted();
+            p.videoTitle = vp.getVideoTitle();
+            p.updatedAt = vp.getUpdatedAt() != null ? vp.getUpdatedAt() : Instant.now();
+            p.base = vp;
+            return p;
+        }
+
+        void merge(Double position, Double dur) {
+            if (isFinite(position) && position > lastPosition) lastPosition = position;
+            // same monotonic rule the repository applies ($max), so the merged view matches what is stored
+            if (isFinite(dur)) duration = Math.max(duration != null ? duration : 0.0, dur);
+            updatedAt = Instant.now();
+        }
+
+        /** Fold in an older entry for the same key whose write failed (this one is newer). */
+        void absorb(PendingProgress older) {
+            if (older.lastPosition > lastPosition) lastPosition = older.lastPosition;
+            if (duration == null) duration = older.duration;
+            completed = completed || older.completed;
+            if (id == null) id = older.id;
+            if (videoTitle == null) videoTitle = older.videoTitle;
+            base = older.base; // the failed write never landed: the stored state is still the older seed
+        }
+
+        VideoProgress toView() {
+            VideoProgress vp = new VideoProgress(email, videoId, lastPosition, duration, completed);
+            vp.setId(id);
+            vp.setVideoTitle(videoTitle);
+            vp.setUpdatedAt(updatedAt);
+            return vp;
+        }
+
+        UserProgressStatsService.Change toChange() {
+            return new UserProgressStatsService.Change(email, base, toView());
+        }
+
+        private static boolean isFinite(Double v) { return v != null && !v.isNaN() && !v.isInfinite(); }
+    }
+}
@@ -2,10 +2,10 @@ package com.dtao.lms.service;
 
 import com.dtao.lms.dto.StudentDashboardStatsResponse;
 import com.dtao.lms.model.User;
-import com.dtao.lms.model.VideoProgress;
 import com.dtao.lms.repo.EnrollmentRepository;
 import com.dtao.lms.repo.UserRepository;
 import com.dtao.lms.repo.VideoProgressRepository;
+import com.dtao.lms.utils.EmailNormalizer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -36,6 +36,9 @@ public class StudentDashboardService {
     @Autowired
     private CertificateService certificateService;
 
+    @Autowired
+    private UserProgressStatsService userProgressStatsService;
+
     /**
      * 📊 Build all dashboard stats for the given student.
      */
@@ -44,7 +47,7 @@ public class StudentDashboardService {
             return emptyStats();
         }
 
-        email = email.trim().toLowerCase();
+        email = EmailNormalizer.normalize(email);
         User user = userRepository.findByEmail(email).orElse(null);
         if (user == null) {
             return emptyStats();
@@ -58,27 +61,15 @@ public class StudentDashboardService {
         long totalLikes = 0;
 
         try {
-            totalCourses = enrollmentRepository.countByEmailRegex(email);
+            totalCourses = enrollmentRepository.countByEmailLower(email, EmailNormalizer.legacyMatch(email));
         } catch (Exception ignored) {}
 
         try {
-            completedVideos = videoProgressRepository.countCompletedVideosByEmail(email);
+            completedVideos = videoProgressRepository.countCompletedVideosByEmailLower(email, EmailNormalizer.legacyMatch(email));
         } catch (Exception ignored) {}
 
         try {
-            List<VideoProgress> progressList = videoProgressRepository.findProgressRatioByEmail(email);
-            if (progressList != null && !progressList.isEmpty()) {
-                double totalPercent = 0.0;
-                int count = 0;
-                for (VideoProgress vp : progressList) {
-                    if (vp.getDuration() != null && vp.getDuration() > 0) {
-                        double percent = (vp.getLastPosition() / vp.getDuration()) * 100.0;
-                        totalPercent += Math.min(percent, 100.0);
-                        count++;
-                    }
-                }
-                avgProgress = count > 0 ? (totalPercent / count) : 0.0;
-            }
+            avgProgress = userProgressStatsService.getAverage(email);
         } catch (Exception ignored) {}
 
         try {
@@ -108,7 +99,7 @@ public class StudentDashboardService {
         return new StudentDashboardStatsResponse(
                 totalCourses,
                 completedVideos,
-                Math.round(avgProgress * 100.0) / 100.0,
+                avgProgress,
                 totalCertificates,
                 totalLikes,
                 recentVideos
@@ -4,20 +4,24 @@ package com.dtao.lms.service;
 import com.dtao.lms.dto.*;
 import com.dtao.lms.model.Exam;
 import com.dtao.lms.model.ExamResult;
-import com.dtao.lms.model.Question;
 import com.dtao.lms.model.User;
 import com.dtao.lms.repo.ExamRepository;
 import com.dtao.lms.repo.ExamResultRepository;
 import com.dtao.lms.repo.UserRepository;
-import com.dtao.lms.utils.ExamEvaluatorUtil;
-import org.springframework.scheduling.annotation.Async; // <- ADDED
 import org.springframework.beans.factory.annotation.Autowired; // <- ADDED
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -31,17 +35,29 @@ public class StudentExamService {
     private final ExamResultRepository examResultRepository;
     private final UserRepository userRepository;
     private final LeaderboardService leaderboardService; // <- ADDED
+    private final ExamSnapshotCache examSnapshots;
+    private final ExamEvaluationPipeline evaluationPipeline;
+    private final ExamDraftWriter draftWriter;
+    private final MongoTemplate mongoTemplate;
 
     // ✅ Manual constructor replacing Lombok @RequiredArgsConstructor
     @Autowired
     public StudentExamService(ExamRepository examRepository,
                               ExamResultRepository examResultRepository,
                               UserRepository userRepository,
-                              LeaderboardService leaderboardService) { // <- UPDATED
+                              LeaderboardService leaderboardService, // <- UPDATED
+                              ExamSnapshotCache examSnapshots,
+                              ExamEvaluationPipeline evaluationPipeline,
+                              ExamDraftWriter draftWriter,
+                              MongoTemplate mongoTemplate) {
         this.examRepository = examRepository;
         this.examResultRepository = examResultRepository;
         this.userRepository = userRepository;
         this.leaderboardService = leaderboardService;
+        this.examSnapshots = examSnapshots;
+        this.evaluationPipeline = evaluationPipeline;
+        this.draftWriter = draftWriter;
+        this.mongoTemplate = mongoTemplate;
     }
 
     /* ============================================================
@@ -92,14 +108,9 @@ public class StudentExamService {
      * 3️⃣ Start Exam
      * ============================================================ */
     public ExamStartResponse startExam(String examId, String studentEmail) {
-        Exam exam = examRepository.findById(examId)
-                .orElseThrow(() -> new RuntimeException("Exam not found"));
+        ExamSnapshotCache.ExamSnapshot exam = examSnapshots.get(examId);
 
-        Instant now = Instant.now();
-        Instant start = exam.getStartDate().atZone(java.time.ZoneId.systemDefault()).toInstant();
-        Instant end = exam.getEndDate().atZone(java.time.ZoneId.systemDefault()).toInstant();
-
-        if (now.isBefore(start) || now.isAfter(end)) {
+        if (!exam.isActive(Instant.now())) {
             throw new RuntimeException("Exam not currently active");
         }
 
@@ -122,8 +133,8 @@ public class StudentExamService {
                 .findByExamIdAndStudentEmail(examId, studentEmail)
                 .orElseGet(() -> {
                     ExamResult newResult = new ExamResult();
-                    newResult.setExamId(exam.getId());
-                    newResult.setExamName(exam.getName());
+                    newResult.setExamId(exam.id());
+                    newResult.setExamName(exam.name());
                     newResult.setStudentEmail(studentEmail);
                     newResult.setStudentName(studentName);
                     newResult.setStatus("IN_PROGRESS");
@@ -131,18 +142,21 @@ public class StudentExamService {
                     return newResult;
                 });
 
-        if (result.getStudentName() == null || result.getStudentName().isBlank()) {
+        if (result.getId() == null) {
+            examResultRepository.save(result);
+        } else if (result.getStudentName() == null || result.getStudentName().isBlank()) {
+            // only the name is written: a full save would overwrite autosaved drafts or a submit
             result.setStudentName(studentName);
+            setStudentName(result.getId(), studentName);
         }
 
-        examResultRepository.save(result);
-
         return ExamStartResponse.builder()
-                .examId(exam.getId())
-                .examName(exam.getName())
-                .durationMinutes(exam.getDuration())
-                .totalQuestions(exam.getQuestions().size())
+                .examId(exam.id())
+                .examName(exam.name())
+                .durationMinutes(exam.durationMinutes())
+                .totalQuestions(exam.totalQuestions())
                 .startTime(result.getStartTime())
+                .savedAnswers(savedAnswers(result))
                 .build();
     }
 
@@ -150,97 +164,43 @@ public class StudentExamService {
      * 4️⃣ Get Questions
      * ============================================================ */
     public List<ExamQuestionResponse> getExamQuestions(String examId) {
-        Exam exam = examRepository.findById(examId)
-                .orElseThrow(() -> new RuntimeException("Exam not found"));
-
-        List<Question> questions = new ArrayList<>(exam.getQuestions());
+        List<ExamQuestionResponse> questions = new ArrayList<>(examSnapshots.get(examId).questionViews());
         Collections.shuffle(questions);
+        return questions;
+    }
 
-        return questions.stream()
-                .map(q -> ExamQuestionResponse.builder()
-                        .questionId(q.getId())
-                        .question(q.getQuestion())
-                        .optionA(q.getOptionA())
-                        .optionB(q.getOptionB())
-                        .optionC(q.getOptionC())
-                        .optionD(q.getOptionD())
-                        .build())
-                .collect(Collectors.toList());
+    /* ============================================================
+     * 4.1 Autosave Answers (per-question deltas, written through to the open attempt)
+     * ============================================================ */
+    public int saveAnswers(String examId, String studentEmail, ExamSubmitRequest request) {
+        ExamSnapshotCache.ExamSnapshot exam = examSnapshots.get(examId);
+        return draftWriter.record(exam, studentEmail, request.getAnswers());
     }
 
     /* ============================================================
-     * 5️⃣ Submit Exam (optimized: quick save + async evaluation)
+     * 5️⃣ Submit Exam (optimized: single write + durable batched evaluation)
      * ============================================================ */
     public ExamResultResponse submitExam(String examId, String studentEmail, ExamSubmitRequest request) {
-        Exam exam = examRepository.findById(examId)
-                .orElseThrow(() -> new RuntimeException("Exam not found"));
-
-        ExamResult result = examResultRepository
-                .findByExamIdAndStudentEmail(examId, studentEmail)
-                .orElseThrow(() -> new RuntimeException("Exam session not found"));
+        ExamSnapshotCache.ExamSnapshot exam = examSnapshots.get(examId);
 
-        if ("COMPLETED".equals(result.getStatus())) {
+        // ✅ One write: answers not yet autosaved are stored with the attempt, marked EVALUATING and queued
+        ExamResult result = evaluationPipeline.submit(exam, studentEmail, request.getAnswers());
+        if (result == null) {
+            examResultRepository.findByExamIdAndStudentEmail(examId, studentEmail)
+                    .orElseThrow(() -> new RuntimeException("Exam session not found"));
             throw new RuntimeException("Exam already submitted");
         }
 
-        // ✅ Save minimal data instantly and mark as evaluating
-        result.setStatus("EVALUATING");
-        result.setSubmittedAt(Instant.now());
-        examResultRepository.save(result);
-
-        // ⚡ Fire-and-forget heavy evaluation + leaderboard update
-        evaluateAndFinalizeExamAsync(exam, result, request);
-
         // 🧠 Immediate response for frontend
         return ExamResultResponse.builder()
-                .examId(exam.getId())
-                .examName(exam.getName())
+                .examId(exam.id())
+                .examName(exam.name())
                 .studentEmail(studentEmail)
                 .status("PROCESSING")
                 .performanceMessage("Your submission is being evaluated. Results will appear soon.")
                 .build();
     }
 
-    /* ============================================================
-     * 5.1 Async worker: evaluate answers, save result, update leaderboard
-     * ============================================================ */
-    @Async("taskExecutor") // runs on taskExecutor threadpool
-    public void evaluateAndFinalizeExamAsync(Exam exam, ExamResult result, ExamSubmitRequest request) {
-        try {
-            ExamEvaluatorUtil.EvaluationResult eval =
-                    ExamEvaluatorUtil.evaluateAnswers(exam.getQuestions(), request.getAnswers());
-
-            result.setAnswers(eval.getAnswerRecords());
-            result.setCorrectCount(eval.getCorrectCount());
-            result.setWrongCount(eval.getWrongCount());
-            result.setTotalQuestions(eval.getTotalQuestions());
-            result.setPercentage(eval.getPercentage());
-            result.setScore(eval.getCorrectCount());
-            result.setStatus("COMPLETED");
-            result.setDurationSeconds(
-                    result.getStartTime() != null
-                            ? Instant.now().getEpochSecond() - result.getStartTime().getEpochSecond()
-                            : 0
-            );
-            result.setSubmittedAt(Instant.now());
-
-            examResultRepository.save(result);
-
-            // 🏆 Async leaderboard update (assumes leaderboardService has this method)
-            try {
-                leaderboardService.updateLeaderboardAsync(result);
-            } catch (Exception le) {
-                // swallow leaderboard errors but log
-                System.err.println("⚠️ Leaderboard update failed for " + result.getStudentEmail() + ": " + le.getMessage());
-            }
-
-            System.out.println("✅ [Async] Exam evaluated for " + result.getStudentEmail());
-
-        } catch (Exception e) {
-            System.err.println("💥 Error evaluating exam for " + result.getStudentEmail() + ": " + e.getMessage());
-        }
-    }
-
     /* ============================================================
      * 6️⃣ Fetch Result
      * ============================================================ */
@@ -254,7 +214,7 @@ public class StudentExamService {
                     .map(User::getName)
                     .orElse("Unknown Student");
             result.setStudentName(fetchedName);
-            examResultRepository.save(result);
+            setStudentName(result.getId(), fetchedName);
         }
 
         return toResultResponse(result);
@@ -263,6 +223,25 @@ public class StudentExamService {
     /* ============================================================
      * 🧩 Helpers
      * ============================================================ */
+    /** Backfill the name on a stored attempt without touching its answers or status. */
+    private void setStudentName(String resultId, String studentName) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(resultId)),
+                new Update().set("studentName", studentName), ExamResult.class);
+    }
+
+    /** Autosaved answers of an open attempt, in question order. */
+    private List<ExamSubmitRequest.Answer> savedAnswers(ExamResult result) {
+        if (!"IN_PROGRESS".equals(result.getStatus())) return List.of();
+
+        Map<String, ExamSubmitRequest.Answer> byQuestion = new LinkedHashMap<>();
+        if (result.getDraftAnswers() != null) {
+            result.getDraftAnswers().entrySet().stream()
+                    .sorted(Comparator.comparingInt(e -> Integer.parseInt(e.getKey())))
+                    .forEach(e -> byQuestion.put(e.getValue().getQuestionId(), e.getValue()));
+        }
+        return new ArrayList<>(byQuestion.values());
+    }
+
     private ExamResponse toExamResponse(Exam exam) {
         return ExamResponse.builder()
                 .id(exam.getId())
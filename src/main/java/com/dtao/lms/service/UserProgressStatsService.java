@@ -0,0 +1,300 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.UserProgressStats;
+import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.repo.UserProgressStatsRepository;
+import com.dtao.lms.utils.EmailNormalizer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 📈 UserProgressStatsService
+ *
+ * Keeps user_progress_stats in step with video_progress using deltas from the write
+ * path (old ratio out, new ratio in), so average progress is a point read.
+ * A scheduled repair recomputes the accumulators from video_progress and fixes drift.
+ */
+@Service
+public class UserProgressStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserProgressStatsService.class);
+
+    private static final double EPSILON = 1e-6;
+    private static final int REPAIR_BATCH = 1000;
+
+    private final UserProgressStatsRepository statsRepo;
+    private final MongoTemplate mongoTemplate;
+    private final boolean repairEnabled;
+    private final ObjectProvider<LeaderboardEngine> leaderboardEngine; // lazy: the engine bootstraps from this service
+
+    public UserProgressStatsService(UserProgressStatsRepository statsRepo,
+                                    MongoTemplate mongoTemplate,
+                                    ObjectProvider<LeaderboardEngine> leaderboardEngine,
+                                    @Value("${lms.progress.stats.repair.enabled:true}") boolean repairEnabled) {
+        this.statsRepo = statsRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.leaderboardEngine = leaderboardEngine;
+        this.repairEnabled = repairEnabled;
+    }
+
+    /**
+     * One progress row moved from {@code before} (null if new) to {@code after}.
+     */
+    public record Change(String email, VideoProgress before, VideoProgress after) {}
+
+    /**
+     * Capped watch ratio in percent, or null when the row doesn't count (unknown duration).
+     */
+    static Double ratio(VideoProgress p) {
+        if (p == null || p.getDuration() == null || p.getDuration() <= 0 || p.getLastPosition() == null) return null;
+        return Math.min((p.getLastPosition() / p.getDuration()) * 100.0, 100.0);
+    }
+
+    public void applyChange(String email, VideoProgress before, VideoProgress after) {
+        applyChanges(List.of(new Change(email, before, after)));
+    }
+
+    /**
+     * Fold the changes into one $inc per user and write them with a single unordered bulk write.
+     * Only existing accumulators are updated: a missing one is built from video_progress on
+     * first read, which already includes these rows.
+     */
+    public void applyChanges(Collection<Change> changes) {
+        if (changes == null || changes.isEmpty()) return;
+
+        Map<String, double[]> deltas = new HashMap<>(); // email -> {sumDelta, countDelta}
+        for (Change c : changes) {
+            String key = EmailNormalizer.normalize(c.email());
+            if (key == null) continue;
+            Double oldRatio = ratio(c.before());
+            Double newRatio = ratio(c.after());
+            double sum = (newRatio == null ? 0.0 : newRatio) - (oldRatio == null ? 0.0 : oldRatio);
+            int count = (newRatio == null ? 0 : 1) - (oldRatio == null ? 0 : 1);
+            if (Math.abs(sum) < EPSILON && count == 0) continue;
+
+            double[] d = deltas.computeIfAbsent(key, k -> new double[2]);
+            d[0] += sum;
+            d[1] += count;
+        }
+        if (deltas.isEmpty()) return;
+
+        try {
+            Instant now = Instant.now();
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProgressStats.class);
+            deltas.forEach((email, d) -> ops.updateOne(
+                    new Query(Criteria.where("_id").is(email)),
+                    new Update().inc("ratioSum", d[0]).inc("ratioCount", (long) d[1]).set("updatedAt", now)));
+            ops.execute();
+        } catch (Exception e) {
+            // the repair job reconciles anything lost here (the leaderboard still gets the deltas)
+            log.warn("Failed to apply progress stats deltas for {} users: {}", deltas.size(), e.getMessage());
+        }
+
+        LeaderboardEngine engine = leaderboardEngine.getIfAvailable();
+        if (engine != null) deltas.forEach((email, d) -> engine.onProgressDelta(email, d[0], (long) d[1]));
+    }
+
+    /**
+     * Average capped progress percent, rounded to 2 decimals. Built from video_progress on first use.
+     */
+    public double getAverage(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return 0.0;
+        UserProgressStats stats = statsRepo.findById(key).orElseGet(() -> rebuild(key));
+        return Math.round(stats.getAverage() * 100.0) / 100.0;
+    }
+
+    /**
+     * Compute one user's accumulator from video_progress and store it if the user has none yet.
+     * Insert-only: an accumulator created meanwhile (with deltas applied since) is re-read, never
+     * overwritten.
+     */
+    public UserProgressStats rebuild(String email) {
+        String key = EmailNormalizer.normalize(email);
+        UserProgressStats stats = compute(key);
+        try {
+            return statsRepo.insert(stats);
+        } catch (DuplicateKeyException e) {
+            return statsRepo.findById(key).orElse(stats);
+        }
+    }
+
+    /**
+     * (ratioSum, ratioCount) for one user: the stored accumulator, or computed from
+     * video_progress when there is none yet. Read-only — never creates the row.
+     */
+    public double[] ratiosFor(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return new double[2];
+        UserProgressStats stats = statsRepo.findById(key).orElseGet(() -> compute(key));
+        return new double[]{stats.getRatioSum(), stats.getRatioCount()};
+    }
+
+    /** One user's accumulator computed from video_progress (not stored). */
+    private UserProgressStats compute(String key) {
+        // rows the email backfill has not reached yet only carry the raw email (same key as allUsersPipeline)
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("$or", List.of(
+                                new Document("emailLower", key),
+                                new Document("emailLower", null).append("email", EmailNormalizer.legacyMatch(key))))
+                        .append("duration", new Document("$gt", 0))),
+                ratioGroup(null));
+
+        UserProgressStats stats = new UserProgressStats(key, 0.0, 0);
+        for (Document d : progressCollectionAggregate(pipeline)) {
+            stats = new UserProgressStats(key, number(d.get("ratioSum")), (long) number(d.get("ratioCount")));
+        }
+        return stats;
+    }
+
+    /**
+     * (ratioSum, ratioCount) of every user whose accumulator changed after {@code since}.
+     */
+    public Map<String, double[]> changedSince(Instant since) {
+        Map<String, double[]> out = new HashMap<>();
+        for (UserProgressStats s : mongoTemplate.find(new Query(Criteria.where("updatedAt").gt(since)), UserProgressStats.class)) {
+            if (s.getEmail() != null) out.put(s.getEmail(), new double[]{s.getRatioSum(), s.getRatioCount()});
+        }
+        return out;
+    }
+
+    /**
+     * 🔧 Consistency check: recompute every accumulator from video_progress and overwrite
+     * the ones that drifted (lost deltas, concurrent writers, manual data fixes). Accumulators
+     * of users with no timed progress left are reset to zero.
+     *
+     * @return number of accumulators corrected
+     */
+    @Scheduled(cron = "${lms.progress.stats.repair.cron:0 30 3 * * *}")
+    public int repairAll() {
+        if (!repairEnabled) return 0;
+        long start = System.currentTimeMillis();
+        Instant startedAt = Instant.ofEpochMilli(start);
+        int checked = 0;
+        int repaired = 0;
+
+        try {
+            Set<String> seen = new HashSet<>();
+            List<UserProgressStats> batch = new ArrayList<>(REPAIR_BATCH);
+            for (Document d : progressCollectionAggregate(allUsersPipeline())) {
+                Object id = d.get("_id");
+                if (id == null) continue;
+                seen.add(id.toString());
+                batch.add(new UserProgressStats(id.toString(), number(d.get("ratioSum")), (long) number(d.get("ratioCount"))));
+                if (batch.size() == REPAIR_BATCH) {
+                    repaired += repairBatch(batch);
+                    checked += batch.size();
+                    batch = new ArrayList<>(REPAIR_BATCH);
+                }
+            }
+            if (!batch.isEmpty()) {
+                repaired += repairBatch(batch);
+                checked += batch.size();
+            }
+            repaired += resetOrphans(seen, startedAt);
+            log.info("Progress stats repair: checked={} repaired={} in {} ms", checked, repaired, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Progress stats repair failed after {} users: {}", checked, e.getMessage());
+        }
+        return repaired;
+    }
+
+    // --- helpers ---
+
+    /**
+     * Zero the non-empty accumulators of users that no longer have timed progress rows.
+     * Rows touched since the repair started are left to the next run.
+     */
+    private int resetOrphans(Set<String> withProgress, Instant startedAt) {
+        Query nonEmpty = new Query(new Criteria().orOperator(
+                Criteria.where("ratioCount").ne(0), Criteria.where("ratioSum").ne(0.0)));
+        nonEmpty.fields().include("_id");
+
+        List<String> orphans = new ArrayList<>();
+        for (UserProgressStats s : mongoTemplate.find(nonEmpty, UserProgressStats.class)) {
+            if (s.getEmail() != null && !withProgress.contains(s.getEmail())) orphans.add(s.getEmail());
+        }
+        if (orphans.isEmpty()) return 0;
+
+        Instant now = Instant.now();
+        int reset = 0;
+        for (int i = 0; i < orphans.size(); i += REPAIR_BATCH) {
+            List<String> ids = orphans.subList(i, Math.min(i + REPAIR_BATCH, orphans.size()));
+            reset += (int) mongoTemplate.updateMulti(
+                    new Query(Criteria.where("_id").in(ids).and("updatedAt").lt(startedAt)),
+                    new Update().set("ratioSum", 0.0).set("ratioCount", 0L).set("updatedAt", now),
+                    UserProgressStats.class).getModifiedCount();
+        }
+        return reset;
+    }
+
+    private int repairBatch(List<UserProgressStats> expected) {
+        Map<String, UserProgressStats> stored = new HashMap<>();
+        statsRepo.findAllById(expected.stream().map(UserProgressStats::getEmail).toList())
+                .forEach(s -> stored.put(s.getEmail(), s));
+
+        List<UserProgressStats> drifted = new ArrayList<>();
+        for (UserProgressStats e : expected) {
+            UserProgressStats s = stored.get(e.getEmail());
+            if (s == null || s.getRatioCount() != e.getRatioCount() || Math.abs(s.getRatioSum() - e.getRatioSum()) > 1e-3) {
+                drifted.add(e);
+            }
+        }
+        if (drifted.isEmpty()) return 0;
+
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProgressStats.class);
+        Instant now = Instant.now();
+        for (UserProgressStats e : drifted) {
+            ops.upsert(new Query(Criteria.where("_id").is(e.getEmail())),
+                    new Update().set("ratioSum", e.getRatioSum()).set("ratioCount", e.getRatioCount()).set("updatedAt", now));
+        }
+        ops.execute();
+        return drifted.size();
+    }
+
+    /** Accumulators of every user with at least one timed progress row (also used by GlobalLeaderboardBuilder). */
+    static List<Document> allUsersPipeline() {
+        return List.of(
+                new Document("$match", new Document("duration", new Document("$gt", 0))),
+                ratioGroup(new Document("$ifNull", List.of("$emailLower", new Document("$toLower", "$email")))));
+    }
+
+    /** $group stage computing the accumulator fields with the same capping as {@link #ratio}. */
+    private static Document ratioGroup(Object groupKey) {
+        Document capped = new Document("$min", List.of(
+                new Document("$multiply", List.of(new Document("$divide", List.of(new Document("$ifNull", List.of("$lastPosition", 0.0)), "$duration")), 100.0)),
+                100.0));
+        return new Document("$group", new Document("_id", groupKey)
+                .append("ratioSum", new Document("$sum", capped))
+                .append("ratioCount", new Document("$sum", 1)));
+    }
+
+    private Iterable<Document> progressCollectionAggregate(List<Document> pipeline) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(VideoProgress.class))
+                .aggregate(pipeline).allowDiskUse(true);
+    }
+
+    private static double number(Object o) {
+        return o instanceof Number n ? n.doubleValue() : 0.0;
+    }
+}
@@ -39,6 +39,9 @@ public class UserService {
 
     @Autowired private EmailNotificationService emailNotificationService;
 
+    @Autowired(required = false)
+    private LeaderboardEngine leaderboardEngine;
+
     @Value("${app.mail.from}")
     private String mailFrom;
 
@@ -239,13 +242,16 @@ public class UserService {
     }
 
     public void deleteUser(String id) {
+        Optional<User> existing = userRepository.findById(id);
         userRepository.deleteById(id);
+        if (leaderboardEngine != null) existing.ifPresent(u -> leaderboardEngine.remove(u.getEmail()));
     }
 
     public Optional<User> updateUser(String id, User newData) {
         if (id == null || id.isBlank()) throw new RuntimeException("User ID is required");
 
         return userRepository.findById(id).map(existing -> {
+            String previousEmail = existing.getEmail();
             if (newData.getName() != null && !newData.getName().isBlank())
                 existing.setName(newData.getName().trim());
             if (newData.getEmail() != null && !newData.getEmail().isBlank())
@@ -260,7 +266,9 @@ public class UserService {
                 existing.setPasswordHash(passwordEncoder.encode(newData.getPasswordHash().trim()));
 
             existing.setUpdatedAt(Instant.now());
-            return userRepository.save(existing);
+            User saved = userRepository.save(existing);
+            if (leaderboardEngine != null) leaderboardEngine.onUserChanged(previousEmail, saved);
+            return saved;
         });
     }
 
@@ -294,7 +302,9 @@ public class UserService {
             user.setAbout(req.getAbout().trim());
 
         user.setUpdatedAt(Instant.now());
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        if (leaderboardEngine != null) leaderboardEngine.onUserChanged(saved.getEmail(), saved);
+        return saved;
     }
 
     public void changePassword(String email, String oldPassword, String newPassword) {
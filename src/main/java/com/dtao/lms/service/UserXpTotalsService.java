@@ -0,0 +1,339 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.UserXpTotal;
+import com.dtao.lms.model.XpEvent;
+import com.dtao.lms.repo.UserXpTotalRepository;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.dtao.lms.utils.LeaderboardLevels;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 🎖 UserXpTotalsService
+ *
+ * Keeps user_xp_totals in step with xp_events: every event written through XpEventService
+ * is folded in with one atomic $inc, so total XP, level and badge are point reads.
+ * A missing total is built from xp_events on first use; a startup backfill and a scheduled
+ * reconciliation recompute totals from the event log and fix any drift.
+ */
+@Service
+public class UserXpTotalsService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserXpTotalsService.class);
+
+    private static final String EVENTS = "xp_events";
+    private static final int RECONCILE_BATCH = 1000;
+
+    private final UserXpTotalRepository totalsRepo;
+    private final MongoTemplate mongoTemplate;
+    private final boolean reconcileEnabled;
+    private final boolean backfillEnabled;
+    private final Object backfillLock = new Object();
+    private volatile boolean backfilled = false;
+
+    public UserXpTotalsService(UserXpTotalRepository totalsRepo,
+                               MongoTemplate mongoTemplate,
+                               @Value("${lms.xp.totals.reconcile.enabled:true}") boolean reconcileEnabled,
+                               @Value("${lms.xp.totals.backfill.enabled:true}") boolean backfillEnabled) {
+        this.totalsRepo = totalsRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.reconcileEnabled = reconcileEnabled;
+        this.backfillEnabled = backfillEnabled;
+    }
+
+    /**
+     * Fold freshly written events of one user into their total. Call after the events are persisted:
+     * a missing total is built from xp_events, which then already contains them.
+     */
+    public void onEvents(String email, Collection<XpEvent> events) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null || events == null || events.isEmpty()) return;
+
+        long total = 0;
+        Instant last = null;
+        Map<String, Long> byType = new HashMap<>();
+        for (XpEvent e : events) {
+            if (e == null || e.getScore() == 0) continue;
+            total += e.getScore();
+            byType.merge(typeKey(e.getType()), (long) e.getScore(), Long::sum);
+            if (e.getCreatedAt() != null && (last == null || e.getCreatedAt().isAfter(last))) last = e.getCreatedAt();
+        }
+        if (total == 0) return;
+
+        try {
+            Update update = new Update().inc("xp", total);
+            byType.forEach((type, xp) -> update.inc("byType." + type, xp));
+            if (last != null) update.max("lastEventAt", last);
+            update.set("updatedAt", Instant.now());
+
+            UserXpTotal updated = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(key)), update,
+                    FindAndModifyOptions.options().returnNew(true), UserXpTotal.class);
+            if (updated == null) {
+                rebuild(key); // first event for this user (or not backfilled yet)
+                return;
+            }
+            syncLevel(updated);
+        } catch (Exception e) {
+            // the reconciliation job recomputes anything lost here
+            log.warn("Failed to update XP total for {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Total XP of the user; built from xp_events on first use.
+     */
+    public int getTotal(String email) {
+        UserXpTotal total = get(email);
+        return total == null ? 0 : (int) Math.min(Integer.MAX_VALUE, total.getXp());
+    }
+
+    public UserXpTotal get(String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return null;
+        return totalsRepo.findById(key).orElseGet(() -> rebuild(key));
+    }
+
+    /**
+     * Compute one user's total from xp_events and store it if the user has none yet. Insert-only:
+     * a total created meanwhile (with awards applied since) is re-read, never overwritten.
+     */
+    public UserXpTotal rebuild(String email) {
+        String key = EmailNormalizer.normalize(email);
+        List<Document> pipeline = new ArrayList<>();
+        // events the email backfill has not reached yet only carry the raw email (same key as reconcile)
+        pipeline.add(new Document("$match", new Document("$or", List.of(
+                new Document("emailLower", key),
+                new Document("emailLower", null).append("email", EmailNormalizer.legacyMatch(key))))));
+        pipeline.addAll(totalsPipeline(new Document("$literal", key)));
+
+        UserXpTotal total = new UserXpTotal(key, 0, new HashMap<>(), null);
+        for (Document d : eventsAggregate(pipeline)) total = fromAggregate(key, d);
+        applyLevel(total);
+        try {
+            return totalsRepo.insert(total);
+        } catch (DuplicateKeyException e) {
+            return totalsRepo.findById(key).orElse(total);
+        }
+    }
+
+    /**
+     * XP of every user whose total changed after {@code since} (leaderboard snapshot catch-up).
+     */
+    public Map<String, Long> changedSince(Instant since) {
+        Map<String, Long> out = new HashMap<>();
+        Query query = new Query(Criteria.where("updatedAt").gt(since));
+        query.fields().include("xp");
+        for (UserXpTotal t : mongoTemplate.find(query, UserXpTotal.class)) {
+            if (t.getEmail() != null) out.put(t.getEmail(), t.getXp());
+        }
+        return out;
+    }
+
+    /**
+     * Backfill after startup: creates every missing total from the event log (once per process).
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        ensureBackfilled();
+    }
+
+    /**
+     * 🔧 Recompute every total from xp_events and overwrite the ones that are missing or drifted.
+     * Totals of users with no events left are reset to zero.
+     *
+     * @return number of totals written
+     */
+    @Scheduled(cron = "${lms.xp.totals.reconcile.cron:0 45 3 * * *}")
+    public int reconcileAll() {
+        return reconcileEnabled ? reconcile("reconcile") : 0;
+    }
+
+    // --- helpers ---
+
+    private void ensureBackfilled() {
+        if (!backfillEnabled || backfilled) return;
+        synchronized (backfillLock) {
+            if (backfilled) return;
+            reconcile("backfill");
+            backfilled = true;
+        }
+    }
+
+    private int reconcile(String label) {
+        long start = System.currentTimeMillis();
+        Instant startedAt = Instant.ofEpochMilli(start);
+        int checked = 0;
+        int written = 0;
+        try {
+            Set<String> seen = new HashSet<>();
+            List<UserXpTotal> batch = new ArrayList<>(RECONCILE_BATCH);
+            List<Document> pipeline = totalsPipeline(new Document("$ifNull", List.of("$emailLower", new Document("$toLower", "$email"))));
+            for (Document d : eventsAggregate(pipeline)) {
+                Object id = d.get("_id");
+                if (id == null) continue;
+                seen.add(id.toString());
+                batch.add(fromAggregate(id.toString(), d));
+                if (batch.size() == RECONCILE_BATCH) {
+                    written += reconcileBatch(batch);
+                    checked += batch.size();
+                    batch = new ArrayList<>(RECONCILE_BATCH);
+                }
+            }
+            if (!batch.isEmpty()) {
+                written += reconcileBatch(batch);
+                checked += batch.size();
+            }
+            written += resetOrphans(seen, startedAt);
+            log.info("XP totals {}: checked={} written={} in {} ms", label, checked, written, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("XP totals {} failed after {} users: {}", label, checked, e.getMessage());
+        }
+        return written;
+    }
+
+    /**
+     * Zero the non-zero totals of users that no longer have any events.
+     * Totals touched since the run started are left to the next one.
+     */
+    private int resetOrphans(Set<String> withEvents, Instant startedAt) {
+        Query nonZero = new Query(Criteria.where("xp").ne(0L));
+        nonZero.fields().include("_id");
+
+        List<String> orphans = new ArrayList<>();
+        for (UserXpTotal t : mongoTemplate.find(nonZero, UserXpTotal.class)) {
+            if (t.getEmail() != null && !withEvents.contains(t.getEmail())) orphans.add(t.getEmail());
+        }
+        if (orphans.isEmpty()) return 0;
+
+        Instant now = Instant.now();
+        int reset = 0;
+        for (int i = 0; i < orphans.size(); i += RECONCILE_BATCH) {
+            List<String> ids = orphans.subList(i, Math.min(i + RECONCILE_BATCH, orphans.size()));
+            reset += (int) mongoTemplate.updateMulti(
+                    new Query(Criteria.where("_id").in(ids).and("updatedAt").lt(startedAt)),
+                    new Update()
+                            .set("xp", 0L)
+                            .set("byType", new HashMap<String, Long>())
+                            .set("level", LeaderboardLevels.level(0))
+                            .set("badge", LeaderboardLevels.badge(0))
+                            .unset("lastEventAt")
+                            .set("updatedAt", now),
+                    UserXpTotal.class).getModifiedCount();
+        }
+        return reset;
+    }
+
+    private int reconcileBatch(List<UserXpTotal> expected) {
+        Map<String, UserXpTotal> stored = new HashMap<>();
+        totalsRepo.findAllById(expected.stream().map(UserXpTotal::getEmail).toList())
+                .forEach(t -> stored.put(t.getEmail(), t));
+
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserXpTotal.class);
+        Instant now = Instant.now();
+        int count = 0;
+        for (UserXpTotal e : expected) {
+            UserXpTotal s = stored.get(e.getEmail());
+            if (s != null && s.getXp() == e.getXp() && Objects.equals(s.getByType(), e.getByType())) continue;
+            // an event newer than the aggregation landed meanwhile: leave it to the next run
+            if (s != null && s.getLastEventAt() != null && e.getLastEventAt() != null
+                    && s.getLastEventAt().isAfter(e.getLastEventAt())) continue;
+
+            applyLevel(e);
+            ops.upsert(new Query(Criteria.where("_id").is(e.getEmail())), new Update()
+                    .set("xp", e.getXp())
+                    .set("byType", e.getByType())
+                    .set("level", e.getLevel())
+                    .set("badge", e.getBadge())
+                    .set("lastEventAt", e.getLastEventAt())
+                    .set("updatedAt", now));
+            count++;
+        }
+        if (count > 0) ops.execute();
+        return count;
+    }
+
+    /** Store level / badge for the new total unless a concurrent increment already moved it on. */
+    private void syncLevel(UserXpTotal t) {
+        int xp = (int) Math.min(Integer.MAX_VALUE, t.getXp());
+        int level = LeaderboardLevels.level(xp);
+        String badge = LeaderboardLevels.badge(xp);
+        if (level == t.getLevel() && badge.equals(t.getBadge())) return;
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(t.getEmail()).and("xp").is(t.getXp())),
+                new Update().set("level", level).set("badge", badge),
+                UserXpTotal.class);
+    }
+
+    private static void applyLevel(UserXpTotal t) {
+        int xp = (int) Math.min(Integer.MAX_VALUE, t.getXp());
+        t.setLevel(LeaderboardLevels.level(xp));
+        t.setBadge(LeaderboardLevels.badge(xp));
+    }
+
+    /** Per-(user, type) sums folded into one document per user. */
+    private static List<Document> totalsPipeline(Object emailKey) {
+        return List.of(
+                new Document("$group", new Document("_id", new Document("email", emailKey).append("type", "$type"))
+                        .append("xp", new Document("$sum", "$score"))
+                        .append("last", new Document("$max", "$createdAt"))),
+                new Document("$group", new Document("_id", "$_id.email")
+                        .append("xp", new Document("$sum", "$xp"))
+                        .append("last", new Document("$max", "$last"))
+                        .append("types", new Document("$push", new Document("type", "$_id.type").append("xp", "$xp")))));
+    }
+
+    private static UserXpTotal fromAggregate(String email, Document d) {
+        Map<String, Long> byType = new HashMap<>();
+        List<Document> types = d.getList("types", Document.class);
+        if (types != null) {
+            for (Document t : types) {
+                Object xp = t.get("xp");
+                if (xp instanceof Number n && n.longValue() != 0) {
+                    byType.merge(typeKey(t.getString("type")), n.longValue(), Long::sum);
+                }
+            }
+        }
+        Object xp = d.get("xp");
+        Object last = d.get("last");
+        return new UserXpTotal(email, xp instanceof Number n ? n.longValue() : 0L, byType,
+                last instanceof Date date ? date.toInstant() : null);
+    }
+
+    /** Event type as a safe field name ("Exam Completed" -> EXAM_COMPLETED). */
+    static String typeKey(String type) {
+        if (type == null || type.isBlank()) return "SYSTEM";
+        return type.trim().toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]+", "_");
+    }
+
+    private Iterable<Document> eventsAggregate(List<Document> pipeline) {
+        return mongoTemplate.getCollection(EVENTS).aggregate(pipeline).allowDiskUse(true);
+    }
+}
@@ -0,0 +1,145 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.Chapter;
+import com.dtao.lms.model.Video;
+import com.dtao.lms.repo.ChapterRepository;
+import com.dtao.lms.repo.VideoRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 🎞️ VideoMetadataCache
+ *
+ * Bounded read-through cache of the small, rarely-changing part of a Video
+ * (title, course/chapter ids, urls, content type). Serves the hot paths that only
+ * need metadata — progress writes and every Range request of the stream endpoint.
+ *
+ * Invalidated by CourseService on video/chapter/course mutations; entries also expire
+ * after a configurable TTL as a safety net. Unknown ids are not cached.
+ */
+@Component
+public class VideoMetadataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoMetadataCache.class);
+
+    private final VideoRepository videoRepo;
+    private final ChapterRepository chapterRepo;
+    private final LoadingCache<String, VideoMeta> cache;
+
+    public VideoMetadataCache(VideoRepository videoRepo,
+                              ChapterRepository chapterRepo,
+                              ObjectProvider<MeterRegistry> meterRegistryProvider,
+                              @Value("${lms.cache.video-metadata.max-size:20000}") long maxSize,
+                              @Value("${lms.cache.video-metadata.ttl-minutes:60}") long ttlMinutes) {
+        this.videoRepo = videoRepo;
+        this.chapterRepo = chapterRepo;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, ttlMinutes)))
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public VideoMeta load(String id) {
+                        return videoRepo.findById(id).map(VideoMetadataCache.this::toMeta).orElse(null);
+                    }
+
+                    @Override
+                    public Map<String, VideoMeta> loadAll(Set<? extends String> ids) {
+                        return loadMany(ids);
+                    }
+                });
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, cache, "videoMetadata");
+        }
+    }
+
+    /**
+     * Metadata for one video, or null if it doesn't exist.
+     */
+    public VideoMeta get(String videoId) {
+        if (videoId == null || videoId.isBlank()) return null;
+        try {
+            return cache.get(videoId);
+        } catch (Exception e) {
+            log.warn("Video metadata lookup failed for {}: {}", videoId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Metadata for several videos; misses are loaded together with one $in query.
+     */
+    public Map<String, VideoMeta> getAll(Collection<String> videoIds) {
+        if (videoIds == null || videoIds.isEmpty()) return Map.of();
+        try {
+            return cache.getAll(videoIds.stream().filter(Objects::nonNull).toList());
+        } catch (Exception e) {
+            log.warn("Video metadata bulk lookup failed: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    public void invalidate(String videoId) {
+        if (videoId != null) cache.invalidate(videoId);
+    }
+
+    public void invalidateAll(Collection<String> videoIds) {
+        if (videoIds != null && !videoIds.isEmpty()) cache.invalidateAll(videoIds);
+    }
+
+    // --- helpers ---
+
+    private Map<String, VideoMeta> loadMany(Set<? extends String> ids) {
+        Map<String, VideoMeta> out = new HashMap<>();
+        Map<String, String> chapterCourse = new HashMap<>();
+        for (Video v : videoRepo.findAllById(new HashSet<>(ids))) {
+            out.put(v.getId(), toMeta(v, chapterCourse));
+        }
+        return out;
+    }
+
+    private VideoMeta toMeta(Video v) {
+        return toMeta(v, new HashMap<>());
+    }
+
+    /** Course id is the video's own, or its chapter's (chapter lookups are shared within one load). */
+    private VideoMeta toMeta(Video v, Map<String, String> chapterCourse) {
+        String courseId = v.getCourseId();
+        if ((courseId == null || courseId.isBlank()) && v.getChapterId() != null && !v.getChapterId().isBlank()) {
+            courseId = chapterCourse.computeIfAbsent(v.getChapterId(),
+                    chId -> chapterRepo.findById(chId).map(Chapter::getCourseId).orElse(null));
+        }
+        return new VideoMeta(v.getId(), v.getTitle(), courseId, v.getChapterId(),
+                v.getVideoUrl(), v.getSourceUrl(), v.getContentType());
+    }
+
+    /**
+     * Immutable metadata snapshot of a video.
+     */
+    public record VideoMeta(String id,
+                            String title,
+                            String courseId,
+                            String chapterId,
+                            String videoUrl,
+                            String sourceUrl,
+                            String contentType) {
+    }
+}
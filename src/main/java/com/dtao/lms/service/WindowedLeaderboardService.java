@@ -0,0 +1,263 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.LeaderboardEntry;
+import com.dtao.lms.model.XpEvent;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.dtao.lms.utils.LeaderboardLevels;
+import com.dtao.lms.utils.OrderStatisticTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 🗓 WindowedLeaderboardService
+ *
+ * "This week" / "this month" XP boards: rolling sums over xp_daily_buckets for the last
+ * N days (today included). Each board is loaded with one aggregation, then kept current in
+ * memory: an award adds its XP to every board whose window covers that day. Awards made on
+ * other instances only reach the buckets, so loaded boards are reloaded from them on a fixed
+ * delay and whenever the day changes.
+ */
+@Service
+public class WindowedLeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(WindowedLeaderboardService.class);
+
+    public enum Window { WEEKLY, MONTHLY }
+
+    static final Comparator<Standing> ORDER = Comparator
+            .comparingLong(Standing::xp).reversed()
+            .thenComparing(Standing::email);
+
+    private final XpDailyBucketsService buckets;
+    private final LeaderboardEngine leaderboardEngine;
+    private final boolean backfillEnabled;
+    private final Map<Window, WindowBoard> boards = new EnumMap<>(Window.class);
+
+    // awards (read side) vs. loads / rolls (write side): a load never sees half of an award
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public WindowedLeaderboardService(XpDailyBucketsService buckets,
+                                      LeaderboardEngine leaderboardEngine,
+                                      @Value("${lms.leaderboard.windows.weekly-days:7}") int weeklyDays,
+                                      @Value("${lms.leaderboard.windows.monthly-days:30}") int monthlyDays,
+                                      @Value("${lms.xp.buckets.backfill.enabled:true}") boolean backfillEnabled) {
+        this.buckets = buckets;
+        this.leaderboardEngine = leaderboardEngine;
+        this.backfillEnabled = backfillEnabled;
+        boards.put(Window.WEEKLY, new WindowBoard(Math.max(1, weeklyDays)));
+        boards.put(Window.MONTHLY, new WindowBoard(Math.max(1, monthlyDays)));
+    }
+
+    /** XP of one user in one window. */
+    public record Standing(String email, long xp) {}
+
+    /**
+     * Fold freshly persisted events into the day buckets and the resident boards.
+     */
+    public void onEvents(String email, Collection<XpEvent> events) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null || events == null || events.isEmpty()) return;
+
+        Map<LocalDate, Long> byDay = new HashMap<>();
+        for (XpEvent e : events) {
+            if (e != null && e.getScore() != 0) byDay.merge(buckets.dayOf(e.getCreatedAt()), (long) e.getScore(), Long::sum);
+        }
+        if (byDay.isEmpty()) return;
+
+        lock.readLock().lock();
+        try {
+            buckets.inc(key, byDay);
+            for (WindowBoard board : boards.values()) {
+                byDay.forEach((day, xp) -> board.add(key, day, xp));
+            }
+        } catch (Exception e) {
+            // the board is reloaded from the buckets periodically; a lost bucket increment stays lost
+            log.warn("Failed to record daily XP for {}: {}", key, e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size(Window window) {
+        return current(window).size();
+    }
+
+    /**
+     * {@code limit} entries of the window board starting at zero-based rank offset {@code offset}.
+     */
+    public List<LeaderboardEntry> page(Window window, int offset, int limit) {
+        int from = Math.max(0, offset);
+        List<Standing> slice = current(window).range(from, limit);
+        List<LeaderboardEntry> out = new ArrayList<>(slice.size());
+        int rank = from + 1;
+        for (Standing s : slice) out.add(toEntry(s, rank++));
+        return out;
+    }
+
+    public Optional<LeaderboardEntry> entryOf(Window window, String email) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null) return Optional.empty();
+        WindowBoard board = current(window);
+        synchronized (board) {
+            Standing s = board.byEmail.get(key);
+            return s == null ? Optional.empty() : Optional.of(toEntry(s, board.tree.indexOf(s) + 1));
+        }
+    }
+
+    /**
+     * Move every loaded board to the new day right after midnight, so the first read doesn't pay for it.
+     */
+    @Scheduled(cron = "${lms.leaderboard.windows.roll-cron:0 1 0 * * *}", zone = "${lms.leaderboard.windows.zone:UTC}")
+    public void rollAll() {
+        reloadAll();
+    }
+
+    /**
+     * Reload every loaded board from the day buckets, picking up awards made on other instances.
+     */
+    @Scheduled(fixedDelayString = "${lms.leaderboard.windows.reload-interval-ms:300000}",
+            initialDelayString = "${lms.leaderboard.windows.reload-interval-ms:300000}")
+    public void reloadAll() {
+        LocalDate today = buckets.today();
+        for (Window w : Window.values()) {
+            WindowBoard board = boards.get(w);
+            if (!board.loaded) continue;
+            lock.writeLock().lock();
+            try {
+                load(w, board, today);
+            } catch (Exception e) {
+                log.error("Failed to reload {} leaderboard: {}", w, e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * First rollout: build the day buckets from xp_events, then let the boards load from them.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!backfillEnabled) return;
+        lock.writeLock().lock();
+        try {
+            if (buckets.backfillOnce() > 0) boards.values().forEach(WindowBoard::unload);
+        } catch (Exception e) {
+            log.error("XP daily bucket backfill failed: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ----------------------------------------------------------
+    // loading
+    // ----------------------------------------------------------
+
+    private WindowBoard current(Window window) {
+        WindowBoard board = boards.get(window);
+        LocalDate today = buckets.today();
+        if (board.loaded && today.equals(board.to)) return board;
+
+        lock.writeLock().lock();
+        try {
+            if (!board.loaded || !today.equals(board.to)) load(window, board, today);
+        } catch (Exception e) {
+            log.error("Failed to refresh {} leaderboard: {}", window, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return board;
+    }
+
+    private void load(Window window, WindowBoard board, LocalDate today) {
+        long start = System.currentTimeMillis();
+        LocalDate from = today.minusDays(board.days - 1L);
+        Map<String, Long> sums = buckets.sumsBetween(from, today);
+        board.reset(from, today, sums);
+        log.debug("{} leaderboard loaded: {} users ({} .. {}) in {} ms", window, sums.size(), from, today, System.currentTimeMillis() - start);
+    }
+
+    private LeaderboardEntry toEntry(Standing s, int rank) {
+        int xp = (int) Math.min(Integer.MAX_VALUE, s.xp());
+        // name, level and badge describe the learner and come from the all-time board
+        return leaderboardEngine.entryOf(s.email())
+                .map(all -> new LeaderboardEntry(s.email(), all.getName(), all.getProgressPercent(), all.getTotalLikes(),
+                        rank, xp, all.getLevel(), all.getBadge()))
+                .orElseGet(() -> new LeaderboardEntry(s.email(), null, 0, 0, rank,
+                        xp, LeaderboardLevels.level(xp), LeaderboardLevels.badge(xp)));
+    }
+
+    /**
+     * Sorted standings of one rolling window [from, to].
+     */
+    private static final class WindowBoard {
+        final int days;
+        final OrderStatisticTree<Standing> tree = new OrderStatisticTree<>(ORDER);
+        final Map<String, Standing> byEmail = new HashMap<>();
+        volatile boolean loaded;
+        volatile LocalDate from;
+        volatile LocalDate to;
+
+        WindowBoard(int days) {
+            this.days = days;
+        }
+
+        synchronized void reset(LocalDate from, LocalDate to, Map<String, Long> sums) {
+            tree.clear();
+            byEmail.clear();
+            sums.forEach(this::adjust);
+            this.from = from;
+            this.to = to;
+            this.loaded = true;
+        }
+
+        synchronized void unload() {
+            loaded = false;
+            tree.clear();
+            byEmail.clear();
+        }
+
+        /** An award on {@code day}: counts only if the board is loaded and the day is inside its window. */
+        synchronized void add(String email, LocalDate day, long xp) {
+            if (!loaded || day.isBefore(from) || day.isAfter(to)) return;
+            adjust(email, xp);
+        }
+
+        synchronized void adjust(String email, long delta) {
+            Standing old = byEmail.remove(email);
+            long xp = (old != null ? old.xp() : 0) + delta;
+            if (old != null) tree.remove(old);
+            if (xp > 0) {
+                Standing s = new Standing(email, xp);
+                byEmail.put(email, s);
+                tree.add(s);
+            }
+        }
+
+        synchronized int size() {
+            return tree.size();
+        }
+
+        synchronized List<Standing> range(int from, int count) {
+            return tree.range(from, count);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.XpDailyBucket;
+import com.dtao.lms.utils.EmailNormalizer;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 📅 XpDailyBucketsService
+ *
+ * Maintains xp_daily_buckets: one document per (user, day) holding the XP earned that day,
+ * bumped with $inc as XP is awarded. Windowed leaderboards read rolling sums over these
+ * buckets instead of summing raw xp_events over a time range.
+ */
+@Service
+public class XpDailyBucketsService {
+
+    private static final Logger log = LoggerFactory.getLogger(XpDailyBucketsService.class);
+
+    static final String COLLECTION = "xp_daily_buckets";
+    private static final String EVENTS = "xp_events";
+    static final String MIGRATIONS = "lms_migrations";
+    static final String BACKFILL_MARKER = "xp-daily-buckets-backfill";
+
+    private final MongoTemplate mongoTemplate;
+    private final ZoneId zone;
+    private final int retentionDays;
+
+    public XpDailyBucketsService(MongoTemplate mongoTemplate,
+                                 @Value("${lms.leaderboard.windows.zone:UTC}") String zone,
+                                 @Value("${lms.xp.buckets.retention-days:400}") int retentionDays) {
+        this.mongoTemplate = mongoTemplate;
+        this.zone = ZoneId.of(zone);
+        this.retentionDays = Math.max(31, retentionDays);
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    public LocalDate dayOf(Instant at) {
+        return (at != null ? at : Instant.now()).atZone(zone).toLocalDate();
+    }
+
+    /**
+     * Add XP to the user's day buckets — one unordered bulk upsert.
+     */
+    public void inc(String email, Map<LocalDate, Long> xpByDay) {
+        String key = EmailNormalizer.normalize(email);
+        if (key == null || xpByDay == null || xpByDay.isEmpty()) return;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, XpDailyBucket.class);
+        Instant now = Instant.now();
+        xpByDay.forEach((day, xp) -> {
+            if (xp == null || xp == 0) return;
+            String d = day.toString();
+            bulk.upsert(new Query(Criteria.where("_id").is(XpDailyBucket.idOf(key, d))),
+                    new Update().inc("xp", xp)
+                            .set("updatedAt", now)
+                            .setOnInsert("email", key)
+                            .setOnInsert("day", d)
+                            .setOnInsert("expiresAt", expiryOf(day)));
+        });
+        bulk.execute();
+    }
+
+    /**
+     * XP per user summed over the days {@code from}..{@code to} (inclusive).
+     */
+    public Map<String, Long> sumsBetween(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) return Map.of();
+        Document match = from.equals(to)
+                ? new Document("day", from.toString())
+                : new Document("day", new Document("$gte", from.toString()).append("$lte", to.toString()));
+        List<Document> pipeline = List.of(
+                new Document("$match", match),
+                new Document("$group", new Document("_id", "$email").append("xp", new Document("$sum", "$xp"))));
+
+        Map<String, Long> out = new HashMap<>();
+        for (Document d : mongoTemplate.getCollection(COLLECTION).aggregate(pipeline).allowDiskUse(true)) {
+            Object id = d.get("_id");
+            Object xp = d.get("xp");
+            if (id != null && xp instanceof Number n && n.longValue() != 0) out.put(id.toString(), n.longValue());
+        }
+        return out;
+    }
+
+    /**
+     * First rollout: build the buckets of the retention period from xp_events, then record a
+     * completion marker in lms_migrations; live awards keep the buckets current from then on.
+     * Runs again after an interrupted backfill (buckets written by live awards in the meantime
+     * don't count as done); re-running is safe because it only raises buckets with $max.
+     */
+    public int backfillOnce() {
+        if (mongoTemplate.getCollection(MIGRATIONS).countDocuments(new Document("_id", BACKFILL_MARKER)) > 0) return 0;
+
+        long start = System.currentTimeMillis();
+        LocalDate first = today().minusDays(retentionDays - 1L);
+        Document emailKey = new Document("$ifNull", List.of("$emailLower", new Document("$toLower", "$email")));
+        Document dayKey = new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                .append("date", "$createdAt").append("timezone", zone.getId()));
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("createdAt", new Document("$gte", Date.from(first.atStartOfDay(zone).toInstant())))),
+                new Document("$group", new Document("_id", new Document("email", emailKey).append("day", dayKey))
+                        .append("xp", new Document("$sum", "$score"))));
+
+        int written = 0;
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, XpDailyBucket.class);
+        List<Document> batch = new ArrayList<>();
+        for (Document d : mongoTemplate.getCollection(EVENTS).aggregate(pipeline).allowDiskUse(true)) {
+            Document id = d.get("_id", Document.class);
+            Object xp = d.get("xp");
+            if (id == null || id.getString("email") == null || id.getString("day") == null || !(xp instanceof Number n)) continue;
+            String day = id.getString("day");
+            // $max: an award that raced the backfill already counted itself
+            bulk.upsert(new Query(Criteria.where("_id").is(XpDailyBucket.idOf(id.getString("email"), day))),
+                    new Update().max("xp", n.longValue())
+                            .set("updatedAt", now)
+                            .setOnInsert("email", id.getString("email"))
+                            .setOnInsert("day", day)
+                            .setOnInsert("expiresAt", expiryOf(LocalDate.parse(day))));
+            batch.add(d);
+            if (batch.size() == 1000) {
+                bulk.execute();
+                written += batch.size();
+                batch.clear();
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, XpDailyBucket.class);
+            }
+        }
+        if (!batch.isEmpty()) {
+            bulk.execute();
+            written += batch.size();
+        }
+        mongoTemplate.getCollection(MIGRATIONS).replaceOne(new Document("_id", BACKFILL_MARKER),
+                new Document("_id", BACKFILL_MARKER).append("completedAt", new Date()).append("buckets", written),
+                new ReplaceOptions().upsert(true));
+        log.info("XP daily buckets backfilled: {} buckets since {} in {} ms", written, first, System.currentTimeMillis() - start);
+        return written;
+    }
+
+    private Instant expiryOf(LocalDate day) {
+        return day.plusDays(retentionDays).atStartOfDay(zone).toInstant();
+    }
+}
@@ -3,11 +3,18 @@ package com.dtao.lms.service;
 
 import com.dtao.lms.model.XpEvent;
 import com.dtao.lms.repo.XpEventRepository;
+import com.dtao.lms.utils.EmailNormalizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * 🧠 XpEventService
@@ -19,9 +26,20 @@ public class XpEventService {
     private static final Logger log = LoggerFactory.getLogger(XpEventService.class);
 
     private final XpEventRepository xpEventRepository;
+    private final UserXpTotalsService xpTotals;
 
-    public XpEventService(XpEventRepository xpEventRepository) {
+    @Autowired(required = false)
+    private LeaderboardEngine leaderboardEngine;
+
+    @Autowired(required = false)
+    private CourseLeaderboardService courseLeaderboardService;
+
+    @Autowired(required = false)
+    private WindowedLeaderboardService windowedLeaderboards;
+
+    public XpEventService(XpEventRepository xpEventRepository, UserXpTotalsService xpTotals) {
         this.xpEventRepository = xpEventRepository;
+        this.xpTotals = xpTotals;
     }
 
     /**
@@ -36,6 +54,7 @@ public class XpEventService {
         try {
             XpEvent event = new XpEvent(email, type != null ? type : "SYSTEM", score, null, null, null, message);
             xpEventRepository.save(event);
+            onXpAwarded(email, List.of(event));
             log.info("🎖 XP +{} added for {} [{}] ({})", score, email, type, message);
             return true;
         } catch (Exception e) {
@@ -45,46 +64,98 @@ public class XpEventService {
     }
 
     /**
-     * ✅ Add a new XP Event (prevents duplicates)
+     * ✅ Add a new XP Event (once per user + type + video/question/course).
+     * A single insert: the unique dedup key index rejects repeats, which count as "already awarded".
      */
     public boolean addXpEvent(String email, String type, int score,
                               String videoId, String questionId, String courseId, String message) {
         if (email == null || email.isBlank() || type == null) return false;
 
         try {
-            // 🧠 Prevent duplicate XP for same user + type + entity (video/question/course)
-            if (type.equalsIgnoreCase("VIDEO") && videoId != null) {
-                if (xpEventRepository.countByEmailAndTypeAndVideoId(email, type, videoId) > 0) return false;
-            }
-            if (type.equalsIgnoreCase("DISCUSSION") && questionId != null) {
-                if (xpEventRepository.countByEmailAndTypeAndQuestionId(email, type, questionId) > 0) return false;
-            }
-            if (type.equalsIgnoreCase("COURSE") && courseId != null) {
-                if (xpEventRepository.countByEmailAndTypeAndCourseId(email, type, courseId) > 0) return false;
-            }
-
             XpEvent event = new XpEvent(email, type, score, videoId, questionId, courseId, message);
-            xpEventRepository.save(event);
+            xpEventRepository.insert(event);
+            onXpAwarded(email, List.of(event));
             log.info("XP added for {} [{}] +{} points ({})", email, type, score, message);
             return true;
+        } catch (DuplicateKeyException e) {
+            log.debug("XP already awarded for {} [{}]", email, type);
+            return false;
         } catch (Exception e) {
             log.error("Error adding XP event for {}: {}", email, e.getMessage());
             return false;
         }
     }
 
+    /**
+     * ✅ Award VIDEO XP for several videos of one user with a single insert.
+     * Videos that already carry a VIDEO event are skipped. Returns the number of events inserted.
+     */
+    public int addVideoXpEvents(String email, List<XpEvent> events) {
+        if (email == null || email.isBlank() || events == null || events.isEmpty()) return 0;
+
+        Map<String, XpEvent> byVideo = new LinkedHashMap<>();
+        for (XpEvent e : events) {
+            if (e != null && e.getVideoId() != null) byVideo.putIfAbsent(e.getVideoId(), e);
+        }
+        return awardXpEvents(new ArrayList<>(byVideo.values()));
+    }
+
+    /**
+     * ✅ Award many XP events (any users) with one unordered insertMany — for batch progress and backfills.
+     * Events already awarded are rejected by the dedup key index and skipped. Returns the number inserted.
+     */
+    public int awardXpEvents(List<XpEvent> events) {
+        if (events == null || events.isEmpty()) return 0;
+
+        try {
+            List<XpEvent> valid = events.stream().filter(e -> e != null && e.getEmail() != null && !e.getEmail().isBlank()).toList();
+            List<XpEvent> inserted = xpEventRepository.insertIgnoringDuplicates(valid);
+
+            Map<String, List<XpEvent>> byEmail = new LinkedHashMap<>();
+            for (XpEvent e : inserted) {
+                byEmail.computeIfAbsent(e.getEmail(), k -> new ArrayList<>()).add(e);
+            }
+            byEmail.forEach(this::onXpAwarded);
+            log.info("XP added: {} of {} events inserted (batch, {} users)", inserted.size(), events.size(), byEmail.size());
+            return inserted.size();
+        } catch (Exception e) {
+            log.error("Error adding batched XP events: {}", e.getMessage());
+            return 0;
+        }
+    }
+
     /**
      * ✅ Get all XP events for a user
      */
     public List<XpEvent> getXpHistory(String email) {
-        return xpEventRepository.findByEmailOrderByCreatedAtDesc(email);
+        return xpEventRepository.findByEmailLowerOrderByCreatedAtDesc(EmailNormalizer.normalize(email), EmailNormalizer.legacyMatch(email));
     }
 
     /**
-     * ✅ Compute total XP for a user
+     * ✅ Total XP for a user (materialized in user_xp_totals)
      */
     public int getTotalXp(String email) {
-        return xpEventRepository.findByEmailOrderByCreatedAtDesc(email)
-                .stream().mapToInt(XpEvent::getScore).sum();
+        return xpTotals.getTotal(email);
+    }
+
+    /**
+     * Keep the materialized total, the daily buckets, the resident global leaderboard and the course boards in step with the persisted events.
+     */
+    private void onXpAwarded(String email, List<XpEvent> events) {
+        xpTotals.onEvents(email, events);
+        if (windowedLeaderboards != null) windowedLeaderboards.onEvents(email, events);
+
+        if (courseLeaderboardService != null) {
+            events.stream().map(XpEvent::getCourseId).filter(Objects::nonNull).distinct()
+                    .forEach(courseLeaderboardService::invalidate);
+        }
+
+        int score = events.stream().mapToInt(XpEvent::getScore).sum();
+        if (leaderboardEngine == null || score == 0) return;
+        try {
+            leaderboardEngine.onXp(email, score);
+        } catch (Exception e) {
+            log.warn("Leaderboard XP update failed for {}: {}", email, e.getMessage());
+        }
     }
 }
@@ -0,0 +1,134 @@
+package com.dtao.lms.utils;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.Question;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ✅ CompiledAnswerKey
+ * An exam's answer key compiled once into a byte per question (A..D, empty, or free text),
+ * indexed by question ordinal. A submission is decoded into the same shape, so scoring is
+ * a loop over two byte arrays with no per-question allocation.
+ *
+ * Matches ExamEvaluatorUtil exactly: options compare case-insensitively, "OptionC" equals "C",
+ * and answers outside A..D fall back to a case-insensitive text comparison.
+ */
+public final class CompiledAnswerKey {
+
+    static final byte EMPTY = 0;   // no answer / no key
+    static final byte TEXT = -1;   // anything other than A..D: compared as text
+    // A..D are 1..4
+
+    private final String[] questionIds;
+    private final Map<String, Integer> ordinals;
+    private final byte[] key;
+    private final String[] textKey; // normalized key where key[i] == TEXT, else null
+
+    private CompiledAnswerKey(String[] questionIds, Map<String, Integer> ordinals, byte[] key, String[] textKey) {
+        this.questionIds = questionIds;
+        this.ordinals = ordinals;
+        this.key = key;
+        this.textKey = textKey;
+    }
+
+    public static CompiledAnswerKey compile(List<Question> questions) {
+        int n = questions.size();
+        String[] ids = new String[n];
+        Map<String, Integer> ordinals = new HashMap<>(Math.max(16, n * 2));
+        byte[] key = new byte[n];
+        String[] textKey = new String[n];
+        for (int i = 0; i < n; i++) {
+            Question q = questions.get(i);
+            ids[i] = q.getId();
+            if (q.getId() != null) ordinals.putIfAbsent(q.getId(), i);
+            String answer = q.getAnswer() == null ? "" : q.getAnswer().trim();
+            key[i] = code(answer);
+            if (key[i] == TEXT) textKey[i] = answer;
+        }
+        return new CompiledAnswerKey(ids, ordinals, key, textKey);
+    }
+
+    public int size() {
+        return key.length;
+    }
+
+    public String questionId(int ordinal) {
+        return questionIds[ordinal];
+    }
+
+    /** Ordinal of the question, or -1 when the exam has no such question. */
+    public int ordinal(String questionId) {
+        Integer ordinal = questionId == null ? null : ordinals.get(questionId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * A submission in question order: the option code per question plus the trimmed raw answer
+     * (null where the question was not answered).
+     */
+    public record Submission(byte[] options, String[] raw) {}
+
+    /**
+     * Map submitted answers onto question ordinals. Unknown question ids are ignored;
+     * of several answers to one question the last wins.
+     */
+    public Submission decode(List<ExamSubmitRequest.Answer> answers) {
+        byte[] options = new byte[key.length];
+        String[] raw = new String[key.length];
+        if (answers == null) return new Submission(options, raw);
+        for (ExamSubmitRequest.Answer a : answers) {
+            if (a == null || a.getQuestionId() == null || a.getSelectedOption() == null) continue;
+            Integer ordinal = ordinals.get(a.getQuestionId().trim());
+            if (ordinal == null) continue;
+            String selected = a.getSelectedOption().trim();
+            raw[ordinal] = selected;
+            options[ordinal] = code(selected);
+        }
+        return new Submission(options, raw);
+    }
+
+    /** Number of correctly answered questions. */
+    public int score(Submission s) {
+        byte[] options = s.options();
+        int correct = 0;
+        for (int i = 0; i < key.length; i++) {
+            byte k = key[i];
+            if (k == TEXT) {
+                if (options[i] == TEXT && s.raw()[i].equalsIgnoreCase(textKey[i])) correct++;
+            } else if (options[i] == k) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+
+    public boolean isCorrect(Submission s, int ordinal) {
+        byte k = key[ordinal];
+        if (k == TEXT) return s.options()[ordinal] == TEXT && s.raw()[ordinal].equalsIgnoreCase(textKey[ordinal]);
+        return s.options()[ordinal] == k;
+    }
+
+    /** Option code of a trimmed answer: "A".."D" or "OptionA".."OptionD" (any case) → 1..4. */
+    static byte code(String s) {
+        int len = s.length();
+        if (len == 0) return EMPTY;
+        char c;
+        if (len == 1) {
+            c = s.charAt(0);
+        } else if (len == 7 && s.regionMatches(true, 0, "Option", 0, 6)) {
+            c = s.charAt(6);
+        } else {
+            return TEXT;
+        }
+        return switch (c) {
+            case 'A', 'a' -> 1;
+            case 'B', 'b' -> 2;
+            case 'C', 'c' -> 3;
+            case 'D', 'd' -> 4;
+            default -> TEXT;
+        };
+    }
+}
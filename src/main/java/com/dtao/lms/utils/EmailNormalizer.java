@@ -0,0 +1,32 @@
+package com.dtao.lms.utils;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical form of an email for indexed, case-insensitive lookups
+ * (stored alongside the original as emailLower / studentEmailLower).
+ *
+ * Documents written before the field existed have no emailLower until
+ * EmailNormalizationMigration reaches them, so lookups pair the exact match with
+ * {@link #legacyMatch} on the raw field for documents where it is still missing.
+ */
+public final class EmailNormalizer {
+
+    private EmailNormalizer() {}
+
+    public static String normalize(String email) {
+        if (email == null) return null;
+        String trimmed = email.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Anchored, case-insensitive match on the raw email, for documents not yet backfilled.
+     */
+    public static Pattern legacyMatch(String email) {
+        String normalized = normalize(email);
+        return Pattern.compile("^\\s*" + Pattern.quote(normalized == null ? "" : normalized) + "\\s*$",
+                Pattern.CASE_INSENSITIVE);
+    }
+}
@@ -65,6 +65,34 @@ public class ExamEvaluatorUtil {
         return new EvaluationResult(answerRecords, correctCount, wrongCount, total, percentage);
     }
 
+    /**
+     * Evaluate with a compiled answer key: scoring runs over byte arrays; answer records are
+     * built afterwards from the same decoded submission. {@code questions} must be the list the
+     * key was compiled from.
+     */
+    public static EvaluationResult evaluateAnswers(CompiledAnswerKey key, List<Question> questions, List<ExamSubmitRequest.Answer> answers) {
+        CompiledAnswerKey.Submission submission = key.decode(answers);
+        int correctCount = key.score(submission);
+
+        List<AnswerRecord> answerRecords = new ArrayList<>(key.size());
+        for (int i = 0; i < key.size(); i++) {
+            Question q = questions.get(i);
+            String selectedRaw = submission.raw()[i];
+            answerRecords.add(new AnswerRecord(
+                    q.getId(),
+                    q.getQuestion() != null ? q.getQuestion() : "Question text missing",
+                    selectedRaw != null ? selectedRaw : "Not answered",
+                    q.getAnswer() != null ? q.getAnswer() : "N/A",
+                    key.isCorrect(submission, i),
+                    q.getExplanation() != null ? q.getExplanation() : "No explanation available"
+            ));
+        }
+
+        int total = key.size();
+        double percentage = total == 0 ? 0 : (correctCount * 100.0 / total);
+        return new EvaluationResult(answerRecords, correctCount, total - correctCount, total, percentage);
+    }
+
     /**
      * ✅ Normalize input — handles cases like "OptionC" → "C"
      */
@@ -0,0 +1,19 @@
+package com.dtao.lms.utils;
+
+/**
+ * XP → level / badge rules shared by every leaderboard view.
+ */
+public final class LeaderboardLevels {
+
+    private LeaderboardLevels() {}
+
+    public static int level(int xp) {
+        return (Math.max(0, xp) / 100) + 1;
+    }
+
+    public static String badge(int xp) {
+        return xp >= 500 ? "Pro Learner 🥇" :
+                xp >= 200 ? "Active Learner 🥈" :
+                        "New Learner 🐣";
+    }
+}
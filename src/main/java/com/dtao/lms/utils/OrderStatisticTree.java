@@ -0,0 +1,192 @@
+package com.dtao.lms.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Order-statistic tree (treap with subtree sizes).
+ *
+ * Keeps elements sorted by the given comparator and supports insert, remove,
+ * rank-of and select-by-index in O(log n) expected time, plus range reads in
+ * O(log n + k). Elements comparing equal are treated as the same element, so the
+ * comparator must be a total order (break ties on a unique key).
+ *
+ * Not thread-safe — callers guard it with their own lock.
+ */
+public class OrderStatisticTree<T> {
+
+    private static final class Node<T> {
+        final T key;
+        final int priority;
+        int size = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(T key, int priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+    }
+
+    private final Comparator<? super T> comparator;
+    private final SplittableRandom random = new SplittableRandom();
+    private Node<T> root;
+
+    public OrderStatisticTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * Insert the element; returns false if an equal element is already present.
+     */
+    public boolean add(T key) {
+        int idx = lowerBound(key);
+        if (idx < size() && comparator.compare(get(idx), key) == 0) return false;
+        Node<T>[] parts = splitBySize(root, idx);
+        root = merge(merge(parts[0], new Node<>(key, random.nextInt())), parts[1]);
+        return true;
+    }
+
+    /**
+     * Remove the element equal to {@code key}; returns false if absent.
+     */
+    public boolean remove(T key) {
+        int idx = indexOf(key);
+        if (idx < 0) return false;
+        Node<T>[] head = splitBySize(root, idx);
+        Node<T>[] tail = splitBySize(head[1], 1);
+        root = merge(head[0], tail[1]);
+        return true;
+    }
+
+    /**
+     * Zero-based position of the element equal to {@code key}, or -1 if absent.
+     */
+    public int indexOf(T key) {
+        Node<T> n = root;
+        int offset = 0;
+        while (n != null) {
+            int c = comparator.compare(key, n.key);
+            if (c == 0) return offset + size(n.left);
+            if (c < 0) {
+                n = n.left;
+            } else {
+                offset += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of elements strictly smaller than {@code key}.
+     */
+    public int lowerBound(T key) {
+        Node<T> n = root;
+        int count = 0;
+        while (n != null) {
+            if (comparator.compare(n.key, key) < 0) {
+                count += size(n.left) + 1;
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Element at zero-based position {@code index}.
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        Node<T> n = root;
+        while (true) {
+            int leftSize = size(n.left);
+            if (index < leftSize) {
+                n = n.left;
+            } else if (index == leftSize) {
+                return n.key;
+            } else {
+                index -= leftSize + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    /**
+     * Up to {@code count} elements starting at position {@code from}, in order.
+     */
+    public List<T> range(int from, int count) {
+        int start = Math.max(0, from);
+        int end = (int) Math.min((long) start + Math.max(0, count), size());
+        List<T> out = new ArrayList<>(Math.max(0, end - start));
+        collect(root, start, end, 0, out);
+        return out;
+    }
+
+    public List<T> toList() {
+        return range(0, size());
+    }
+
+    // --- treap internals ---
+
+    private void collect(Node<T> n, int from, int to, int offset, List<T> out) {
+        if (n == null || offset >= to || offset + n.size <= from) return;
+        collect(n.left, from, to, offset, out);
+        int idx = offset + size(n.left);
+        if (idx >= from && idx < to) out.add(n.key);
+        collect(n.right, from, to, idx + 1, out);
+    }
+
+    /** Split into (first k elements, the rest). */
+    @SuppressWarnings("unchecked")
+    private Node<T>[] splitBySize(Node<T> n, int k) {
+        if (n == null) return new Node[]{null, null};
+        if (size(n.left) >= k) {
+            Node<T>[] parts = splitBySize(n.left, k);
+            n.left = parts[1];
+            update(n);
+            return new Node[]{parts[0], n};
+        }
+        Node<T>[] parts = splitBySize(n.right, k - size(n.left) - 1);
+        n.right = parts[0];
+        update(n);
+        return new Node[]{n, parts[1]};
+    }
+
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static <T> int size(Node<T> n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static <T> void update(Node<T> n) {
+        n.size = 1 + size(n.left) + size(n.right);
+    }
+}
@@ -0,0 +1,87 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.Exam;
+import com.dtao.lms.model.ExamResult;
+import com.dtao.lms.model.Question;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Autosaved deltas are written through as per-slot $set updates, and only onto an open attempt.
+ */
+class ExamDraftWriterTest {
+
+    private MongoTemplate mongoTemplate;
+    private ExamDraftWriter writer;
+    private ExamSnapshotCache.ExamSnapshot exam;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        writer = new ExamDraftWriter(mongoTemplate, mock(ObjectProvider.class));
+
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) questions.add(Question.builder().id("q" + i).answer("A").build());
+        Exam e = new Exam();
+        e.setName("Exam");
+        e.setQuestions(questions);
+        exam = ExamSnapshotCache.compile(e);
+    }
+
+    @Test
+    void deltasAreStoredAsSlotUpdatesOnTheOpenAttempt() {
+        matched(1);
+
+        int saved = writer.record(exam, "a@example.com", List.of(new ExamSubmitRequest.Answer("q1", "A"),
+                new ExamSubmitRequest.Answer("q1", "C"), new ExamSubmitRequest.Answer("q3", "B"),
+                new ExamSubmitRequest.Answer("unknown", "D")));
+
+        ArgumentCaptor<Query> filter = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(filter.capture(), update.capture(), eq(ExamResult.class));
+        assertEquals(2, saved);
+        assertEquals("IN_PROGRESS", filter.getValue().getQueryObject().get("status"));
+        assertEquals("a@example.com", filter.getValue().getQueryObject().get("studentEmail"));
+
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals(2, set.size());
+        assertEquals("C", ((ExamSubmitRequest.Answer) set.get("draftAnswers.1")).getSelectedOption());
+        assertEquals("q3", ((ExamSubmitRequest.Answer) set.get("draftAnswers.3")).getQuestionId());
+    }
+
+    @Test
+    void autosaveWithoutAnOpenAttemptIsRejected() {
+        matched(0);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () ->
+                writer.record(exam, "a@example.com", List.of(new ExamSubmitRequest.Answer("q2", "A"))));
+        assertEquals("Exam session not found or already submitted", e.getMessage());
+
+        // nothing to store: no write at all
+        assertEquals(0, writer.record(exam, "a@example.com", List.of(new ExamSubmitRequest.Answer("unknown", "A"))));
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(ExamResult.class));
+    }
+
+    private void matched(long count) {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ExamResult.class)))
+                .thenReturn(UpdateResult.acknowledged(count, count, null));
+    }
+}
@@ -0,0 +1,215 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.Exam;
+import com.dtao.lms.model.ExamResult;
+import com.dtao.lms.model.Question;
+import com.dtao.lms.model.XpEvent;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Submitted attempts are scored on the stored answers under their lease; a claim that lost its
+ * lease never completes or awards XP, and XP lost to a crash is awarded again exactly once.
+ */
+class ExamEvaluationPipelineTest {
+
+    private static final String EMAIL = "student@example.com";
+
+    private MongoTemplate mongoTemplate;
+    private LeaderboardService leaderboardService;
+    private BulkOperations renewBulk;
+    private BulkOperations completeBulk;
+    private ExamEvaluationPipeline pipeline;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        leaderboardService = mock(LeaderboardService.class);
+        renewBulk = mock(BulkOperations.class);
+        completeBulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ExamResult.class)).thenReturn(renewBulk, completeBulk);
+        ObjectProvider<MeterRegistry> registry = mock(ObjectProvider.class);
+        pipeline = new ExamEvaluationPipeline(mongoTemplate, leaderboardService, mock(ExamSnapshotCache.class),
+                mock(ThreadPoolTaskExecutor.class), registry, 10, 200, 2, 120, 5);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submittedAnswersAreScoredOverTheDraftUnderTheLease() throws Exception {
+        ExamResult stored = attempt("r1", "t1");
+        stored.setDraftAnswers(Map.of("0", new ExamSubmitRequest.Answer("q0", "A")));
+        stored.setPendingAnswers(List.of(new ExamSubmitRequest.Answer("q1", "A"), new ExamSubmitRequest.Answer("q2", "B")));
+        submitReturns(stored);
+        modified(renewBulk, 1);
+        modified(completeBulk, 1);
+
+        pipeline.submit(exam(3), EMAIL, stored.getPendingAnswers());
+        assertEquals(1, pipeline.processBatch(0));
+
+        ArgumentCaptor<Query> renewFilter = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> renewal = ArgumentCaptor.forClass(Update.class);
+        verify(renewBulk).updateOne(renewFilter.capture(), renewal.capture());
+        assertEquals("t1", renewFilter.getValue().getQueryObject().get("leaseToken"));
+        assertEquals(new Document("evaluationAttempts", 1), renewal.getValue().getUpdateObject().get("$inc"));
+
+        ArgumentCaptor<Query> completeFilter = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> completion = ArgumentCaptor.forClass(Update.class);
+        verify(completeBulk).updateOne(completeFilter.capture(), completion.capture());
+        assertEquals("t1", completeFilter.getValue().getQueryObject().get("leaseToken"));
+        Document set = (Document) completion.getValue().getUpdateObject().get("$set");
+        assertEquals(ExamEvaluationPipeline.COMPLETED, set.get("status"));
+        assertEquals(2, set.get("correctCount"));
+        assertEquals(1, set.get("wrongCount"));
+        assertEquals(200.0 / 3, (double) set.get("percentage"), 1e-9);
+        assertNotNull(set.get("xpPendingSince"));
+
+        ArgumentCaptor<List<ExamResult>> handed = ArgumentCaptor.forClass(List.class);
+        verify(leaderboardService).onResultsEvaluated(handed.capture());
+        assertEquals(List.of("r1:2"), handed.getValue().stream().map(r -> r.getId() + ":" + r.getScore()).toList());
+    }
+
+    @Test
+    void queuedCopyReclaimedByRecoveryIsDroppedUnevaluated() throws Exception {
+        submitReturns(attempt("r1", "t1"));
+        modified(renewBulk, 0);
+        when(mongoTemplate.find(any(Query.class), eq(ExamResult.class))).thenReturn(List.of(attempt("r1", "t2")));
+
+        pipeline.submit(exam(3), EMAIL, answers(3));
+        assertEquals(1, pipeline.processBatch(0));
+
+        verifyNoInteractions(completeBulk);
+        verifyNoInteractions(leaderboardService);
+    }
+
+    @Test
+    void completionThatLostItsLeaseAwardsNoXp() throws Exception {
+        submitReturns(attempt("r1", "t1"));
+        modified(renewBulk, 1);
+        modified(completeBulk, 0);
+        when(mongoTemplate.find(any(Query.class), eq(ExamResult.class))).thenReturn(List.of(attempt("r1", "t2")));
+
+        pipeline.submit(exam(3), EMAIL, answers(3));
+        pipeline.processBatch(0);
+
+        verifyNoInteractions(leaderboardService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recoveryAwardsOnlyTheExamXpThatWasNotStored() {
+        ExamResult awarded = completed("r1", 80);
+        ExamResult lost = completed("r2", 60);
+        ExamResult zero = completed("r3", 0);
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(ExamResult.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(mongoTemplate.find(any(Query.class), eq(ExamResult.class))).thenReturn(List.of(awarded, lost, zero));
+        when(mongoTemplate.findDistinct(any(Query.class), eq("dedupKey"), eq(XpEvent.class), eq(String.class)))
+                .thenReturn(List.of(XpEvent.examDedupKeyFor(EMAIL, "r1")));
+
+        pipeline.start();
+
+        ArgumentCaptor<List<ExamResult>> reawarded = ArgumentCaptor.forClass(List.class);
+        verify(leaderboardService).onResultsEvaluated(reawarded.capture());
+        assertEquals(List.of("r2"), reawarded.getValue().stream().map(ExamResult::getId).toList());
+
+        ArgumentCaptor<Query> filters = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, atLeastOnce()).updateMulti(filters.capture(), updates.capture(), eq(ExamResult.class));
+        List<String> cleared = null;
+        List<String> deferred = null;
+        for (int i = 0; i < updates.getAllValues().size(); i++) {
+            Document update = updates.getAllValues().get(i).getUpdateObject();
+            List<String> ids = idsOf(filters.getAllValues().get(i));
+            if (update.get("$unset", Document.class) != null && update.get("$unset", Document.class).containsKey("xpPendingSince")) cleared = ids;
+            if (update.get("$set", Document.class) != null && update.get("$set", Document.class).containsKey("xpPendingSince")) deferred = ids;
+        }
+        assertEquals(List.of("r1", "r3"), cleared);
+        assertEquals(List.of("r2"), deferred);
+    }
+
+    @Test
+    void submitReturnsNullWhenNoOpenAttempt() {
+        submitReturns(null);
+
+        assertNull(pipeline.submit(exam(3), EMAIL, answers(3)));
+        verifyNoInteractions(renewBulk, completeBulk);
+    }
+
+    private void submitReturns(ExamResult stored) {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(ExamResult.class))).thenReturn(stored);
+    }
+
+    private static void modified(BulkOperations bulk, int count) {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getModifiedCount()).thenReturn(count);
+        when(bulk.execute()).thenReturn(result);
+    }
+
+    private static ExamResult attempt(String id, String token) {
+        ExamResult result = new ExamResult();
+        result.setId(id);
+        result.setStudentEmail(EMAIL);
+        result.setStatus(ExamEvaluationPipeline.EVALUATING);
+        result.setLeaseToken(token);
+        return result;
+    }
+
+    private static ExamResult completed(String id, double percentage) {
+        ExamResult result = attempt(id, "t");
+        result.setStatus(ExamEvaluationPipeline.COMPLETED);
+        result.setPercentage(percentage);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> idsOf(Query query) {
+        Object id = query.getQueryObject().get("_id");
+        if (!(id instanceof Document in) || !(in.get("$in") instanceof Collection<?> ids)) return List.of();
+        return List.copyOf((Collection<String>) ids);
+    }
+
+    private static ExamSnapshotCache.ExamSnapshot exam(int n) {
+        List<Question> questions = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            questions.add(Question.builder().id("q" + i).question("Q" + i).answer("A").build());
+        }
+        Exam exam = new Exam();
+        exam.setName("Exam " + n);
+        exam.setQuestions(questions);
+        return ExamSnapshotCache.compile(exam);
+    }
+
+    private static List<ExamSubmitRequest.Answer> answers(int n) {
+        List<ExamSubmitRequest.Answer> answers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) answers.add(new ExamSubmitRequest.Answer("q" + i, "B"));
+        return answers;
+    }
+}
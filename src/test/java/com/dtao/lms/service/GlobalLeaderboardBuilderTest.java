@@ -0,0 +1,191 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.User;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * The built board joins XP, likes and progress per student and ranks like the live engine, for
+ * the same number of Mongo commands whether there are 10 or 5000 students.
+ */
+class GlobalLeaderboardBuilderTest {
+
+    private MongoTemplate mongoTemplate;
+    private MongoCollection<Document> xpEvents;
+    private MongoCollection<Document> likes;
+    private MongoCollection<Document> progress;
+    private GlobalLeaderboardBuilder builder;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        xpEvents = mock(MongoCollection.class);
+        likes = mock(MongoCollection.class);
+        progress = mock(MongoCollection.class);
+        when(mongoTemplate.getCollection(GlobalLeaderboardBuilder.XP_EVENTS)).thenReturn(xpEvents);
+        when(mongoTemplate.getCollection(GlobalLeaderboardBuilder.LIKES)).thenReturn(likes);
+        when(mongoTemplate.getCollection(GlobalLeaderboardBuilder.VIDEO_PROGRESS)).thenReturn(progress);
+        builder = new GlobalLeaderboardBuilder(mongoTemplate);
+
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of(
+                user("meera@example.com", "Meera"),
+                user("arjun@example.com", "Arjun"),
+                user("kiran@example.com", "Kiran"),
+                user("dev@example.com", "Dev"),
+                user("  ", "No Email")));
+        rows(xpEvents,
+                total("meera@example.com", 300),
+                total("arjun@example.com", 300),
+                total("kiran@example.com", 450),
+                total("admin@example.com", 9000)); // not a student: never on the board
+        rows(likes,
+                total("meera@example.com", 2),
+                total("arjun@example.com", 7));
+        rows(progress,
+                ratios("meera@example.com", 180.0, 2),   // 90 %
+                ratios("arjun@example.com", 90.0, 1),    // 90 %
+                ratios("kiran@example.com", 40.0, 4));   // 10 %
+    }
+
+    @Test
+    void standingsJoinEverySignalPerStudent() {
+        Map<String, LeaderboardEngine.Standing> board = builder.build();
+
+        assertEquals(4, board.size());
+        assertFalse(board.containsKey("admin@example.com"));
+        assertEquals(new LeaderboardEngine.Standing("meera@example.com", "Meera", 300, 180.0, 2, 2), board.get("meera@example.com"));
+        assertEquals(new LeaderboardEngine.Standing("kiran@example.com", "Kiran", 450, 40.0, 4, 0), board.get("kiran@example.com"));
+        assertEquals(new LeaderboardEngine.Standing("dev@example.com", "Dev", 0, 0.0, 0, 0), board.get("dev@example.com"));
+        assertEquals(90.0, board.get("arjun@example.com").progressPercent());
+    }
+
+    @Test
+    void boardRanksByXpThenProgressThenLikes() {
+        List<String> ranked = builder.build().values().stream()
+                .sorted(LeaderboardEngine.ORDER)
+                .map(LeaderboardEngine.Standing::name)
+                .toList();
+
+        // Arjun and Meera tie on XP and progress; Arjun gave more likes
+        assertEquals(List.of("Kiran", "Arjun", "Meera", "Dev"), ranked);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onlyLikesAndTimedProgressCount() {
+        builder.build();
+
+        ArgumentCaptor<List<Document>> likesPipeline = ArgumentCaptor.forClass(List.class);
+        verify(likes).aggregate(likesPipeline.capture());
+        assertEquals(new Document("type", "LIKE"), likesPipeline.getValue().get(0).get("$match"));
+
+        ArgumentCaptor<List<Document>> progressPipeline = ArgumentCaptor.forClass(List.class);
+        verify(progress).aggregate(progressPipeline.capture());
+        assertEquals(new Document("duration", new Document("$gt", 0)), progressPipeline.getValue().get(0).get("$match"));
+    }
+
+    @Test
+    void commandCountIsConstantInStudentCount() {
+        for (int students : new int[]{10, 5000}) {
+            clearInvocations(mongoTemplate, xpEvents, likes, progress);
+            seed(students);
+
+            Map<String, LeaderboardEngine.Standing> board = builder.build();
+
+            assertEquals(students, board.size());
+            verify(xpEvents, times(1)).aggregate(anyList());
+            verify(likes, times(1)).aggregate(anyList());
+            verify(progress, times(1)).aggregate(anyList());
+            verify(mongoTemplate, times(3)).getCollection(any());
+            verify(mongoTemplate, times(1)).find(any(Query.class), eq(User.class));
+            verifyNoMoreInteractions(mongoTemplate);
+        }
+    }
+
+    @Test
+    void signalsAreJoinedByNormalizedEmail() {
+        seed(3);
+
+        Map<String, LeaderboardEngine.Standing> board = builder.build();
+
+        LeaderboardEngine.Standing first = board.get("student0@example.com");
+        assertEquals("Student0@Example.com", first.email());
+        assertEquals(120, first.xp());
+        assertEquals(4, first.likes());
+        assertEquals(75.0, first.progressPercent());
+
+        LeaderboardEngine.Standing third = board.get("student2@example.com");
+        assertEquals(0, third.xp());
+        assertEquals(0, third.likes());
+        assertEquals(0.0, third.progressPercent());
+    }
+
+    /**
+     * n students with mixed-case emails; only student0 has XP, likes and progress.
+     */
+    private void seed(int n) {
+        List<User> users = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // legacy documents keep the raw email (the setter would normalize it)
+            User u = mock(User.class);
+            when(u.getEmail()).thenReturn("Student" + i + "@Example.com");
+            when(u.getName()).thenReturn("Student " + i);
+            users.add(u);
+        }
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(users);
+
+        rows(xpEvents, total("student0@example.com", 120));
+        rows(likes, total("student0@example.com", 4));
+        rows(progress, ratios("student0@example.com", 150.0, 2));
+    }
+
+    private static User user(String email, String name) {
+        User u = new User();
+        u.setEmail(email);
+        u.setName(name);
+        u.setRole("STUDENT");
+        return u;
+    }
+
+    private static Document total(String email, long total) {
+        return new Document("_id", email).append("total", total);
+    }
+
+    private static Document ratios(String email, double sum, int count) {
+        return new Document("_id", email).append("ratioSum", sum).append("ratioCount", count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void rows(MongoCollection<Document> collection, Document... rows) {
+        AggregateIterable<Document> iterable = mock(AggregateIterable.class);
+        when(collection.aggregate(anyList())).thenReturn(iterable);
+        when(iterable.allowDiskUse(any())).thenReturn(iterable);
+        when(iterable.iterator()).thenAnswer(inv -> {
+            Iterator<Document> it = List.of(rows).iterator();
+            MongoCursor<Document> cursor = mock(MongoCursor.class);
+            when(cursor.hasNext()).thenAnswer(x -> it.hasNext());
+            when(cursor.next()).thenAnswer(x -> it.next());
+            return cursor;
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.LeaderboardDeltaMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Messages carry every changed row's rank at send time, and a reset supersedes pending deltas.
+ */
+class LeaderboardDeltaPublisherTest {
+
+    private SimpMessagingTemplate messaging;
+    private LeaderboardDeltaPublisher publisher;
+    private final Map<String, Integer> ranks = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        messaging = mock(SimpMessagingTemplate.class);
+        publisher = new LeaderboardDeltaPublisher(true);
+        ReflectionTestUtils.setField(publisher, "messagingTemplate", messaging);
+        publisher.globalRanks((scope, key) -> ranks.getOrDefault(key, 0));
+    }
+
+    @Test
+    void rowsCarryTheirRankAtSendTime() {
+        // a climbs to 5, then b overtakes from 10 to 1 — pushing a down to 6
+        publisher.globalRankChanged("a@example.com", "Asha", 5, 300, 20);
+        publisher.globalRankChanged("B@example.com", "Bala", 1, 900, 20);
+        publisher.globalRankChanged("a@example.com", "Asha", 5, 320, 20);
+        ranks.put("a@example.com", 6);
+        ranks.put("b@example.com", 1);
+
+        publisher.flush();
+
+        LeaderboardDeltaMessage sent = sent(1).get(0);
+        assertEquals(List.of("a@example.com:6:320", "B@example.com:1:900"),
+                sent.getDeltas().stream().map(d -> d.email() + ":" + d.newRank() + ":" + d.xp()).toList());
+        assertEquals(1, sent.getSeq());
+    }
+
+    @Test
+    void resetDropsPendingDeltasAndBumpsTheSequence() {
+        publisher.globalRankChanged("a@example.com", "Asha", 2, 100, 3);
+        publisher.flush();
+        publisher.globalRankChanged("a@example.com", "Asha", 1, 200, 3);
+
+        publisher.reset(LeaderboardDeltaPublisher.GLOBAL, 3);
+        publisher.flush();
+
+        List<LeaderboardDeltaMessage> sent = sent(2);
+        LeaderboardDeltaMessage reset = sent.get(1);
+        assertTrue(reset.isReset());
+        assertTrue(reset.getDeltas().isEmpty());
+        assertEquals(2, reset.getSeq());
+    }
+
+    private List<LeaderboardDeltaMessage> sent(int times) {
+        ArgumentCaptor<LeaderboardDeltaMessage> messages = ArgumentCaptor.forClass(LeaderboardDeltaMessage.class);
+        verify(messaging, times(times)).convertAndSend(eq(LeaderboardDeltaPublisher.GLOBAL_TOPIC), messages.capture());
+        return messages.getAllValues();
+    }
+}
@@ -0,0 +1,143 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.User;
+import com.dtao.lms.repo.UserRepository;
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Signals that arrive while the board is being built must survive the swap, and changes made
+ * through other instances reach the live board through catch-up.
+ */
+class LeaderboardEngineTest {
+
+    private UserRepository userRepository;
+    private UserXpTotalsService xpTotals;
+    private GlobalLeaderboardBuilder builder;
+    private LeaderboardEngine engine;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        xpTotals = mock(UserXpTotalsService.class);
+        builder = mock(GlobalLeaderboardBuilder.class);
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        UserProgressStatsService statsService = mock(UserProgressStatsService.class);
+        when(statsService.ratiosFor(anyString())).thenReturn(new double[2]);
+        when(mongoTemplate.count(any(Query.class), eq(GlobalLeaderboardBuilder.LIKES))).thenReturn(0L);
+        when(userRepository.findByEmail(anyString())).thenReturn(Optional.empty());
+        MongoCollection<Document> likes = mock(MongoCollection.class);
+        when(mongoTemplate.getCollection(GlobalLeaderboardBuilder.LIKES)).thenReturn(likes);
+        when(likes.distinct(anyString(), any(Bson.class), eq(String.class))).thenReturn(mock(DistinctIterable.class));
+
+        engine = new LeaderboardEngine(userRepository, mongoTemplate, statsService, xpTotals,
+                mock(LeaderboardSnapshotStore.class), mock(LeaderboardDeltaPublisher.class), builder,
+                true, true, false, 24);
+    }
+
+    @Test
+    void xpEarnedDuringTheBuildIsKept() {
+        student("a@example.com", "Asha");
+        student("b@example.com", "Bala");
+        when(xpTotals.getTotal("a@example.com")).thenReturn(150);
+        when(builder.build()).thenAnswer(inv -> {
+            // a's XP event is persisted and signalled while the aggregation is running
+            engine.onXp("a@example.com", 100);
+            return board(standing("a@example.com", "Asha", 50), standing("b@example.com", "Bala", 80));
+        });
+
+        engine.rebuild();
+
+        assertEquals(150, engine.entryOf("a@example.com").orElseThrow().getXp());
+        assertEquals(1, engine.rankOf("a@example.com"));
+        assertEquals(2, engine.rankOf("b@example.com"));
+    }
+
+    @Test
+    void userDeletedDuringTheBuildIsDropped() {
+        student("a@example.com", "Asha");
+        when(builder.build()).thenAnswer(inv -> {
+            engine.remove("b@example.com"); // account deleted mid-build; b has no user row any more
+            return board(standing("a@example.com", "Asha", 50), standing("b@example.com", "Bala", 80));
+        });
+        when(xpTotals.getTotal("a@example.com")).thenReturn(50);
+
+        engine.rebuild();
+
+        assertEquals(List.of("a@example.com"), engine.snapshot().stream().map(e -> e.getEmail()).toList());
+    }
+
+    @Test
+    void renameRepositionsTheStudent() {
+        student("a@example.com", "Asha");
+        student("b@example.com", "Bala");
+        when(builder.build()).thenReturn(board(standing("a@example.com", "Asha", 10), standing("b@example.com", "Bala", 10)));
+        engine.rebuild();
+        assertEquals(1, engine.rankOf("a@example.com"));
+
+        User renamed = student("a@example.com", "Zara");
+        engine.onUserChanged("a@example.com", renamed);
+
+        assertEquals("Zara", engine.entryOf("a@example.com").orElseThrow().getName());
+        assertEquals(2, engine.rankOf("a@example.com"));
+
+        renamed.setRole("ADMIN");
+        engine.onUserChanged("a@example.com", renamed);
+        assertEquals(0, engine.rankOf("a@example.com"));
+        assertEquals(1, engine.size());
+    }
+
+    @Test
+    void changesPersistedThroughOtherInstancesAreCaughtUp() {
+        User a = student("a@example.com", "Asha");
+        student("b@example.com", "Bala");
+        when(builder.build()).thenReturn(board(standing("a@example.com", "Asha", 50), standing("b@example.com", "Bala", 80)));
+        engine.rebuild();
+
+        // another instance awarded a XP and deleted b's account
+        when(builder.students()).thenReturn(List.of(a));
+        when(xpTotals.changedSince(any())).thenReturn(Map.of("a@example.com", 200L));
+
+        engine.scheduledCatchUp();
+
+        assertEquals(200, engine.entryOf("a@example.com").orElseThrow().getXp());
+        assertEquals(List.of("a@example.com"), engine.snapshot().stream().map(e -> e.getEmail()).toList());
+    }
+
+    private User student(String email, String name) {
+        User u = new User();
+        u.setEmail(email);
+        u.setName(name);
+        u.setRole("STUDENT");
+        when(userRepository.findByEmail(email)).thenReturn(Optional.of(u));
+        return u;
+    }
+
+    private static LeaderboardEngine.Standing standing(String email, String name, int xp) {
+        return new LeaderboardEngine.Standing(email, name, xp, 0.0, 0, 0);
+    }
+
+    private static Map<String, LeaderboardEngine.Standing> board(LeaderboardEngine.Standing... standings) {
+        Map<String, LeaderboardEngine.Standing> out = new HashMap<>();
+        for (LeaderboardEngine.Standing s : standings) out.put(s.email(), s);
+        return out;
+    }
+}
@@ -0,0 +1,102 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.dto.BatchProgressRequest;
+import com.dtao.lms.dto.BatchProgressResponse;
+import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.model.XpEvent;
+import com.dtao.lms.repo.VideoProgressRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Batch progress: heartbeats collapse per video, and XP / summaries follow the completion
+ * write's own pre-image, not the pre-read.
+ */
+class ProgressServiceBatchTest {
+
+    private static final String EMAIL = "a@example.com";
+
+    private VideoProgressRepository progressRepo;
+    private CourseProgressSummaryService summaryService;
+    private XpEventService xpEventService;
+    private ProgressService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        progressRepo = mock(VideoProgressRepository.class);
+        summaryService = mock(CourseProgressSummaryService.class);
+        xpEventService = mock(XpEventService.class);
+        ObjectProvider<MeterRegistry> noRegistry = mock(ObjectProvider.class);
+
+        service = new ProgressService(progressRepo, mock(ProgressWriteBuffer.class), summaryService,
+                mock(VideoMetadataCache.class), mock(CourseTreeCache.class), mock(UserProgressStatsService.class),
+                new ProgressStageMetrics(noRegistry, 0.0), noRegistry);
+        ReflectionTestUtils.setField(service, "xpEventService", xpEventService);
+        when(xpEventService.addVideoXpEvents(anyString(), anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(1)).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void heartbeatsAreMergedAndCompletionsAwardedOnce() {
+        when(progressRepo.findByEmailAndVideoIdIn(eq(EMAIL), anyList())).thenReturn(List.of());
+        when(progressRepo.upsertProgressAtomic(eq(EMAIL), anyString(), any(), any(), eq(true), any())).thenReturn(null);
+
+        BatchProgressResponse resp = service.applyBatch(EMAIL, List.of(
+                entry("v1", 10.0, false),
+                entry("v1", 40.0, false),
+                entry("v1", 25.0, false),
+                entry("v2", 90.0, true),
+                entry("v3", 60.0, true)));
+
+        ArgumentCaptor<Collection<VideoProgress>> bulk = ArgumentCaptor.forClass(Collection.class);
+        verify(progressRepo, times(1)).bulkUpsertProgress(bulk.capture());
+        VideoProgress v1 = bulk.getValue().iterator().next();
+        assertEquals(1, bulk.getValue().size());
+        assertEquals(40.0, v1.getLastPosition());
+
+        ArgumentCaptor<List<XpEvent>> xp = ArgumentCaptor.forClass(List.class);
+        verify(xpEventService, times(1)).addVideoXpEvents(eq(EMAIL), xp.capture());
+        assertEquals(List.of("v2", "v3"), xp.getValue().stream().map(XpEvent::getVideoId).toList());
+        verify(summaryService, times(1)).onVideosCompleted(EMAIL, List.of("v2", "v3"));
+        verify(summaryService, never()).onVideoCompleted(anyString(), anyString());
+
+        assertEquals(3, resp.getVideosWritten());
+        assertEquals(2, resp.getXpAwarded());
+        assertEquals(List.of(BatchProgressResponse.COALESCED, BatchProgressResponse.COALESCED,
+                        BatchProgressResponse.APPLIED, BatchProgressResponse.APPLIED, BatchProgressResponse.APPLIED),
+                resp.getResults().stream().map(BatchProgressResponse.EntryStatus::getStatus).toList());
+    }
+
+    @Test
+    void completionWonByAConcurrentRequestIsNotAwardedAgain() {
+        // the pre-read still sees the video incomplete, but another request completed it before our write
+        VideoProgress stale = new VideoProgress(EMAIL, "v2", 50.0, 100.0, false);
+        VideoProgress preImage = new VideoProgress(EMAIL, "v2", 100.0, 100.0, true);
+        when(progressRepo.findByEmailAndVideoIdIn(eq(EMAIL), anyList())).thenReturn(List.of(stale));
+        when(progressRepo.upsertProgressAtomic(eq(EMAIL), eq("v2"), any(), any(), eq(true), any())).thenReturn(preImage);
+
+        BatchProgressResponse resp = service.applyBatch(EMAIL, List.of(entry("v2", 100.0, true)));
+
+        assertEquals(0, resp.getXpAwarded());
+        verifyNoInteractions(xpEventService);
+        verify(summaryService, never()).onVideosCompleted(anyString(), anyCollection());
+        verify(progressRepo, never()).bulkUpsertProgress(anyCollection());
+    }
+
+    private static BatchProgressRequest.Entry entry(String videoId, double position, boolean completed) {
+        return new BatchProgressRequest.Entry(videoId, position, 100.0, completed, Instant.now());
+    }
+}
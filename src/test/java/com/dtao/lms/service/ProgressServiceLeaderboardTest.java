@@ -0,0 +1,111 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.User;
+import com.dtao.lms.repo.UserRepository;
+import com.dtao.lms.repo.VideoProgressRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * getLeaderboardProgress must cost the same number of queries for 10 or 5000 students.
+ */
+class ProgressServiceLeaderboardTest {
+
+    private static final String COURSE = "course-1";
+    private static final List<String> VIDEOS = List.of("v1", "v2", "v3", "v4");
+
+    private VideoProgressRepository progressRepo;
+    private UserRepository userRepo;
+    private CourseTreeCache courseTreeCache;
+    private CourseProgressSummaryService summaryService;
+    private ProgressService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        progressRepo = mock(VideoProgressRepository.class);
+        userRepo = mock(UserRepository.class);
+        courseTreeCache = mock(CourseTreeCache.class);
+        summaryService = mock(CourseProgressSummaryService.class);
+        ObjectProvider<MeterRegistry> noRegistry = mock(ObjectProvider.class);
+
+        when(courseTreeCache.videoIds(COURSE)).thenReturn(VIDEOS);
+
+        service = new ProgressService(progressRepo, mock(ProgressWriteBuffer.class), summaryService,
+                mock(VideoMetadataCache.class), courseTreeCache, mock(UserProgressStatsService.class),
+                new ProgressStageMetrics(noRegistry, 0.0), noRegistry);
+        ReflectionTestUtils.setField(service, "userRepository", userRepo);
+    }
+
+    @Test
+    void queryCountIsConstantInStudentCount() {
+        for (int students : new int[]{10, 5000}) {
+            clearInvocations(progressRepo, userRepo, courseTreeCache, summaryService);
+            seed(students);
+
+            Map<String, Double> board = service.getLeaderboardProgress(COURSE);
+
+            assertEquals(students, board.size());
+            verify(userRepo, times(1)).findByRoleIgnoreCase("STUDENT");
+            verify(courseTreeCache, times(1)).videoIds(COURSE);
+            verify(progressRepo, times(1)).countCompletedByEmail(VIDEOS);
+            verify(summaryService, never()).getSummary(anyString(), anyString());
+            verifyNoMoreInteractions(progressRepo, userRepo);
+        }
+    }
+
+    @Test
+    void studentsWithoutProgressAreZeroAndEmailsMatchCaseInsensitively() {
+        seed(3);
+
+        Map<String, Double> board = service.getLeaderboardProgress(COURSE);
+
+        assertEquals(100.0, board.get("Student0@Example.com"));
+        assertEquals(25.0, board.get("Student1@Example.com"));
+        assertEquals(0.0, board.get("Student2@Example.com"));
+    }
+
+    @Test
+    void emptyCourseSkipsTheAggregation() {
+        seed(5);
+        when(courseTreeCache.videoIds("empty")).thenReturn(List.of());
+
+        Map<String, Double> board = service.getLeaderboardProgress("empty");
+
+        assertEquals(5, board.size());
+        board.values().forEach(p -> assertEquals(0.0, p));
+        verify(progressRepo, never()).countCompletedByEmail(any());
+    }
+
+    /**
+     * n students with mixed-case emails; student0 completed every video, student1 one video,
+     * the rest nothing. The aggregation keys its counts by lower-cased email.
+     */
+    private void seed(int n) {
+        List<User> users = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            User u = mock(User.class);
+            when(u.getEmail()).thenReturn("Student" + i + "@Example.com");
+            users.add(u);
+        }
+        Map<String, Long> completed = new HashMap<>();
+        completed.put("student0@example.com", (long) VIDEOS.size());
+        completed.put("student1@example.com", 1L);
+
+        when(userRepo.findByRoleIgnoreCase("STUDENT")).thenReturn(users);
+        when(progressRepo.countCompletedByEmail(VIDEOS)).thenReturn(completed);
+    }
+}
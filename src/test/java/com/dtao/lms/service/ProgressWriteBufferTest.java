@@ -0,0 +1,138 @@
+package com.dtao.lms.service;
+
+import com.dtao.lms.model.VideoProgress;
+import com.dtao.lms.repo.VideoProgressRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Heartbeats are merged per (email, videoId) and flushed in bulk; completions, a disabled buffer
+ * and failed flushes fall back to what is stored.
+ */
+class ProgressWriteBufferTest {
+
+    private VideoProgressRepository progressRepo;
+    private UserProgressStatsService statsService;
+    private ProgressWriteBuffer buffer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        progressRepo = mock(VideoProgressRepository.class);
+        statsService = mock(UserProgressStatsService.class);
+        when(progressRepo.findByEmailAndVideoId(any(), any())).thenReturn(Optional.empty());
+        buffer = new ProgressWriteBuffer(progressRepo, mock(VideoMetadataCache.class), statsService,
+                mock(ObjectProvider.class), true, 4, 1000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedFlushIsRetriedWithMaxPosition() {
+        buffer.offer("a@example.com", "v1", 120.0, 600.0, false);
+        buffer.offer("b@example.com", "v1", 30.0, 600.0, false);
+        when(progressRepo.bulkUpsertProgress(anyCollection()))
+                .thenThrow(new RuntimeException("mongo down"))
+                .thenReturn(2);
+
+        buffer.flush();
+
+        verifyNoInteractions(statsService);
+        assertEquals(120.0, buffer.peek("a@example.com", "v1").orElseThrow().getLastPosition());
+        assertNotNull(buffer.peek("b@example.com", "v1").orElse(null));
+
+        // heartbeats after the failure: a lower position must not win, a higher one must
+        buffer.offer("a@example.com", "v1", 90.0, 600.0, false);
+        buffer.offer("b@example.com", "v1", 45.0, 600.0, false);
+        buffer.flush();
+
+        ArgumentCaptor<Collection<VideoProgress>> written = ArgumentCaptor.forClass(Collection.class);
+        verify(progressRepo, times(2)).bulkUpsertProgress(written.capture());
+        List<VideoProgress> second = new ArrayList<>(written.getAllValues().get(1));
+        assertEquals(2, second.size());
+        for (VideoProgress vp : second) {
+            assertEquals("a@example.com".equals(vp.getEmail()) ? 120.0 : 45.0, vp.getLastPosition());
+        }
+        verify(statsService, times(1)).applyChanges(anyCollection());
+        assertEquals(Optional.empty(), buffer.peek("a@example.com", "v1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void heartbeatsForOneVideoAreMergedIntoOneWrite() {
+        buffer.offer("a@example.com", "v1", 10.0, 600.0, false);
+        buffer.offer("a@example.com", "v1", 50.0, 580.0, false);
+        VideoProgress view = buffer.offer("a@example.com", "v1", 30.0, 610.0, false);
+
+        assertEquals(50.0, view.getLastPosition());
+        assertEquals(610.0, view.getDuration());
+
+        buffer.flush();
+
+        ArgumentCaptor<Collection<VideoProgress>> written = ArgumentCaptor.forClass(Collection.class);
+        verify(progressRepo).bulkUpsertProgress(written.capture());
+        assertEquals(1, written.getValue().size());
+        VideoProgress stored = written.getValue().iterator().next();
+        assertEquals(50.0, stored.getLastPosition());
+        assertEquals(610.0, stored.getDuration());
+    }
+
+    @Test
+    void completionBypassesTheBuffer() {
+        // first heartbeat is already the completion: nothing buffered, caller writes it
+        assertNull(buffer.offer("a@example.com", "v1", 600.0, 600.0, true));
+        assertEquals(Optional.empty(), buffer.peek("a@example.com", "v1"));
+
+        // buffered progress is written out before the caller's synchronous completion write
+        buffer.offer("a@example.com", "v2", 200.0, 600.0, false);
+        assertNull(buffer.offer("a@example.com", "v2", 600.0, 600.0, true));
+        verify(progressRepo).upsertProgressAtomic("a@example.com", "v2", 200.0, 600.0, false, null);
+        assertEquals(Optional.empty(), buffer.peek("a@example.com", "v2"));
+
+        buffer.flush();
+        verify(progressRepo, never()).bulkUpsertProgress(anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void disabledBufferLeavesEveryWriteToTheCaller() {
+        ProgressWriteBuffer disabled = new ProgressWriteBuffer(progressRepo, mock(VideoMetadataCache.class), statsService,
+                mock(ObjectProvider.class), false, 4, 1000);
+
+        assertNull(disabled.offer("a@example.com", "v1", 120.0, 600.0, false));
+        assertEquals(Optional.empty(), disabled.peek("a@example.com", "v1"));
+        disabled.flush();
+
+        verifyNoInteractions(progressRepo, statsService);
+    }
+
+    @Test
+    void peekOverlaysTheStoredProgress() {
+        VideoProgress stored = new VideoProgress("a@example.com", "v1", 300.0, 600.0, false);
+        stored.setId("p1");
+        stored.setVideoTitle("Intro");
+        when(progressRepo.findByEmailAndVideoId("a@example.com", "v1")).thenReturn(Optional.of(stored));
+
+        buffer.offer("a@example.com", "v1", 100.0, 600.0, false);
+        VideoProgress seen = buffer.peek("a@example.com", "v1").orElseThrow();
+        assertEquals(300.0, seen.getLastPosition());
+        assertEquals("p1", seen.getId());
+        assertEquals("Intro", seen.getVideoTitle());
+
+        buffer.offer("a@example.com", "v1", 350.0, 600.0, false);
+        assertEquals(350.0, buffer.peek("a@example.com", "v1").orElseThrow().getLastPosition());
+    }
+}
@@ -0,0 +1,61 @@
+package com.dtao.lms.utils;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.AnswerRecord;
+import com.dtao.lms.model.Question;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The compiled evaluator must grade exactly like ExamEvaluatorUtil.evaluateAnswers.
+ */
+class CompiledAnswerKeyTest {
+
+    private static final String[] SPELLINGS = {"A", "b", "OptionC", "optiond", " D ", "", "True", "true", "E", "OptionE"};
+
+    @Test
+    void gradesLikeTheLegacyEvaluator() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            List<Question> questions = new ArrayList<>();
+            List<ExamSubmitRequest.Answer> answers = new ArrayList<>();
+            int n = 1 + random.nextInt(30);
+            for (int i = 0; i < n; i++) {
+                String answer = random.nextInt(8) == 0 ? null : SPELLINGS[random.nextInt(SPELLINGS.length)];
+                questions.add(Question.builder().id("q" + i).question("Q" + i).answer(answer).build());
+                if (random.nextInt(5) == 0) continue;
+                answers.add(new ExamSubmitRequest.Answer(random.nextBoolean() ? "q" + i : " q" + i + " ",
+                        SPELLINGS[random.nextInt(SPELLINGS.length)]));
+            }
+            answers.add(new ExamSubmitRequest.Answer("unknown", "A"));
+
+            ExamEvaluatorUtil.EvaluationResult legacy = ExamEvaluatorUtil.evaluateAnswers(questions, answers);
+            ExamEvaluatorUtil.EvaluationResult compiled =
+                    ExamEvaluatorUtil.evaluateAnswers(CompiledAnswerKey.compile(questions), questions, answers);
+
+            assertEquals(legacy.getCorrectCount(), compiled.getCorrectCount());
+            assertEquals(legacy.getWrongCount(), compiled.getWrongCount());
+            assertEquals(legacy.getPercentage(), compiled.getPercentage());
+            for (int i = 0; i < n; i++) {
+                AnswerRecord expected = legacy.getAnswerRecords().get(i);
+                AnswerRecord actual = compiled.getAnswerRecords().get(i);
+                assertEquals(expected.isCorrect(), actual.isCorrect(), "question " + i);
+                assertEquals(expected.getSelectedOption(), actual.getSelectedOption(), "question " + i);
+                assertEquals(expected.getCorrectAnswer(), actual.getCorrectAnswer(), "question " + i);
+            }
+        }
+    }
+
+    @Test
+    void optionSpellingsDecodeToTheSameCode() {
+        assertEquals(CompiledAnswerKey.code("C"), CompiledAnswerKey.code("OptionC"));
+        assertEquals(CompiledAnswerKey.code("c"), CompiledAnswerKey.code("optionc"));
+        assertEquals(CompiledAnswerKey.TEXT, CompiledAnswerKey.code("OptionE"));
+        assertEquals(CompiledAnswerKey.EMPTY, CompiledAnswerKey.code(""));
+    }
+}
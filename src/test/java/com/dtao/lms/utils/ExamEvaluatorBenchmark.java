@@ -0,0 +1,97 @@
+package com.dtao.lms.utils;
+
+import com.dtao.lms.dto.ExamSubmitRequest;
+import com.dtao.lms.model.Question;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExamEvaluatorUtil (HashMap + normalize per question) vs. CompiledAnswerKey (byte arrays).
+ *
+ * Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.dtao.lms.utils.ExamEvaluatorBenchmark
+ * Allocation per call is reported by the GC profiler (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExamEvaluatorBenchmark {
+
+    private static final String[] OPTIONS = {"A", "B", "C", "D"};
+
+    @Param({"50", "500", "5000"})
+    int questionCount;
+
+    List<Question> questions;
+    List<ExamSubmitRequest.Answer> answers;
+    CompiledAnswerKey key;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        questions = new ArrayList<>(questionCount);
+        answers = new ArrayList<>(questionCount);
+        for (int i = 0; i < questionCount; i++) {
+            Question q = Question.builder()
+                    .id("q" + i)
+                    .question("Question " + i)
+                    .optionA("a").optionB("b").optionC("c").optionD("d")
+                    .answer(OPTIONS[random.nextInt(4)])
+                    .explanation("Explanation " + i)
+                    .build();
+            questions.add(q);
+            // ~10% unanswered, mixed "C" / "OptionC" spellings like real submissions
+            if (random.nextInt(10) == 0) continue;
+            String option = OPTIONS[random.nextInt(4)];
+            answers.add(new ExamSubmitRequest.Answer(q.getId(), random.nextBoolean() ? option : "Option" + option));
+        }
+        key = CompiledAnswerKey.compile(questions);
+    }
+
+    /** Current evaluator: answer map, normalize() per question, answer records. */
+    @Benchmark
+    public int legacyEvaluate() {
+        return ExamEvaluatorUtil.evaluateAnswers(questions, answers).getCorrectCount();
+    }
+
+    /** Compiled key: decode + byte-array scoring only. */
+    @Benchmark
+    public int compiledScore() {
+        return key.score(key.decode(answers));
+    }
+
+    /** Compiled key including the answer records stored on the result. */
+    @Benchmark
+    public int compiledEvaluate() {
+        return ExamEvaluatorUtil.evaluateAnswers(key, questions, answers).getCorrectCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExamEvaluatorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}